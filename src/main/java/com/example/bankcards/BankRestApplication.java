@@ -1,17 +1,12 @@
 package com.example.bankcards;
 
-import org.modelmapper.ModelMapper;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
-import org.springframework.context.annotation.Bean;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class BankRestApplication {
     public static void main(String[] args) {
         org.springframework.boot.SpringApplication.run(BankRestApplication.class, args);
     }
-
-    @Bean
-    public ModelMapper modelMapper() {
-        return new ModelMapper();
-    }
 }
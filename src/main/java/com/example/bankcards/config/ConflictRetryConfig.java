@@ -0,0 +1,39 @@
+package com.example.bankcards.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.aop.Advisor;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Role;
+import org.springframework.core.Ordered;
+
+import java.time.Duration;
+
+@Configuration
+public class ConflictRetryConfig {
+
+    /**
+     * Infrastructure role, so that the auto-proxy creator of the transaction support applies it as well;
+     * ordered first, so that every attempt runs in a transaction of its own.
+     */
+    @Bean
+    @Role(BeanDefinition.ROLE_INFRASTRUCTURE)
+    public static Advisor conflictRetryAdvisor(ObjectProvider<MeterRegistry> meterRegistry,
+                                               @Value("${card.retry.max-attempts:3}") int maxAttempts,
+                                               @Value("${card.retry.backoff.initial:10ms}") Duration initialBackoff,
+                                               @Value("${card.retry.backoff.max:200ms}") Duration maxBackoff,
+                                               @Value("${card.retry.budget.ratio:0.2}") double budgetRatio,
+                                               @Value("${card.retry.budget.max:100}") int budgetMax) {
+        DefaultPointcutAdvisor advisor = new DefaultPointcutAdvisor(
+                AnnotationMatchingPointcut.forMethodAnnotation(RetryOnConflict.class),
+                new ConflictRetryInterceptor(meterRegistry, maxAttempts, initialBackoff, maxBackoff, budgetRatio,
+                        budgetMax));
+        advisor.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return advisor;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.exception.CardUpdateConflictException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.OptimisticLockException;
+import org.aopalliance.intercept.MethodInterceptor;
+import org.aopalliance.intercept.MethodInvocation;
+import org.springframework.aop.ProxyMethodInvocation;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Re-runs a {@link RetryOnConflict} method that failed on an optimistic-locking conflict, up to
+ * {@code max-attempts} times with exponential backoff and full jitter.
+ * Retries draw on a budget shared by all methods that every call refills by {@code budget.ratio}, so during a
+ * conflict storm retries stay a bounded fraction of the traffic instead of multiplying it. A call that joined
+ * an outer transaction is not retried, since that transaction is rolled back anyway.
+ * A conflict that is not retried surfaces as {@link CardUpdateConflictException}.
+ * Calls, conflicts and retries are counted per method as {@code card.mutation.*}.
+ */
+public class ConflictRetryInterceptor implements MethodInterceptor {
+    private static final long TOKEN = 1000;
+
+    private final ObjectProvider<MeterRegistry> meterRegistry;
+    private final int maxAttempts;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final long refill;
+    private final long budgetMax;
+    private final AtomicLong budget;
+    private final Map<Method, MethodMeters> meters = new ConcurrentHashMap<>();
+
+    public ConflictRetryInterceptor(ObjectProvider<MeterRegistry> meterRegistry, int maxAttempts,
+                                    Duration initialBackoff, Duration maxBackoff, double budgetRatio, int budgetMax) {
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffNanos = initialBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+        this.refill = Math.round(budgetRatio * TOKEN);
+        this.budgetMax = budgetMax * TOKEN;
+        this.budget = new AtomicLong(this.budgetMax);
+    }
+
+    @Override
+    public Object invoke(MethodInvocation invocation) throws Throwable {
+        MethodMeters methodMeters = meters.computeIfAbsent(invocation.getMethod(), this::register);
+        methodMeters.calls().increment();
+        budget.accumulateAndGet(refill, (tokens, amount) -> Math.min(budgetMax, tokens + amount));
+        boolean retryable = !TransactionSynchronizationManager.isActualTransactionActive()
+                && invocation instanceof ProxyMethodInvocation;
+
+        for (int attempt = 1; ; attempt++) {
+            MethodInvocation current = retryable ? ((ProxyMethodInvocation) invocation).invocableClone() : invocation;
+            try {
+                return current.proceed();
+            } catch (OptimisticLockingFailureException | OptimisticLockException e) {
+                methodMeters.conflicts().increment();
+                if (!retryable) {
+                    throw new CardUpdateConflictException(e);
+                }
+                if (attempt >= maxAttempts) {
+                    methodMeters.attemptsExhausted().increment();
+                    throw new CardUpdateConflictException(e);
+                }
+                if (!withdraw()) {
+                    methodMeters.budgetExhausted().increment();
+                    throw new CardUpdateConflictException(e);
+                }
+                methodMeters.retries().increment();
+                Thread.sleep(Duration.ofNanos(backoff(attempt)));
+            }
+        }
+    }
+
+    private boolean withdraw() {
+        long tokens;
+        do {
+            tokens = budget.get();
+            if (tokens < TOKEN) {
+                return false;
+            }
+        } while (!budget.compareAndSet(tokens, tokens - TOKEN));
+        return true;
+    }
+
+    private long backoff(int attempt) {
+        long ceiling = Math.min(maxBackoffNanos, initialBackoffNanos << Math.min(attempt - 1, 30));
+        return ceiling <= 0 ? 0 : ThreadLocalRandom.current().nextLong(ceiling + 1);
+    }
+
+    private MethodMeters register(Method method) {
+        MeterRegistry registry = meterRegistry.getObject();
+        String name = method.getDeclaringClass().getSimpleName() + "." + method.getName();
+        return new MethodMeters(
+                counter("card.mutation.calls", name).description("Calls of methods retried on conflicts")
+                        .register(registry),
+                counter("card.mutation.conflicts", name).description("Optimistic-locking conflicts")
+                        .register(registry),
+                counter("card.mutation.retries", name).description("Calls re-run after a conflict")
+                        .register(registry),
+                counter("card.mutation.retries.exhausted", name).tag("reason", "attempts")
+                        .description("Conflicts not retried any more").register(registry),
+                counter("card.mutation.retries.exhausted", name).tag("reason", "budget")
+                        .description("Conflicts not retried any more").register(registry));
+    }
+
+    private static Counter.Builder counter(String meter, String method) {
+        return Counter.builder(meter).tag("method", method);
+    }
+
+    private record MethodMeters(Counter calls, Counter conflicts, Counter retries, Counter attemptsExhausted,
+                                Counter budgetExhausted) {
+    }
+}
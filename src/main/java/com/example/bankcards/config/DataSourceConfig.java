@@ -0,0 +1,66 @@
+package com.example.bankcards.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routes read-only transactions to the replicas listed in {@code card.datasource.replicas} and everything else to
+ * {@code spring.datasource}. Without replicas this configuration is off and Spring Boot's single datasource is used.
+ * <p>
+ * The routing relies on {@link LazyConnectionDataSourceProxy}: a transaction gets a connection proxy that only picks
+ * its target at the first statement, after {@code @Transactional(readOnly = true)} has marked it read-only.
+ */
+@Configuration
+@ConditionalOnProperty("card.datasource.replicas")
+public class DataSourceConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaRoutingDataSource replicaRoutingDataSource(
+            HikariDataSource primaryDataSource, DataSourceProperties properties, MeterRegistry meterRegistry,
+            @Value("${card.datasource.replicas}") List<String> urls,
+            @Value("${card.datasource.replica-pool-size:10}") int poolSize,
+            @Value("${card.datasource.replica-connection-timeout:1s}") Duration connectionTimeout,
+            RecentWriters recentWriters) {
+        List<DataSource> replicas = new ArrayList<>();
+        for (int i = 0; i < urls.size(); i++) {
+            HikariDataSource replica = properties.initializeDataSourceBuilder().type(HikariDataSource.class)
+                    .url(urls.get(i)).build();
+            replica.setPoolName("replica-" + i);
+            replica.setMaximumPoolSize(poolSize);
+            replica.setConnectionTimeout(connectionTimeout.toMillis());
+            replica.setConnectionInitSql(primaryDataSource.getConnectionInitSql());
+            // a replica that is down at startup must not stop the application, the health check takes it out
+            replica.setInitializationFailTimeout(-1);
+            replicas.add(replica);
+        }
+        return new ReplicaRoutingDataSource(primaryDataSource, replicas, meterRegistry, recentWriters,
+                connectionTimeout);
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(ReplicaRoutingDataSource replicaRoutingDataSource) {
+        LazyConnectionDataSourceProxy dataSource = new LazyConnectionDataSourceProxy(replicaRoutingDataSource.writes());
+        dataSource.setReadOnlyDataSource(replicaRoutingDataSource);
+        return dataSource;
+    }
+}
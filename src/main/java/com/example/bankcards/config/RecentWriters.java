@@ -0,0 +1,69 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.security.AuthenticatedUser;
+import com.example.bankcards.security.UserDetailsService;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+
+/**
+ * Ids of the users whose write committed on this instance less than {@code read-your-writes-window} ago, which
+ * {@link ReplicaRoutingDataSource} reads from the primary. A write through the primary records the authenticated
+ * user of the thread making it; writes made for a user on another thread, such as a pipelined or asynchronous
+ * transfer, or before there is one, such as a registration, are recorded explicitly with {@link #record}.
+ */
+@Component
+public class RecentWriters {
+    private final Cache<Long, Boolean> writers;
+
+    public RecentWriters(@Value("${card.datasource.read-your-writes-window:5s}") Duration readYourWritesWindow) {
+        this.writers = Caffeine.newBuilder().expireAfterWrite(readYourWritesWindow).build();
+    }
+
+    /**
+     * Records the user once the current transaction commits, or right away outside of one.
+     */
+    public void record(Long userId) {
+        if (userId == null) {
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    writers.put(userId, Boolean.TRUE);
+                }
+            });
+        } else {
+            writers.put(userId, Boolean.TRUE);
+        }
+    }
+
+    public boolean contains(Long userId) {
+        return userId != null && writers.getIfPresent(userId) != null;
+    }
+
+    /**
+     * The id of the user the current thread is authenticated as, by an access token or by a login, or {@code null}.
+     */
+    public static Long currentUserId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !authentication.isAuthenticated()) {
+            return null;
+        }
+        if (authentication.getPrincipal() instanceof AuthenticatedUser user) {
+            return user.id();
+        }
+        if (authentication.getPrincipal() instanceof UserDetailsService details) {
+            return details.getUser().getId();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.bankcards.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read side of the datasource: hands out connections of the replicas in turn, skipping replicas that failed their
+ * last health check or their last connection attempt, and falls back to the primary when none is left.
+ * A user among the {@link RecentWriters} reads from the primary as well, so they see their own change however far
+ * the replicas lag. Writes made by this instance only are known.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+    private final DataSource primary;
+    private final List<Replica> replicas;
+    private final RecentWriters recentWriters;
+    private final AtomicInteger next = new AtomicInteger();
+    private final int validationTimeoutSeconds;
+    private final Counter replicaReads;
+    private final Counter primaryReads;
+
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, MeterRegistry meterRegistry,
+                                    RecentWriters recentWriters, Duration validationTimeout) {
+        this.primary = primary;
+        this.replicas = replicas.stream().map(Replica::new).toList();
+        this.recentWriters = recentWriters;
+        this.validationTimeoutSeconds = (int) Math.max(1, validationTimeout.toSeconds());
+        Gauge.builder("card.datasource.replicas.healthy", this.replicas,
+                        all -> all.stream().filter(replica -> replica.healthy).count())
+                .description("Replicas that read-only transactions are routed to")
+                .register(meterRegistry);
+        this.replicaReads = Counter.builder("card.datasource.reads").tag("target", "replica")
+                .register(meterRegistry);
+        this.primaryReads = Counter.builder("card.datasource.reads").tag("target", "primary")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connect(DataSource::getConnection);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return connect(dataSource -> dataSource.getConnection(username, password));
+    }
+
+    /**
+     * The write side: the primary, recording the current user among the {@link RecentWriters} once the transaction
+     * that writes through it commits.
+     */
+    public DataSource writes() {
+        return new DelegatingDataSource(primary) {
+            @Override
+            public Connection getConnection() throws SQLException {
+                recentWriters.record(RecentWriters.currentUserId());
+                return super.getConnection();
+            }
+
+            @Override
+            public Connection getConnection(String username, String password) throws SQLException {
+                recentWriters.record(RecentWriters.currentUserId());
+                return super.getConnection(username, password);
+            }
+        };
+    }
+
+    @Scheduled(fixedDelayString = "${card.datasource.health-check-interval:5000}")
+    public void checkReplicas() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try (Connection connection = replica.dataSource.getConnection()) {
+                healthy = connection.isValid(validationTimeoutSeconds);
+            } catch (SQLException e) {
+                healthy = false;
+            }
+            if (healthy != replica.healthy) {
+                log.warn("Replica {} is {}", replicas.indexOf(replica), healthy ? "back" : "unhealthy");
+            }
+            replica.healthy = healthy;
+        }
+    }
+
+    /**
+     * Closes the replica pools; the primary is closed by its owner.
+     */
+    @Override
+    public void close() throws Exception {
+        for (Replica replica : replicas) {
+            if (replica.dataSource instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    private Connection connect(ConnectionSource source) throws SQLException {
+        if (!wroteRecently()) {
+            for (int i = 0; i < replicas.size(); i++) {
+                Replica replica = replicas.get(Math.floorMod(next.getAndIncrement(), replicas.size()));
+                if (!replica.healthy) {
+                    continue;
+                }
+                try {
+                    Connection connection = source.connect(replica.dataSource);
+                    replicaReads.increment();
+                    return connection;
+                } catch (SQLException e) {
+                    replica.healthy = false;
+                    log.warn("Replica {} is unhealthy, reading elsewhere", replicas.indexOf(replica), e);
+                }
+            }
+        }
+        primaryReads.increment();
+        return source.connect(primary);
+    }
+
+    private boolean wroteRecently() {
+        return recentWriters.contains(RecentWriters.currentUserId());
+    }
+
+    private interface ConnectionSource {
+        Connection connect(DataSource dataSource) throws SQLException;
+    }
+
+    private static final class Replica {
+        private final DataSource dataSource;
+        private volatile boolean healthy = true;
+
+        private Replica(DataSource dataSource) {
+            this.dataSource = dataSource;
+        }
+    }
+}
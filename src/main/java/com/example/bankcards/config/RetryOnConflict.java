@@ -0,0 +1,15 @@
+package com.example.bankcards.config;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a transactional method that is re-run by {@link ConflictRetryInterceptor} when it loses an
+ * optimistic-locking race.
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RetryOnConflict {
+}
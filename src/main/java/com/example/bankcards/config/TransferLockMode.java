@@ -0,0 +1,5 @@
+package com.example.bankcards.config;
+
+public enum TransferLockMode {
+    NONE, PESSIMISTIC
+}
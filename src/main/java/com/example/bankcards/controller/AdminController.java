@@ -1,40 +1,110 @@
 package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.ExpirationRunDTO;
+import com.example.bankcards.service.CardExpirationJob;
 import com.example.bankcards.service.CardService;
+import com.example.bankcards.service.IdempotencyService;
+import com.example.bankcards.service.UserImportService;
 import com.example.bankcards.service.UserService;
+import com.example.bankcards.util.Money;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
-import java.math.BigDecimal;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.security.Principal;
 import java.util.List;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/v1/admin")
 public class AdminController {
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final CardService cardService;
     private final UserService userService;
+    private final IdempotencyService idempotencyService;
+    private final UserImportService userImportService;
+    private final CardExpirationJob cardExpirationJob;
+    private final ObjectMapper objectMapper;
 
-    public AdminController(CardService cardService, UserService userService) {
+    public AdminController(CardService cardService, UserService userService, IdempotencyService idempotencyService,
+                           UserImportService userImportService, CardExpirationJob cardExpirationJob,
+                           ObjectMapper objectMapper) {
         this.cardService = cardService;
+        this.cardExpirationJob = cardExpirationJob;
         this.userService = userService;
+        this.idempotencyService = idempotencyService;
+        this.userImportService = userImportService;
+        this.objectMapper = objectMapper;
     }
 
     @PostMapping("/create")
     public ResponseEntity<Void> createCard(@RequestParam("username") String username,
-                                           @RequestParam("balance") BigDecimal balance) {
-        cardService.createCard(username, balance);
-        return ResponseEntity.status(HttpStatus.CREATED).build();
+                                           @RequestParam("balance") String balance,
+                                           @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                           Principal principal) {
+        long minorUnits = Money.parse(balance);
+        Supplier<HttpStatus> createCard = () -> {
+            cardService.createCard(username, minorUnits);
+            return HttpStatus.CREATED;
+        };
+
+        HttpStatus status = idempotencyKey == null ? createCard.get() : idempotencyService.execute(
+                "create-card:" + principal.getName(), idempotencyKey, username + ":" + minorUnits, createCard);
+        return ResponseEntity.status(status).build();
     }
 
+    /**
+     * Returns up to {@code limit} cards with an id greater than {@code after}. While a full page is returned,
+     * the {@code Link} header points to the next one. The page carries a strong {@code ETag} that is checked
+     * against {@code If-None-Match} before the page is read.
+     */
     @GetMapping()
-    public List<CardDTO> getCards() {
-        return cardService.getCards();
+    public ResponseEntity<List<CardDTO>> getCards(@RequestParam(value = "after", defaultValue = "0") long after,
+                                                  @RequestParam(value = "limit", defaultValue = "100")
+                                                  @Min(1) @Max(1000) int limit,
+                                                  WebRequest request) {
+        if (request.checkNotModified(cardService.getCardsETag(after, limit))) {
+            return null;
+        }
+        List<CardDTO> cards = cardService.getCards(after, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (cards.size() == limit) {
+            response.header(HttpHeaders.LINK, "</api/v1/admin?after=" + cards.getLast().getId() + "&limit=" + limit
+                    + ">; rel=\"next\"");
+        }
+        return response.body(cards);
+    }
+
+    /**
+     * Streams every card with an id greater than {@code after} as NDJSON, one line per card, as it is read.
+     */
+    @GetMapping(produces = "application/x-ndjson")
+    public void streamCards(@RequestParam(value = "after", defaultValue = "0") long after,
+                            HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON.toString());
+        PrintWriter writer = response.getWriter();
+        cardService.streamCards(after, card -> writeLine(writer, card));
+        writer.flush();
     }
 
     @GetMapping("/{cardId}")
-    public CardDTO getCard(@PathVariable("cardId") Long cardId) {
+    public CardDTO getCard(@PathVariable("cardId") Long cardId, WebRequest request) {
+        if (request.checkNotModified(cardService.getCardETag(cardId))) {
+            return null;
+        }
         return cardService.getCard(cardId);
     }
 
@@ -50,6 +120,13 @@ public class AdminController {
         return ResponseEntity.ok().build();
     }
 
+    @PutMapping("/{cardId}/stripes")
+    public ResponseEntity<Void> setBalanceStripes(@PathVariable("cardId") Long cardId,
+                                                  @RequestParam("count") int count) {
+        cardService.setBalanceStripes(cardId, count);
+        return ResponseEntity.ok().build();
+    }
+
     @DeleteMapping("/{cardId}")
     public ResponseEntity<Void> deleteCard(@PathVariable("cardId") Long cardId) {
         cardService.deleteCard(cardId);
@@ -62,9 +139,35 @@ public class AdminController {
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * Imports users from a CSV or NDJSON body and streams the running totals back as NDJSON, one line per chunk.
+     */
+    @PostMapping(value = "/users/import", consumes = {"text/csv", "application/x-ndjson"})
+    public void importUsers(@RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType, InputStream body,
+                            HttpServletResponse response) throws IOException {
+        UserImportService.Format format = MediaType.parseMediaType(contentType).isCompatibleWith(NDJSON)
+                ? UserImportService.Format.NDJSON : UserImportService.Format.CSV;
+        response.setContentType(NDJSON.toString());
+        PrintWriter writer = response.getWriter();
+        userImportService.importUsers(body, format, progress -> {
+            writeLine(writer, progress);
+            writer.flush();
+        });
+    }
+
+    /**
+     * Runs the expiration job now instead of waiting for its schedule.
+     */
     @PutMapping("/update-expiration")
-    public ResponseEntity<Void> updateExpirationTime() {
-        cardService.updateExpirationTime();
-        return ResponseEntity.ok().build();
+    public ExpirationRunDTO updateExpirationTime() {
+        return cardExpirationJob.run();
+    }
+
+    private void writeLine(PrintWriter writer, Object value) {
+        try {
+            writer.println(objectMapper.writeValueAsString(value));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,13 +1,11 @@
 package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.AuthenticationDTO;
+import com.example.bankcards.dto.RefreshTokenDTO;
 import com.example.bankcards.service.AuthService;
 import jakarta.validation.Valid;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestBody;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
 
 @RestController
 @RequestMapping("/api/v1/auth")
@@ -27,4 +25,18 @@ public class AuthController {
     public ResponseEntity<?> login(@RequestBody @Valid AuthenticationDTO authDTO) {
         return ResponseEntity.ok(authService.login(authDTO));
     }
+
+    @PostMapping("/refresh")
+    public ResponseEntity<?> refresh(@RequestBody @Valid RefreshTokenDTO refreshTokenDTO) {
+        return ResponseEntity.ok(authService.refresh(refreshTokenDTO.getRefreshToken()));
+    }
+
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@RequestHeader(value = "Authorization", required = false) String authorizationHeader,
+                                    @RequestBody(required = false) RefreshTokenDTO refreshTokenDTO) {
+        String accessToken = authorizationHeader != null && authorizationHeader.startsWith("Bearer ")
+                ? authorizationHeader.substring(7) : null;
+        authService.logout(accessToken, refreshTokenDTO == null ? null : refreshTokenDTO.getRefreshToken());
+        return ResponseEntity.ok().build();
+    }
 }
@@ -1,60 +1,141 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.AsyncTransferDTO;
 import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.CardSliceDTO;
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferResultDTO;
+import com.example.bankcards.security.CurrentUserId;
+import com.example.bankcards.service.AsyncTransferService;
 import com.example.bankcards.service.CardService;
-import com.example.bankcards.service.UserService;
+import com.example.bankcards.service.IdempotencyService;
+import com.example.bankcards.service.TransferBatchService;
+import com.example.bankcards.util.ETags;
+import com.example.bankcards.util.Money;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
-import java.math.BigDecimal;
-import java.security.Principal;
+import java.net.URI;
+import java.util.List;
+import java.util.function.Supplier;
 
 @RestController
 @RequestMapping("/api/v1/cards")
 public class CardController {
     private final CardService cardService;
-    private final UserService userService;
+    private final TransferBatchService transferBatchService;
+    private final IdempotencyService idempotencyService;
+    private final AsyncTransferService asyncTransferService;
 
-    public CardController(CardService cardService, UserService userService) {
+    public CardController(CardService cardService, TransferBatchService transferBatchService,
+                          IdempotencyService idempotencyService, AsyncTransferService asyncTransferService) {
         this.cardService = cardService;
-        this.userService = userService;
+        this.transferBatchService = transferBatchService;
+        this.idempotencyService = idempotencyService;
+        this.asyncTransferService = asyncTransferService;
     }
 
+    /**
+     * The list and its cursor mode carry a strong {@code ETag}; a matching {@code If-None-Match} is answered with
+     * {@code 304} after one aggregate query over the user's cards.
+     */
     @GetMapping
     public Page<CardDTO> getCards(
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "id") String sortBy,
             @RequestParam(required = false) String search,
-            Principal principal) {
+            @CurrentUserId Long userId,
+            WebRequest request) {
+        if (request.checkNotModified(cardService.getCardsETag(userId))) {
+            return null;
+        }
 
         Pageable pageable = PageRequest.of(page, size, Sort.by(sortBy));
 
-        return cardService.getCards(userService.findByUsername(principal.getName()), search, pageable);
+        return cardService.getCards(userId, search, pageable);
+    }
+
+    /**
+     * Cursor mode of the card list, selected by the {@code cursor} parameter: pass it empty for the first slice and
+     * then the {@code nextCursor} of the previous one. No total is counted.
+     */
+    @GetMapping(params = "cursor")
+    public CardSliceDTO getCards(
+            @RequestParam String cursor,
+            @RequestParam(defaultValue = "10") @Min(1) @Max(1000) int size,
+            @RequestParam(defaultValue = "id") String sortBy,
+            @RequestParam(required = false) String search,
+            @CurrentUserId Long userId,
+            WebRequest request) {
+        if (request.checkNotModified(cardService.getCardsETag(userId))) {
+            return null;
+        }
+        return cardService.getCards(userId, search, sortBy, cursor, size);
     }
 
     @PutMapping("/{cardId}/block")
-    public ResponseEntity<?> block(@PathVariable Long cardId, Principal principal) {
-        cardService.blockCard(cardId, userService.findByUsername(principal.getName()));
+    public ResponseEntity<?> block(@PathVariable Long cardId, @CurrentUserId Long userId) {
+        cardService.blockCard(cardId, userId);
         return ResponseEntity.ok().build();
     }
 
     @PutMapping("/{cardId}/transfer/{recipientCardNumber}")
     public ResponseEntity<?> transfer(@PathVariable Long cardId,
                                       @PathVariable String recipientCardNumber,
-                                      @RequestParam("amount") double amount,
-                                      Principal principal) {
-        cardService.transfer(cardId, recipientCardNumber, amount, userService.findByUsername(principal.getName()));
-        return ResponseEntity.ok().build();
+                                      @RequestParam("amount") String amount,
+                                      @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+                                      @CurrentUserId Long userId) {
+        long minorUnits = Money.parse(amount);
+        Supplier<HttpStatus> transfer = () -> {
+            cardService.transfer(cardId, recipientCardNumber, minorUnits, userId);
+            return HttpStatus.OK;
+        };
+
+        HttpStatus status = idempotencyKey == null ? transfer.get() : idempotencyService.execute(
+                "transfer:" + userId, idempotencyKey, cardId + ":" + recipientCardNumber + ":" + minorUnits,
+                transfer);
+        return ResponseEntity.status(status).build();
+    }
+
+    @PutMapping("/{cardId}/transfer/{recipientCardNumber}/async")
+    public ResponseEntity<AsyncTransferDTO> transferAsync(@PathVariable Long cardId,
+                                                          @PathVariable String recipientCardNumber,
+                                                          @RequestParam("amount") String amount,
+                                                          @CurrentUserId Long userId) {
+        long minorUnits = Money.parse(amount);
+        AsyncTransferDTO transfer = asyncTransferService.submit(cardId, recipientCardNumber, minorUnits, userId);
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/v1/cards/transfers/" + transfer.getId()))
+                .body(transfer);
+    }
+
+    @GetMapping("/transfers/{transferId}")
+    public AsyncTransferDTO getTransfer(@PathVariable String transferId, @CurrentUserId Long userId) {
+        return asyncTransferService.getTransfer(transferId, userId);
+    }
+
+    @PostMapping("/transfers/batch")
+    public List<TransferResultDTO> transferBatch(@RequestBody List<TransferDTO> transfers, @CurrentUserId Long userId) {
+        return transferBatchService.transfer(transfers, userId);
     }
 
     @GetMapping("/{cardId}/balance")
-    public ResponseEntity<Double> getBalance(@PathVariable Long cardId, Principal principal) {
-        BigDecimal balance = cardService.getBalance(cardId, userService.findByUsername(principal.getName()));
-        return ResponseEntity.ok(balance.doubleValue());
+    public ResponseEntity<String> getBalance(@PathVariable Long cardId, @CurrentUserId Long userId,
+                                             WebRequest request) {
+        long balance = cardService.getBalance(cardId, userId);
+        if (request.checkNotModified(ETags.of(balance))) {
+            return null;
+        }
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(Money.format(balance));
     }
 }
@@ -0,0 +1,60 @@
+package com.example.bankcards.dto;
+
+import com.example.bankcards.entity.enums.TransferStatus;
+
+import java.time.LocalDateTime;
+
+public class AsyncTransferDTO {
+    private String id;
+
+    private TransferStatus status;
+
+    private String error;
+
+    private LocalDateTime createdAt;
+
+    private LocalDateTime completedAt;
+
+    public AsyncTransferDTO() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public TransferStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(TransferStatus status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+}
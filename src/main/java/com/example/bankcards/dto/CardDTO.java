@@ -1,8 +1,13 @@
 package com.example.bankcards.dto;
 
+import com.example.bankcards.entity.enums.Role;
 import com.example.bankcards.entity.enums.Status;
+import com.example.bankcards.util.Money;
+import com.example.bankcards.util.MoneyDeserializer;
+import com.example.bankcards.util.MoneySerializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 public class CardDTO {
@@ -16,11 +21,30 @@ public class CardDTO {
 
     private Status status;
 
-    private BigDecimal balance;
+    @JsonSerialize(using = MoneySerializer.class)
+    @JsonDeserialize(using = MoneyDeserializer.class)
+    private long balance;
 
     public CardDTO() {
     }
 
+    /**
+     * Used by the listing queries of {@code CardRepository}, which select the columns instead of whole cards.
+     */
+    public CardDTO(Long id, String maskedCardNumber, String username, Role role, LocalDateTime validityPeriod,
+                   Status status, long balance, Long stripedBalance) {
+        this.id = id;
+        this.maskedCardNumber = maskedCardNumber;
+        if (username != null) {
+            this.user = new UserDTO();
+            this.user.setUsername(username);
+            this.user.setRole(role);
+        }
+        this.validityPeriod = validityPeriod;
+        this.status = status;
+        this.balance = stripedBalance == null ? balance : Money.add(balance, stripedBalance);
+    }
+
     public Long getId() {
         return id;
     }
@@ -61,11 +85,11 @@ public class CardDTO {
         this.status = status;
     }
 
-    public BigDecimal getBalance() {
+    public long getBalance() {
         return balance;
     }
 
-    public void setBalance(BigDecimal balance) {
+    public void setBalance(long balance) {
         this.balance = balance;
     }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package com.example.bankcards.dto;
+
+import java.util.List;
+
+public class CardSliceDTO {
+    private List<CardDTO> content;
+
+    private int size;
+
+    private boolean hasNext;
+
+    private String nextCursor;
+
+    public CardSliceDTO() {
+    }
+
+    public CardSliceDTO(List<CardDTO> content, String nextCursor) {
+        this.content = content;
+        this.size = content.size();
+        this.hasNext = nextCursor != null;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<CardDTO> getContent() {
+        return content;
+    }
+
+    public void setContent(List<CardDTO> content) {
+        this.content = content;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public boolean isHasNext() {
+        return hasNext;
+    }
+
+    public void setHasNext(boolean hasNext) {
+        this.hasNext = hasNext;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
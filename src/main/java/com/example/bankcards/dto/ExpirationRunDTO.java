@@ -0,0 +1,53 @@
+package com.example.bankcards.dto;
+
+public class ExpirationRunDTO {
+    private long expired;
+
+    private int chunks;
+
+    private long elapsedMillis;
+
+    private long rowsPerSecond;
+
+    public ExpirationRunDTO() {
+    }
+
+    public ExpirationRunDTO(long expired, int chunks, long elapsedMillis) {
+        this.expired = expired;
+        this.chunks = chunks;
+        this.elapsedMillis = elapsedMillis;
+        this.rowsPerSecond = expired * 1000 / Math.max(1, elapsedMillis);
+    }
+
+    public long getExpired() {
+        return expired;
+    }
+
+    public void setExpired(long expired) {
+        this.expired = expired;
+    }
+
+    public int getChunks() {
+        return chunks;
+    }
+
+    public void setChunks(int chunks) {
+        this.chunks = chunks;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public long getRowsPerSecond() {
+        return rowsPerSecond;
+    }
+
+    public void setRowsPerSecond(long rowsPerSecond) {
+        this.rowsPerSecond = rowsPerSecond;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.bankcards.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+
+public class RefreshTokenDTO {
+    @NotEmpty()
+    private String refreshToken;
+
+    public RefreshTokenDTO() {
+    }
+
+    public String getRefreshToken() {
+        return refreshToken;
+    }
+
+    public void setRefreshToken(String refreshToken) {
+        this.refreshToken = refreshToken;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.bankcards.dto;
+
+import com.example.bankcards.util.MoneyDeserializer;
+import com.example.bankcards.util.MoneySerializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+public class TransferDTO {
+    private Long cardId;
+
+    private String recipientCardNumber;
+
+    @JsonSerialize(using = MoneySerializer.class)
+    @JsonDeserialize(using = MoneyDeserializer.class)
+    private long amount;
+
+    public TransferDTO() {
+    }
+
+    public TransferDTO(Long cardId, String recipientCardNumber, long amount) {
+        this.cardId = cardId;
+        this.recipientCardNumber = recipientCardNumber;
+        this.amount = amount;
+    }
+
+    public Long getCardId() {
+        return cardId;
+    }
+
+    public void setCardId(Long cardId) {
+        this.cardId = cardId;
+    }
+
+    public String getRecipientCardNumber() {
+        return recipientCardNumber;
+    }
+
+    public void setRecipientCardNumber(String recipientCardNumber) {
+        this.recipientCardNumber = recipientCardNumber;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public void setAmount(long amount) {
+        this.amount = amount;
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.bankcards.dto;
+
+public class TransferResultDTO {
+    private int index;
+
+    private boolean applied;
+
+    private String error;
+
+    public TransferResultDTO() {
+    }
+
+    public static TransferResultDTO applied(int index) {
+        TransferResultDTO result = new TransferResultDTO();
+        result.setIndex(index);
+        result.setApplied(true);
+        return result;
+    }
+
+    public static TransferResultDTO rejected(int index, String error) {
+        TransferResultDTO result = new TransferResultDTO();
+        result.setIndex(index);
+        result.setError(error);
+        return result;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public boolean isApplied() {
+        return applied;
+    }
+
+    public void setApplied(boolean applied) {
+        this.applied = applied;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
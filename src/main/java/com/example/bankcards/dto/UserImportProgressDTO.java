@@ -0,0 +1,64 @@
+package com.example.bankcards.dto;
+
+public class UserImportProgressDTO {
+    private long processed;
+
+    private long imported;
+
+    private long duplicates;
+
+    private long invalid;
+
+    private boolean completed;
+
+    public UserImportProgressDTO() {
+    }
+
+    public UserImportProgressDTO(long processed, long imported, long duplicates, long invalid, boolean completed) {
+        this.processed = processed;
+        this.imported = imported;
+        this.duplicates = duplicates;
+        this.invalid = invalid;
+        this.completed = completed;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public void setProcessed(long processed) {
+        this.processed = processed;
+    }
+
+    public long getImported() {
+        return imported;
+    }
+
+    public void setImported(long imported) {
+        this.imported = imported;
+    }
+
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    public void setDuplicates(long duplicates) {
+        this.duplicates = duplicates;
+    }
+
+    public long getInvalid() {
+        return invalid;
+    }
+
+    public void setInvalid(long invalid) {
+        this.invalid = invalid;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(boolean completed) {
+        this.completed = completed;
+    }
+}
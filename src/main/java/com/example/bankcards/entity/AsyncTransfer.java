@@ -0,0 +1,125 @@
+package com.example.bankcards.entity;
+
+import com.example.bankcards.entity.enums.TransferStatus;
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * A transfer accepted by the asynchronous transfer endpoint, with its outcome once it has run.
+ */
+@Entity
+@Table(name = "async_transfers")
+public class AsyncTransfer {
+    @Id
+    private String id;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    @Column(nullable = false)
+    private Long cardId;
+
+    @Column(nullable = false)
+    private String recipientCardNumber;
+
+    @Column(nullable = false)
+    private long amount;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private TransferStatus status;
+
+    private String error;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    private LocalDateTime completedAt;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+
+    public AsyncTransfer() {
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public void setUserId(Long userId) {
+        this.userId = userId;
+    }
+
+    public Long getCardId() {
+        return cardId;
+    }
+
+    public void setCardId(Long cardId) {
+        this.cardId = cardId;
+    }
+
+    public String getRecipientCardNumber() {
+        return recipientCardNumber;
+    }
+
+    public void setRecipientCardNumber(String recipientCardNumber) {
+        this.recipientCardNumber = recipientCardNumber;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public void setAmount(long amount) {
+        this.amount = amount;
+    }
+
+    public TransferStatus getStatus() {
+        return status;
+    }
+
+    public void setStatus(TransferStatus status) {
+        this.status = status;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -1,9 +1,10 @@
 package com.example.bankcards.entity;
 
 import com.example.bankcards.entity.enums.Status;
+import com.example.bankcards.util.Money;
 import jakarta.persistence.*;
+import org.hibernate.annotations.Formula;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
@@ -18,16 +19,48 @@ public class Card {
 
     private String maskedCardNumber;
 
+    /**
+     * Last four digits of {@link #cardNumber}, kept in an indexed column so that a last-four search is an equality
+     * lookup; set together with the number.
+     */
+    @Column(nullable = false, length = 4)
+    private String lastFour;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     private User user;
 
+    /**
+     * Read-only copy of the {@link #user} foreign key, so that queries joining the owner can still filter on
+     * {@code cards.user_id} and its indexes instead of on the joined {@code users.id}.
+     */
+    @Column(name = "user_id", insertable = false, updatable = false)
+    private Long userId;
+
     private LocalDateTime validityPeriod;
 
     @Enumerated(EnumType.STRING)
     private Status status;
 
-    private BigDecimal balance;
+    private long balance;
+
+    @Column(nullable = false)
+    private int balanceStripes;
+
+    /**
+     * Sum of the balance slots of a striped card; credits to such a card land in the slots instead of
+     * {@link #balance}, so the card's balance is {@link #getTotalBalance()}.
+     */
+    @Formula("(case when balance_stripes > 0 then " +
+            "(select coalesce(sum(s.balance), 0) from card_balance_slots s where s.card_id = id) else 0 end)")
+    private Long stripedBalance;
+
+    /**
+     * Incremented on every write, including the guarded UPDATE statements of {@code CardRepository}, so that
+     * a stale copy of the card fails to save instead of overwriting a concurrent change.
+     */
+    @Version
+    private long version;
 
     public Card() {
     }
@@ -46,6 +79,11 @@ public class Card {
 
     public void setCardNumber(String cardNumber) {
         this.cardNumber = cardNumber;
+        this.lastFour = cardNumber == null ? null : cardNumber.substring(Math.max(0, cardNumber.length() - 4));
+    }
+
+    public String getLastFour() {
+        return lastFour;
     }
 
     public String getMaskedCardNumber() {
@@ -56,6 +94,10 @@ public class Card {
         this.maskedCardNumber = maskedCardNumber;
     }
 
+    public Long getUserId() {
+        return userId;
+    }
+
     public User getUser() {
         return user;
     }
@@ -80,11 +122,34 @@ public class Card {
         this.status = status;
     }
 
-    public BigDecimal getBalance() {
+    /**
+     * Balance in minor units, see {@link Money}.
+     */
+    public long getBalance() {
         return balance;
     }
 
-    public void setBalance(BigDecimal balance) {
+    public void setBalance(long balance) {
         this.balance = balance;
     }
+
+    public int getBalanceStripes() {
+        return balanceStripes;
+    }
+
+    public void setBalanceStripes(int balanceStripes) {
+        this.balanceStripes = balanceStripes;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
+    public long getTotalBalance() {
+        return stripedBalance == null ? balance : Money.add(balance, stripedBalance);
+    }
 }
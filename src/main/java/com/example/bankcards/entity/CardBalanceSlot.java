@@ -0,0 +1,60 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+
+@Entity
+@Table(name = "card_balance_slots")
+public class CardBalanceSlot {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private Long cardId;
+
+    @Column(nullable = false)
+    private int slot;
+
+    @Column(nullable = false)
+    private long balance;
+
+    public CardBalanceSlot() {
+    }
+
+    public CardBalanceSlot(Long cardId, int slot) {
+        this.cardId = cardId;
+        this.slot = slot;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getCardId() {
+        return cardId;
+    }
+
+    public void setCardId(Long cardId) {
+        this.cardId = cardId;
+    }
+
+    public int getSlot() {
+        return slot;
+    }
+
+    public void setSlot(int slot) {
+        this.slot = slot;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    public void setBalance(long balance) {
+        this.balance = balance;
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * How far a chunked job got: the last id it processed in the current pass, and when it last finished a pass.
+ */
+@Entity
+@Table(name = "job_checkpoints")
+public class JobCheckpoint {
+    @Id
+    private String name;
+
+    @Column(nullable = false)
+    private long lastId;
+
+    private LocalDateTime completedAt;
+
+    public JobCheckpoint() {
+    }
+
+    public JobCheckpoint(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getLastId() {
+        return lastId;
+    }
+
+    public void setLastId(long lastId) {
+        this.lastId = lastId;
+    }
+
+    public LocalDateTime getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(LocalDateTime completedAt) {
+        this.completedAt = completedAt;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+import java.util.UUID;
+
+@Entity
+@Table(name = "card_ledger")
+public class LedgerEntry {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false)
+    private UUID transferId;
+
+    @Column(nullable = false)
+    private Long cardId;
+
+    @Column(nullable = false)
+    private long amount;
+
+    @Column(nullable = false)
+    private LocalDateTime createdAt;
+
+    private boolean applied;
+
+    public LedgerEntry() {
+    }
+
+    public LedgerEntry(UUID transferId, Long cardId, long amount) {
+        this.transferId = transferId;
+        this.cardId = cardId;
+        this.amount = amount;
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public UUID getTransferId() {
+        return transferId;
+    }
+
+    public void setTransferId(UUID transferId) {
+        this.transferId = transferId;
+    }
+
+    public Long getCardId() {
+        return cardId;
+    }
+
+    public void setCardId(Long cardId) {
+        this.cardId = cardId;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public void setAmount(long amount) {
+        this.amount = amount;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public boolean isApplied() {
+        return applied;
+    }
+
+    public void setApplied(boolean applied) {
+        this.applied = applied;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.bankcards.entity;
+
+import jakarta.persistence.*;
+
+import java.time.LocalDateTime;
+
+@Entity
+@Table(name = "revoked_tokens")
+public class RevokedToken {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(nullable = false, unique = true, length = 36)
+    private String tokenId;
+
+    @Column(nullable = false)
+    private LocalDateTime revokedAt;
+
+    @Column(nullable = false)
+    private LocalDateTime expiresAt;
+
+    public RevokedToken() {
+    }
+
+    public RevokedToken(String tokenId, LocalDateTime revokedAt, LocalDateTime expiresAt) {
+        this.tokenId = tokenId;
+        this.revokedAt = revokedAt;
+        this.expiresAt = expiresAt;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    public void setTokenId(String tokenId) {
+        this.tokenId = tokenId;
+    }
+
+    public LocalDateTime getRevokedAt() {
+        return revokedAt;
+    }
+
+    public void setRevokedAt(LocalDateTime revokedAt) {
+        this.revokedAt = revokedAt;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(LocalDateTime expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.bankcards.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when the asynchronous transfer endpoint already has as many transfers running as it allows.
+ * The transfer has not been accepted and can safely be submitted again.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class AsyncTransferLimitExceededException extends RuntimeException {
+    public AsyncTransferLimitExceededException(int maxInFlight) {
+        super("At most " + maxInFlight + " asynchronous transfers may run at once, please retry");
+    }
+}
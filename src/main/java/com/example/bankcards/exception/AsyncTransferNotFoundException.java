@@ -0,0 +1,11 @@
+package com.example.bankcards.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.NOT_FOUND)
+public class AsyncTransferNotFoundException extends RuntimeException {
+    public AsyncTransferNotFoundException(String transferId) {
+        super("Transfer not found with id: " + transferId);
+    }
+}
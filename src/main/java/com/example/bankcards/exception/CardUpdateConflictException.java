@@ -0,0 +1,15 @@
+package com.example.bankcards.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a card kept being modified concurrently and its update could not be applied within the retry limits.
+ * The update has been rolled back and can safely be retried.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class CardUpdateConflictException extends RuntimeException {
+    public CardUpdateConflictException(Throwable cause) {
+        super("The card was modified concurrently, please retry", cause);
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.bankcards.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+public class IdempotencyKeyReuseException extends RuntimeException {
+    public IdempotencyKeyReuseException(String key) {
+        super("Idempotency key was already used for a different request: " + key);
+    }
+}
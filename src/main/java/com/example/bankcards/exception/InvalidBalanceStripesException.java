@@ -0,0 +1,11 @@
+package com.example.bankcards.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class InvalidBalanceStripesException extends RuntimeException {
+    public InvalidBalanceStripesException(int maxStripes) {
+        super("Balance stripes must be between 0 and " + maxStripes);
+    }
+}
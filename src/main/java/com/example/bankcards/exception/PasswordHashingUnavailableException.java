@@ -0,0 +1,25 @@
+package com.example.bankcards.exception;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.time.Duration;
+
+/**
+ * Thrown when every password-hashing thread is busy and the hashing queue is full.
+ * The request has not been processed and can safely be sent again after {@code Retry-After} seconds.
+ */
+public class PasswordHashingUnavailableException extends ResponseStatusException {
+    private final HttpHeaders headers = new HttpHeaders();
+
+    public PasswordHashingUnavailableException(Duration retryAfter) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, "Too many logins in progress, please retry");
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, retryAfter.toSeconds())));
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+}
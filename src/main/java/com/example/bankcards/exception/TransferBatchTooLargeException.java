@@ -0,0 +1,11 @@
+package com.example.bankcards.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.PAYLOAD_TOO_LARGE)
+public class TransferBatchTooLargeException extends RuntimeException {
+    public TransferBatchTooLargeException(int maxSize) {
+        super("A transfer batch may contain at most " + maxSize + " transfers");
+    }
+}
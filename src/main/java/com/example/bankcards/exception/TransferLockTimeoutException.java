@@ -0,0 +1,15 @@
+package com.example.bankcards.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when the card rows involved in a transfer could not be locked in time.
+ * The transfer has been rolled back and can safely be retried.
+ */
+@ResponseStatus(HttpStatus.CONFLICT)
+public class TransferLockTimeoutException extends RuntimeException {
+    public TransferLockTimeoutException(Long cardId, Throwable cause) {
+        super("Could not lock cards for transfer from card " + cardId + ", please retry", cause);
+    }
+}
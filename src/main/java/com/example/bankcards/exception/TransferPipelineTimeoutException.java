@@ -0,0 +1,15 @@
+package com.example.bankcards.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a queued transfer was already being committed but its micro-batch did not finish in time.
+ * The transfer may still be applied, so the caller should check the balance before retrying.
+ */
+@ResponseStatus(HttpStatus.GATEWAY_TIMEOUT)
+public class TransferPipelineTimeoutException extends RuntimeException {
+    public TransferPipelineTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.bankcards.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Thrown when a transfer could not be queued for group commit, because its shard queue is full or the
+ * pipeline is shutting down. The transfer has not been applied and can safely be retried.
+ */
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class TransferPipelineUnavailableException extends RuntimeException {
+    public TransferPipelineUnavailableException(String message) {
+        super(message);
+    }
+}
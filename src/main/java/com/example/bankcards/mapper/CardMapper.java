@@ -0,0 +1,28 @@
+package com.example.bankcards.mapper;
+
+import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.entity.Card;
+import org.springframework.stereotype.Component;
+
+@Component
+public class CardMapper {
+    private final UserMapper userMapper;
+
+    public CardMapper(UserMapper userMapper) {
+        this.userMapper = userMapper;
+    }
+
+    /**
+     * Reads {@link Card#getUser()}, so the owner should be fetched with the card to avoid a query per card.
+     */
+    public CardDTO toDTO(Card card) {
+        CardDTO cardDTO = new CardDTO();
+        cardDTO.setId(card.getId());
+        cardDTO.setMaskedCardNumber(card.getMaskedCardNumber());
+        cardDTO.setUser(userMapper.toDTO(card.getUser()));
+        cardDTO.setValidityPeriod(card.getValidityPeriod());
+        cardDTO.setStatus(card.getStatus());
+        cardDTO.setBalance(card.getTotalBalance());
+        return cardDTO;
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.bankcards.mapper;
+
+import com.example.bankcards.dto.AuthenticationDTO;
+import com.example.bankcards.dto.UserDTO;
+import com.example.bankcards.entity.User;
+import org.springframework.stereotype.Component;
+
+@Component
+public class UserMapper {
+
+    public UserDTO toDTO(User user) {
+        if (user == null) {
+            return null;
+        }
+        UserDTO userDTO = new UserDTO();
+        userDTO.setUsername(user.getUsername());
+        userDTO.setRole(user.getRole());
+        return userDTO;
+    }
+
+    /**
+     * A new, unsaved user with the submitted username and the still plain password; the role is left for the caller.
+     */
+    public User toUser(AuthenticationDTO authDTO) {
+        User user = new User();
+        user.setUsername(authDTO.getUsername());
+        user.setPassword(authDTO.getPassword());
+        return user;
+    }
+}
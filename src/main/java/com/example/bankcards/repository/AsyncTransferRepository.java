@@ -0,0 +1,38 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.AsyncTransfer;
+import com.example.bankcards.entity.enums.TransferStatus;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface AsyncTransferRepository extends JpaRepository<AsyncTransfer, String> {
+
+    /**
+     * Records the outcome of a transfer that is still pending; a transfer already failed by
+     * {@link #failPendingCreatedBefore} is left as it is.
+     *
+     * @return {@code 1} if the outcome was recorded, {@code 0} otherwise
+     */
+    @Modifying
+    @Query("update AsyncTransfer t set t.status = :status, t.error = :error, t.completedAt = :completedAt " +
+            "where t.id = :id and t.status = com.example.bankcards.entity.enums.TransferStatus.PENDING")
+    int complete(@Param("id") String id, @Param("status") TransferStatus status, @Param("error") String error,
+                 @Param("completedAt") LocalDateTime completedAt);
+
+    @Modifying
+    @Query("update AsyncTransfer t set t.status = com.example.bankcards.entity.enums.TransferStatus.FAILED, " +
+            "t.error = :error, t.completedAt = :now " +
+            "where t.status = com.example.bankcards.entity.enums.TransferStatus.PENDING and t.createdAt < :cutoff")
+    int failPendingCreatedBefore(@Param("cutoff") LocalDateTime cutoff, @Param("error") String error,
+                                 @Param("now") LocalDateTime now);
+
+    @Modifying
+    @Query("delete from AsyncTransfer t where t.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
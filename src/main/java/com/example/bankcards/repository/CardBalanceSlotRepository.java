@@ -0,0 +1,35 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.CardBalanceSlot;
+import com.example.bankcards.entity.enums.Status;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface CardBalanceSlotRepository extends JpaRepository<CardBalanceSlot, Long> {
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from CardBalanceSlot s where s.cardId = :cardId order by s.slot")
+    List<CardBalanceSlot> findByCardIdForUpdate(@Param("cardId") Long cardId);
+
+    /**
+     * Credits one slot of a striped card identified by its number, with the same guards as
+     * {@link CardRepository#credit}; the slot is {@code slotHash mod balanceStripes}.
+     */
+    @Modifying
+    @Query("update CardBalanceSlot s set s.balance = s.balance + :amount where exists " +
+            "(select 1 from Card c where c.id = s.cardId and c.cardNumber = :cardNumber and c.user.id = :userId " +
+            "and c.status = :status and c.balanceStripes > 0 and mod(:slotHash, c.balanceStripes) = s.slot)")
+    int credit(@Param("cardNumber") String cardNumber, @Param("userId") Long userId, @Param("status") Status status,
+               @Param("slotHash") int slotHash, @Param("amount") long amount);
+
+    @Modifying
+    @Query("delete from CardBalanceSlot s where s.cardId = :cardId")
+    int deleteByCardId(@Param("cardId") Long cardId);
+}
@@ -1,26 +1,191 @@
 package com.example.bankcards.repository;
 
+import com.example.bankcards.dto.CardDTO;
 import com.example.bankcards.entity.Card;
-import com.example.bankcards.entity.User;
 import com.example.bankcards.entity.enums.Status;
+import com.example.bankcards.util.ETags;
+import com.example.bankcards.util.Money;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.AvailableHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface CardRepository extends JpaRepository<Card,Long> {
+public interface CardRepository extends JpaRepository<Card,Long>, JpaSpecificationExecutor<Card> {
+    /**
+     * Selects cards straight into {@link CardDTO} together with their owner, so that reading a page costs one
+     * statement however many cards or owners it holds.
+     */
+    String CARD_VIEW = "select new com.example.bankcards.dto.CardDTO(c.id, c.maskedCardNumber, u.username, u.role, " +
+            "c.validityPeriod, c.status, c.balance, c.stripedBalance) from Card c left join c.user u ";
+    String CARD_LISTING = CARD_VIEW + "where c.id > :afterId order by c.id";
+    /**
+     * Aggregates what a {@link #CARD_VIEW} row depends on without reading the rows: ids catch added and deleted
+     * cards, {@code version} every write to a card, the slot sums credits that leave the card row alone, and the
+     * ids of cards owned by admins a change of the owner's role.
+     */
+    String CARDS_VERSION = "select new com.example.bankcards.repository.CardRepository$CardsVersion(count(c), " +
+            "coalesce(sum(c.id), 0), coalesce(sum(c.version), 0), coalesce(sum(c.stripedBalance), 0), " +
+            "coalesce(sum(case when u.role = com.example.bankcards.entity.enums.Role.ADMIN then c.id else 0 end), 0)) " +
+            "from Card c left join c.user u ";
+
     boolean existsByCardNumber(String cardNumber);
 
     Optional<Card> findByCardNumber(String cardNumber);
 
-    List<Card> findByValidityPeriodBeforeAndStatusNot(LocalDateTime date, Status status);
+    @Query("select new com.example.bankcards.repository.CardRepository$CardRef(c.id, c.balanceStripes) " +
+            "from Card c where c.cardNumber = :cardNumber")
+    Optional<CardRef> findRefByCardNumber(@Param("cardNumber") String cardNumber);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Card c where c.id = :id")
+    Optional<Card> findByIdForUpdate(@Param("id") Long id);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Card c where c.id in :ids or c.cardNumber in :cardNumbers order by c.id")
+    List<Card> findAllForUpdate(@Param("ids") Collection<Long> ids,
+                                @Param("cardNumbers") Collection<String> cardNumbers);
+
+    /**
+     * Locks the senders and the unstriped recipients of a micro-batch of transfers in id order, so that batches
+     * sharing cards wait for each other instead of deadlocking. Striped recipients are credited on a slot and
+     * left unlocked, as on a single transfer.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from Card c where c.id in :ids " +
+            "or (c.cardNumber in :cardNumbers and c.balanceStripes = 0) order by c.id")
+    List<Card> findTransferCardsForUpdate(@Param("ids") Collection<Long> ids,
+                                          @Param("cardNumbers") Collection<String> cardNumbers);
+
+    /**
+     * Locks up to {@code pageable.getPageSize()} cards that still have unapplied ledger entries,
+     * skipping cards that are currently locked by a transfer or another aggregator.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    @Query("select c from Card c where exists " +
+            "(select 1 from LedgerEntry l where l.cardId = c.id and l.applied = false) order by c.id")
+    List<Card> findWithUnappliedLedgerForUpdate(Pageable pageable);
+
+    /**
+     * Materialized balance plus balance slots plus the unapplied ledger tail, read in one statement so that both parts come from the
+     * same snapshot even while the aggregator is folding entries into the balance.
+     */
+    @Query("select c.balance + coalesce((select sum(s.balance) from CardBalanceSlot s where s.cardId = c.id), 0) " +
+            "+ coalesce((select sum(l.amount) from LedgerEntry l where l.cardId = c.id and l.applied = false), 0) " +
+            "from Card c where c.id = :id")
+    long findLedgerBalance(@Param("id") Long id);
+
+    @Modifying
+    @Query("update Card c set c.balance = c.balance - :amount, c.version = c.version + 1 " +
+            "where c.id = :id and c.user.id = :userId and c.status = :status and c.balance >= :amount")
+    int debit(@Param("id") Long id, @Param("userId") Long userId, @Param("status") Status status,
+              @Param("amount") long amount);
+
+    @Modifying
+    @Query("update Card c set c.balance = c.balance + :amount, c.version = c.version + 1 " +
+            "where c.cardNumber = :cardNumber and c.user.id = :userId and c.status = :status and c.balanceStripes = 0")
+    int credit(@Param("cardNumber") String cardNumber, @Param("userId") Long userId, @Param("status") Status status,
+               @Param("amount") long amount);
+
+    @Query("select coalesce(max(c.id), 0) from Card c")
+    long findMaxId();
+
+    /**
+     * Expires the cards with an id in {@code (fromId, toId]} whose validity period ended before {@code now}.
+     * The version is bumped like on any other write, so a transfer holding the card as an entity fails its
+     * optimistic check and is retried against the new status.
+     */
+    @Modifying
+    @Query("update Card c set c.status = :expired, c.version = c.version + 1 " +
+            "where c.id > :fromId and c.id <= :toId and c.validityPeriod < :now and c.status <> :expired")
+    int expire(@Param("fromId") long fromId, @Param("toId") long toId, @Param("now") LocalDateTime now,
+               @Param("expired") Status expired);
+
+    /**
+     * One page of the admin listing: up to {@code limit} cards with an id greater than {@code afterId}, in id order.
+     */
+    @Query(CARD_LISTING)
+    List<CardDTO> findListingAfter(@Param("afterId") long afterId, Limit limit);
+
+    /**
+     * The admin listing from {@code afterId} on, fetched from the database 500 rows at a time. The rows are not
+     * entities, so nothing accumulates in the persistence context. Must be consumed inside a transaction and closed.
+     */
+    @QueryHints(@QueryHint(name = AvailableHints.HINT_FETCH_SIZE, value = "500"))
+    @Query(CARD_LISTING)
+    Stream<CardDTO> streamListingAfter(@Param("afterId") long afterId);
+
+    @Query("select c from Card c where c.user.id = :userId")
+    Page<Card> findAllByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @Query(value = CARD_VIEW + "where c.userId = :userId",
+            countQuery = "select count(c) from Card c where c.userId = :userId")
+    Page<CardDTO> findViewsByUserId(@Param("userId") Long userId, Pageable pageable);
+
+    @Query(value = CARD_VIEW + "where c.userId = :userId and c.lastFour = :lastFour",
+            countQuery = "select count(c) from Card c where c.userId = :userId and c.lastFour = :lastFour")
+    Page<CardDTO> findViewsByUserIdAndLastFour(@Param("userId") Long userId, @Param("lastFour") String lastFour,
+                                               Pageable pageable);
+
+    /**
+     * Cards of the user whose number matches a {@link com.example.bankcards.service.CardSearch#pattern()}.
+     */
+    @Query(value = CARD_VIEW + "where c.userId = :userId and c.cardNumber like :pattern",
+            countQuery = "select count(c) from Card c where c.userId = :userId and c.cardNumber like :pattern")
+    Page<CardDTO> findViewsByUserIdAndCardNumberLike(@Param("userId") Long userId, @Param("pattern") String pattern,
+                                                     Pageable pageable);
+
+    @Query(CARDS_VERSION + "where c.userId = :userId")
+    CardsVersion findVersionByUserId(@Param("userId") Long userId);
+
+    @Query(CARDS_VERSION + "where c.id = :id")
+    CardsVersion findVersionById(@Param("id") Long id);
+
+    /**
+     * The version of the admin listing page {@link #findListingAfter} returns for the same arguments.
+     */
+    @Query(CARDS_VERSION + "where c.id in (select l.id from Card l where l.id > :afterId order by l.id limit :limit)")
+    CardsVersion findListingVersionAfter(@Param("afterId") long afterId, @Param("limit") int limit);
+
+    /**
+     * Owner, number and total balance of a card, for {@link com.example.bankcards.service.BalanceCache}.
+     */
+    @Query("select new com.example.bankcards.repository.CardRepository$BalanceView(c.userId, c.cardNumber, " +
+            "c.balance, c.stripedBalance) from Card c where c.id = :id")
+    Optional<BalanceView> findBalanceViewById(@Param("id") Long id);
+
+    @Query(CARD_VIEW + "where c.id = :id")
+    Optional<CardDTO> findViewById(@Param("id") Long id);
+
+    record CardRef(Long id, int balanceStripes) {
+    }
 
-    Page<Card> findAllByUserAndCardNumberContainingIgnoreCase(User user, String cardNumber, Pageable pageable);
+    record CardsVersion(long count, long idSum, long versionSum, long stripedBalanceSum, long adminCardIdSum) {
+        public String eTag() {
+            return ETags.of(count, idSum, versionSum, stripedBalanceSum, adminCardIdSum);
+        }
+    }
 
-    Page<Card> findAllByUser(User user, Pageable pageable);
+    record BalanceView(Long userId, String cardNumber, long balance, Long stripedBalance) {
+        public long totalBalance() {
+            return stripedBalance == null ? balance : Money.add(balance, stripedBalance);
+        }
+    }
 }
@@ -0,0 +1,36 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.IdempotencyKey;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface IdempotencyKeyRepository extends JpaRepository<IdempotencyKey, Long> {
+    Optional<IdempotencyKey> findByScopeAndKey(String scope, String key);
+
+    /**
+     * Claims the key for the current transaction. When another transaction holds the same key the insert waits
+     * for it to finish and then inserts nothing, so a result of {@code 0} means the key is already taken.
+     */
+    @Modifying
+    @Query(value = "insert into idempotency_keys (scope, idempotency_key, request_hash, created_at, expires_at) " +
+            "values (:scope, :key, :requestHash, :createdAt, :expiresAt) on conflict do nothing", nativeQuery = true)
+    int insertIfAbsent(@Param("scope") String scope, @Param("key") String key,
+                       @Param("requestHash") String requestHash, @Param("createdAt") LocalDateTime createdAt,
+                       @Param("expiresAt") LocalDateTime expiresAt);
+
+    @Modifying
+    @Query("update IdempotencyKey k set k.responseStatus = :responseStatus where k.scope = :scope and k.key = :key")
+    int complete(@Param("scope") String scope, @Param("key") String key,
+                 @Param("responseStatus") int responseStatus);
+
+    @Modifying
+    @Query("delete from IdempotencyKey k where k.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
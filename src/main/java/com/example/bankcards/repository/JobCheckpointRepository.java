@@ -0,0 +1,21 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.JobCheckpoint;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface JobCheckpointRepository extends JpaRepository<JobCheckpoint, String> {
+    /**
+     * Locks the checkpoint, so that instances running the same job take its chunks one after another.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select j from JobCheckpoint j where j.name = :name")
+    Optional<JobCheckpoint> findByNameForUpdate(@Param("name") String name);
+}
@@ -0,0 +1,29 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.LedgerEntry;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface LedgerEntryRepository extends JpaRepository<LedgerEntry, Long> {
+    @Query("select coalesce(sum(l.amount), 0) from LedgerEntry l where l.cardId = :cardId and l.applied = false")
+    long sumUnappliedAmount(@Param("cardId") Long cardId);
+
+    @Query("select l.cardId as cardId, sum(l.amount) as amount from LedgerEntry l " +
+            "where l.cardId in :cardIds and l.applied = false group by l.cardId")
+    List<CardAmount> sumUnappliedAmountByCard(@Param("cardIds") Collection<Long> cardIds);
+
+    List<LedgerEntry> findByCardIdInAndAppliedFalse(Collection<Long> cardIds);
+
+    interface CardAmount {
+        Long getCardId();
+
+        Long getAmount();
+    }
+
+}
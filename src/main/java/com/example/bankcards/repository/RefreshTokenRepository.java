@@ -0,0 +1,28 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.RefreshToken;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+
+    /**
+     * Consumes the token. Of two requests presenting the same token only one deletes it, so a result of {@code 0}
+     * means the token has already been used.
+     */
+    @Modifying
+    @Query("delete from RefreshToken t where t.id = :id")
+    int consume(@Param("id") Long id);
+
+    @Modifying
+    @Query("delete from RefreshToken t where t.expiresAt < :now")
+    int deleteExpired(@Param("now") LocalDateTime now);
+}
@@ -0,0 +1,20 @@
+package com.example.bankcards.repository;
+
+import com.example.bankcards.entity.UserInvalidation;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface UserInvalidationRepository extends JpaRepository<UserInvalidation, Long> {
+    List<UserInvalidation> findByCreatedAtAfterOrderById(LocalDateTime after);
+
+    @Modifying
+    @Query("delete from UserInvalidation i where i.createdAt < :before")
+    int deleteOlderThan(@Param("before") LocalDateTime before);
+}
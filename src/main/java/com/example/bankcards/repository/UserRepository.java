@@ -2,8 +2,12 @@ package com.example.bankcards.repository;
 
 import com.example.bankcards.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -11,4 +15,7 @@ public interface UserRepository extends JpaRepository<User,Long> {
     Optional<User> findByUsername(String name);
 
     boolean existsByUsername(String username);
+
+    @Query("select u.username from User u where u.username in :usernames")
+    List<String> findExistingUsernames(@Param("usernames") Collection<String> usernames);
 }
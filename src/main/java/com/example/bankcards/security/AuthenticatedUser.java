@@ -0,0 +1,23 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.enums.Role;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.security.Principal;
+import java.util.List;
+
+/**
+ * Principal of a request authenticated by an access token, built from the token's claims alone.
+ */
+public record AuthenticatedUser(Long id, String username, Role role) implements Principal {
+
+    @Override
+    public String getName() {
+        return username;
+    }
+
+    public List<GrantedAuthority> getAuthorities() {
+        return List.of(new SimpleGrantedAuthority("ROLE_" + role.name()));
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.exception.PasswordHashingUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BCrypt on a dedicated pool of {@code threads} threads with at most {@code queue-capacity} hashes waiting,
+ * so a burst of logins takes at most that many cores and leaves request threads free for other endpoints.
+ * When the queue is full the call fails at once with {@code 503} and {@code Retry-After}.
+ * Hashes stored with a lower cost than {@code password.strength} are reported by {@link #upgradeEncoding}
+ * and re-hashed by Spring Security on the next successful login.
+ */
+@Component
+public class BoundedPasswordEncoder implements PasswordEncoder {
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final Duration retryAfter;
+    private final MeterRegistry meterRegistry;
+    private final Counter rejected;
+
+    @Autowired
+    public BoundedPasswordEncoder(MeterRegistry meterRegistry,
+                                  @Value("${password.strength:10}") int strength,
+                                  @Value("${password.hashing.threads:2}") int threads,
+                                  @Value("${password.hashing.queue-capacity:64}") int queueCapacity,
+                                  @Value("${password.hashing.retry-after:1s}") Duration retryAfter) {
+        this(new BCryptPasswordEncoder(strength), meterRegistry, threads, queueCapacity, retryAfter);
+    }
+
+    BoundedPasswordEncoder(PasswordEncoder delegate, MeterRegistry meterRegistry, int threads, int queueCapacity,
+                           Duration retryAfter) {
+        this.delegate = delegate;
+        this.meterRegistry = meterRegistry;
+        this.retryAfter = retryAfter;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hashing-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        this.rejected = Counter.builder("password.hashing.rejected")
+                .description("Password hashes refused because the hashing queue was full")
+                .register(meterRegistry);
+        Gauge.builder("password.hashing.queue.depth", executor, pool -> pool.getQueue().size())
+                .description("Password hashes waiting for a hashing thread")
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return run("encode", () -> delegate.encode(rawPassword));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return run("matches", () -> delegate.matches(rawPassword, encodedPassword));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> T run(String operation, Callable<T> hash) {
+        Timer queueWait = Timer.builder("password.hashing.queue.wait").tag("operation", operation)
+                .description("Time a password hash waited for a hashing thread")
+                .register(meterRegistry);
+        Timer hashTime = Timer.builder("password.hashing.time").tag("operation", operation)
+                .description("Time spent computing a password hash")
+                .register(meterRegistry);
+        long submittedAt = System.nanoTime();
+        Future<T> result;
+        try {
+            result = executor.submit(() -> {
+                queueWait.record(System.nanoTime() - submittedAt, TimeUnit.NANOSECONDS);
+                return hashTime.recordCallable(hash);
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHashingUnavailableException(retryAfter);
+        }
+
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a password hash", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+}
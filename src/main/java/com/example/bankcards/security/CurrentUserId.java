@@ -0,0 +1,16 @@
+package com.example.bankcards.security;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a {@code Long} controller parameter to the id of the authenticated user.
+ *
+ * @see CurrentUserIdArgumentResolver
+ */
+@Target(ElementType.PARAMETER)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface CurrentUserId {
+}
@@ -0,0 +1,36 @@
+package com.example.bankcards.security;
+
+import org.springframework.core.MethodParameter;
+import org.springframework.security.authentication.AuthenticationCredentialsNotFoundException;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.support.WebDataBinderFactory;
+import org.springframework.web.context.request.NativeWebRequest;
+import org.springframework.web.method.support.HandlerMethodArgumentResolver;
+import org.springframework.web.method.support.ModelAndViewContainer;
+
+import java.security.Principal;
+
+/**
+ * Resolves {@link CurrentUserId} parameters from the request's {@link AuthenticatedUser}, without a database query.
+ */
+public class CurrentUserIdArgumentResolver implements HandlerMethodArgumentResolver {
+
+    @Override
+    public boolean supportsParameter(MethodParameter parameter) {
+        return parameter.hasParameterAnnotation(CurrentUserId.class) && parameter.getParameterType() == Long.class;
+    }
+
+    @Override
+    public Long resolveArgument(MethodParameter parameter, ModelAndViewContainer mavContainer,
+                                NativeWebRequest webRequest, WebDataBinderFactory binderFactory) {
+        Principal principal = webRequest.getUserPrincipal();
+        if (principal instanceof Authentication authentication
+                && authentication.getPrincipal() instanceof AuthenticatedUser user) {
+            return user.id();
+        }
+        if (principal instanceof AuthenticatedUser user) {
+            return user.id();
+        }
+        throw new AuthenticationCredentialsNotFoundException("Request is not authenticated with an access token");
+    }
+}
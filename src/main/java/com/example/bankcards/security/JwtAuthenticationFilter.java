@@ -1,6 +1,11 @@
 package com.example.bankcards.security;
 
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.exception.JwtException;
+import com.example.bankcards.service.TokenRevocationService;
 import com.example.bankcards.service.UserService;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -18,10 +23,13 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
     private final UserService userService;
+    private final TokenRevocationService tokenRevocationService;
 
-    public JwtAuthenticationFilter(JwtUtil jwtUtil, UserService userService) {
+    public JwtAuthenticationFilter(JwtUtil jwtUtil, UserService userService,
+                                   TokenRevocationService tokenRevocationService) {
         this.jwtUtil = jwtUtil;
         this.userService = userService;
+        this.tokenRevocationService = tokenRevocationService;
     }
 
     @Override
@@ -43,20 +51,22 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
         if(authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
             jwt = authorizationHeader.substring(7);
-            username = jwtUtil.extractUsernameFromToken(jwt);
+            Claims claims = jwtUtil.validateToken(jwt);
+            if (tokenRevocationService.isRevoked(claims.getId())) {
+                throw new JwtException("JWT token is revoked");
+            }
+            username = claims.getSubject();
 
             if(username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-                UserDetailsService userDetails = (UserDetailsService) userService.loadUserByUsername(username);
+                AuthenticatedUser user = authenticatedUser(claims);
 
-                if(jwtUtil.validateToken(jwt, userDetails)) {
-                    UsernamePasswordAuthenticationToken authentication =
-                            new UsernamePasswordAuthenticationToken(userDetails,
-                                    null, userDetails.getAuthorities());
+                UsernamePasswordAuthenticationToken authentication =
+                        new UsernamePasswordAuthenticationToken(user,
+                                null, user.getAuthorities());
 
-                    authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
-                    SecurityContextHolder.getContext().setAuthentication(authentication);
-                }
+                SecurityContextHolder.getContext().setAuthentication(authentication);
                 filterChain.doFilter(request, response);
             }
         }
@@ -64,4 +74,18 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
             filterChain.doFilter(request, response);
         }
     }
+
+    /**
+     * Builds the principal from the token's claims. Tokens issued before they carried the user's id and role
+     * are resolved by loading the user instead.
+     */
+    private AuthenticatedUser authenticatedUser(Claims claims) {
+        Long userId = claims.get(JwtUtil.USER_ID_CLAIM, Long.class);
+        String role = claims.get(JwtUtil.ROLE_CLAIM, String.class);
+        if (userId != null && role != null) {
+            return new AuthenticatedUser(userId, claims.getSubject(), Role.valueOf(role));
+        }
+        User user = userService.findByUsername(claims.getSubject());
+        return new AuthenticatedUser(user.getId(), user.getUsername(), user.getRole());
+    }
 }
@@ -1,73 +1,110 @@
 package com.example.bankcards.security;
 
+import com.example.bankcards.entity.User;
 import com.example.bankcards.exception.JwtException;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.UnsupportedJwtException;
 import io.jsonwebtoken.security.Keys;
 import io.jsonwebtoken.security.SignatureException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Date;
-import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.UUID;
 
+/**
+ * Issues and verifies access tokens.
+ * Besides the username as subject, a token carries the user's id and role, so an authenticated request can be
+ * served without loading its user, and a random id ({@code jti}) by which it can be revoked before it expires.
+ * The signing key and parser are built once. Verified tokens are kept in a bounded cache keyed by the SHA-256
+ * digest of the token until their own {@code exp}, so a client repeating the same token is verified once.
+ * Cache maintenance runs on the calling thread, so an eviction on a miss does not hand work to the common pool.
+ */
 @Component
 public class JwtUtil {
-    @Value("${jwt.secret}")
-    private String secretKey;
+    public static final String USER_ID_CLAIM = "uid";
+    public static final String ROLE_CLAIM = "role";
 
-    @Value("${jwt.expiration}")
-    private int expirationTime;
+    private final SecretKey signingKey;
+    private final JwtParser parser;
+    private final int expirationTime;
+    private final Cache<String, Claims> verifiedTokens;
 
-    public String generateAccessToken(String username){
-        return generateToken(username, expirationTime, new HashMap<>());
+    public JwtUtil(MeterRegistry meterRegistry,
+                   @Value("${jwt.secret}") String secretKey,
+                   @Value("${jwt.expiration}") int expirationTime,
+                   @Value("${jwt.cache-size:10000}") long cacheSize) {
+        this.signingKey = Keys.hmacShaKeyFor(secretKey.getBytes(StandardCharsets.UTF_8));
+        this.parser = Jwts.parser().verifyWith(signingKey).build();
+        this.expirationTime = expirationTime;
+        this.verifiedTokens = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfter(Expiry.creating((String digest, Claims claims) ->
+                        Duration.ofMillis(claims.getExpiration().getTime() - System.currentTimeMillis())))
+                .executor(Runnable::run)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "verified-tokens");
     }
 
-    private SecretKey getSigningKey() {
-        return Keys.hmacShaKeyFor(secretKey.getBytes(StandardCharsets.UTF_8));
+    /**
+     * @return how long an access token stays valid, in seconds
+     */
+    public int getExpirationTime() {
+        return expirationTime;
     }
 
-    public String extractUsernameFromToken(String token) {
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload()
-                .getSubject();
+    public String generateAccessToken(User user){
+        return generateToken(user.getUsername(), expirationTime,
+                Map.of(USER_ID_CLAIM, user.getId(), ROLE_CLAIM, user.getRole().name()));
     }
 
-    private String generateToken(String username, int expirationTime, HashMap<String, String> claims) {
+    private String generateToken(String username, int expirationTime, Map<String, ?> claims) {
         return Jwts.builder()
                 .header()
                 .add("typ", "JWT")
                 .and()
+                .id(UUID.randomUUID().toString())
                 .subject(username)
                 .claims(claims)
                 .issuedAt(new Date())
                 .expiration(new Date(System.currentTimeMillis() + expirationTime * 1000L))
                 .issuer("BankCardsApp")
-                .signWith(getSigningKey(), Jwts.SIG.HS256)
+                .signWith(signingKey, Jwts.SIG.HS256)
                 .compact();
     }
 
-    public boolean validateToken(String token, UserDetails userDetails) {
-        final String username = extractUsernameFromToken(token);
-
-        if(!username.equals(userDetails.getUsername())) {
-            return false;
+    /**
+     * Verifies the token's signature and expiry in a single parse.
+     *
+     * @return the token's claims
+     * @throws JwtException if the token is invalid or expired
+     */
+    public Claims validateToken(String token) {
+        String digest = digest(token);
+        Claims claims = verifiedTokens.getIfPresent(digest);
+        if (claims != null) {
+            return claims;
         }
 
         try {
-            Jwts.parser()
-                    .verifyWith(getSigningKey())
-                    .build()
-                    .parseSignedClaims(token);
-            return true;
+            claims = parser.parseSignedClaims(token).getPayload();
         } catch (SignatureException e) {
             throw new JwtException("Invalid JWT signature: " + e.getMessage());
         } catch (MalformedJwtException e) {
@@ -79,5 +116,21 @@ public class JwtUtil {
         } catch (IllegalArgumentException e) {
             throw new JwtException("JWT claims string is empty: " + e.getMessage());
         }
+        if (claims.getExpiration() != null) {
+            verifiedTokens.put(digest, claims);
+        }
+        return claims;
+    }
+
+    /**
+     * @return the hex-encoded SHA-256 digest of the token
+     */
+    public static String digest(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 }
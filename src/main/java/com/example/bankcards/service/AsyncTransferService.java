@@ -0,0 +1,217 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.RecentWriters;
+import com.example.bankcards.dto.AsyncTransferDTO;
+import com.example.bankcards.entity.AsyncTransfer;
+import com.example.bankcards.entity.enums.TransferStatus;
+import com.example.bankcards.exception.AsyncTransferLimitExceededException;
+import com.example.bankcards.exception.AsyncTransferNotFoundException;
+import com.example.bankcards.repository.AsyncTransferRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs transfers in the background, one virtual thread each, with at most {@code max-in-flight} running at once.
+ * An accepted transfer is recorded in {@code async_transfers} before it starts, and its outcome is written in the
+ * same transaction as the transfer itself, so a record that is still {@code PENDING} belongs to a transfer that has
+ * not been applied. Records left {@code PENDING} longer than {@code stale-after}, by a crash or a failure to record
+ * the outcome, are marked {@code FAILED}; a transfer still running by then finds its record no longer pending and
+ * rolls back. Finished records are answered from a bounded in-memory cache; all of them expire after {@code ttl}.
+ */
+@Service
+public class AsyncTransferService {
+    private static final Logger log = LoggerFactory.getLogger(AsyncTransferService.class);
+    private static final int MAX_ERROR_LENGTH = 500;
+    private static final String ABANDONED = "Transfer was interrupted before it completed and has not been applied";
+
+    private final CardService cardService;
+    private final AsyncTransferRepository asyncTransferRepository;
+    private final RecentWriters recentWriters;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final Duration ttl;
+    private final Duration staleAfter;
+    private final Cache<String, CachedTransfer> recentTransfers;
+
+    public AsyncTransferService(CardService cardService, AsyncTransferRepository asyncTransferRepository,
+                                RecentWriters recentWriters, PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                                @Value("${card.transfer.async.max-in-flight:256}") int maxInFlight,
+                                @Value("${card.transfer.async.ttl:1h}") Duration ttl,
+                                @Value("${card.transfer.async.cache-size:10000}") long cacheSize,
+                                @Value("${card.transfer.async.stale-after:5m}") Duration staleAfter) {
+        this.cardService = cardService;
+        this.asyncTransferRepository = asyncTransferRepository;
+        this.recentWriters = recentWriters;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.ttl = ttl;
+        this.staleAfter = staleAfter;
+        this.recentTransfers = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, recentTransfers, "async-transfers");
+        Gauge.builder("card.transfer.async.in_flight", inFlight, permits -> maxInFlight - permits.availablePermits())
+                .description("Asynchronous transfers accepted and not finished yet")
+                .register(meterRegistry);
+    }
+
+    public AsyncTransferDTO submit(Long cardId, String recipientCardNumber, long amount, Long userId) {
+        if (!inFlight.tryAcquire()) {
+            throw new AsyncTransferLimitExceededException(maxInFlight);
+        }
+        try {
+            LocalDateTime now = LocalDateTime.now();
+            AsyncTransfer transfer = new AsyncTransfer();
+            transfer.setId(UUID.randomUUID().toString());
+            transfer.setUserId(userId);
+            transfer.setCardId(cardId);
+            transfer.setRecipientCardNumber(recipientCardNumber);
+            transfer.setAmount(amount);
+            transfer.setStatus(TransferStatus.PENDING);
+            transfer.setCreatedAt(now);
+            transfer.setExpiresAt(now.plus(ttl));
+            asyncTransferRepository.save(transfer);
+            AsyncTransferDTO accepted = convertToAsyncTransferDTO(transfer);
+
+            executor.execute(() -> run(transfer));
+            return accepted;
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    /**
+     * A pending transfer is read from the database every time, since it may finish on another instance.
+     */
+    public AsyncTransferDTO getTransfer(String transferId, Long userId) {
+        CachedTransfer cached = recentTransfers.getIfPresent(transferId);
+        if (cached == null) {
+            AsyncTransfer transfer = asyncTransferRepository.findById(transferId)
+                    .orElseThrow(() -> new AsyncTransferNotFoundException(transferId));
+            cached = transfer.getStatus() == TransferStatus.PENDING ? toCachedTransfer(transfer) : cache(transfer);
+        }
+        if (!cached.userId().equals(userId) || !cached.expiresAt().isAfter(LocalDateTime.now())) {
+            throw new AsyncTransferNotFoundException(transferId);
+        }
+        return cached.transfer();
+    }
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${card.transfer.async.cleanup-interval:600000}")
+    public void deleteExpired() {
+        asyncTransferRepository.deleteExpired(LocalDateTime.now());
+    }
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${card.transfer.async.recovery-interval:60000}")
+    public void failAbandoned() {
+        LocalDateTime now = LocalDateTime.now();
+        int failed = asyncTransferRepository.failPendingCreatedBefore(now.minus(staleAfter), ABANDONED, now);
+        if (failed > 0) {
+            log.warn("Marked {} asynchronous transfers left pending for over {} as failed", failed, staleAfter);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.close();
+    }
+
+    /**
+     * The record is updated in memory and cached only once its outcome has committed; if the outcome cannot be
+     * recorded, the record stays {@code PENDING} until {@link #failAbandoned} fails it.
+     */
+    private void run(AsyncTransfer transfer) {
+        try {
+            LocalDateTime completedAt = transactionTemplate.execute(status -> {
+                cardService.transfer(transfer.getCardId(), transfer.getRecipientCardNumber(), transfer.getAmount(),
+                        transfer.getUserId());
+                return complete(transfer, TransferStatus.COMPLETED, null);
+            });
+            finish(transfer, TransferStatus.COMPLETED, null, completedAt);
+        } catch (RuntimeException e) {
+            String message = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+            String error = message.length() > MAX_ERROR_LENGTH ? message.substring(0, MAX_ERROR_LENGTH) : message;
+            try {
+                LocalDateTime completedAt = transactionTemplate.execute(status ->
+                        complete(transfer, TransferStatus.FAILED, error));
+                finish(transfer, TransferStatus.FAILED, error, completedAt);
+            } catch (RuntimeException recordFailure) {
+                log.warn("Could not record the failure of transfer {}", transfer.getId(), recordFailure);
+            }
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    /**
+     * Runs on a thread without the user's security context, so the user is recorded among the {@link RecentWriters}
+     * here and reads the outcome from the primary.
+     *
+     * @return when the outcome was recorded
+     * @throws IllegalStateException if the record is no longer pending, which rolls the transfer back with it
+     */
+    private LocalDateTime complete(AsyncTransfer transfer, TransferStatus status, String error) {
+        LocalDateTime now = LocalDateTime.now();
+        if (asyncTransferRepository.complete(transfer.getId(), status, error, now) == 0) {
+            throw new IllegalStateException("Transfer " + transfer.getId() + " is no longer pending");
+        }
+        recentWriters.record(transfer.getUserId());
+        return now;
+    }
+
+    private void finish(AsyncTransfer transfer, TransferStatus status, String error, LocalDateTime completedAt) {
+        transfer.setStatus(status);
+        transfer.setError(error);
+        transfer.setCompletedAt(completedAt);
+        cache(transfer);
+    }
+
+    private CachedTransfer cache(AsyncTransfer transfer) {
+        CachedTransfer cached = toCachedTransfer(transfer);
+        recentTransfers.put(transfer.getId(), cached);
+        return cached;
+    }
+
+    private CachedTransfer toCachedTransfer(AsyncTransfer transfer) {
+        return new CachedTransfer(transfer.getUserId(), transfer.getExpiresAt(), convertToAsyncTransferDTO(transfer));
+    }
+
+    private AsyncTransferDTO convertToAsyncTransferDTO(AsyncTransfer transfer) {
+        AsyncTransferDTO transferDTO = new AsyncTransferDTO();
+        transferDTO.setId(transfer.getId());
+        transferDTO.setStatus(transfer.getStatus());
+        transferDTO.setError(transfer.getError());
+        transferDTO.setCreatedAt(transfer.getCreatedAt());
+        transferDTO.setCompletedAt(transfer.getCompletedAt());
+        return transferDTO;
+    }
+
+    private record CachedTransfer(Long userId, LocalDateTime expiresAt, AsyncTransferDTO transfer) {
+    }
+}
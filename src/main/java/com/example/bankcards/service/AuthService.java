@@ -1,19 +1,31 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.config.RecentWriters;
 import com.example.bankcards.dto.AuthenticationDTO;
+import com.example.bankcards.dto.TokenDTO;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.exception.InvalidRefreshTokenException;
+import com.example.bankcards.exception.JwtException;
 import com.example.bankcards.exception.UserAlreadyExistsException;
+import com.example.bankcards.mapper.UserMapper;
 import com.example.bankcards.repository.UserRepository;
 import com.example.bankcards.security.JwtUtil;
-import org.modelmapper.ModelMapper;
+import com.example.bankcards.security.UserDetailsService;
+import io.jsonwebtoken.Claims;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 @Service
 @Transactional(readOnly = true)
@@ -22,34 +34,97 @@ public class AuthService {
     private final PasswordEncoder passwordEncoder;
     private final JwtUtil jwtUtil;
     private final AuthenticationManager authenticationManager;
-    private final ModelMapper modelMapper;
+    private final UserMapper userMapper;
+    private final UserCache userCache;
+    private final RefreshTokenService refreshTokenService;
+    private final TokenRevocationService tokenRevocationService;
+    private final RecentWriters recentWriters;
+    private final TransactionTemplate primaryReads;
 
-    public AuthService(UserRepository userRepository, PasswordEncoder passwordEncoder, JwtUtil jwtUtil, AuthenticationManager authenticationManager, ModelMapper modelMapper) {
+    public AuthService(UserRepository userRepository, PasswordEncoder passwordEncoder, JwtUtil jwtUtil, AuthenticationManager authenticationManager, UserMapper userMapper,
+                       UserCache userCache, RefreshTokenService refreshTokenService,
+                       TokenRevocationService tokenRevocationService, RecentWriters recentWriters,
+                       PlatformTransactionManager transactionManager) {
         this.userRepository = userRepository;
         this.passwordEncoder = passwordEncoder;
         this.jwtUtil = jwtUtil;
         this.authenticationManager = authenticationManager;
-        this.modelMapper = modelMapper;
+        this.userMapper = userMapper;
+        this.userCache = userCache;
+        this.refreshTokenService = refreshTokenService;
+        this.tokenRevocationService = tokenRevocationService;
+        this.recentWriters = recentWriters;
+        this.primaryReads = new TransactionTemplate(transactionManager);
     }
 
-    @Transactional
-    public String register(AuthenticationDTO authDTO){
-        User user = modelMapper.map(authDTO, User.class);
-        if(userRepository.existsByUsername(user.getUsername())) {
+    /**
+     * Runs outside a transaction so that no database connection is held while the password is hashed;
+     * the insert commits on its own. The request is anonymous, so the new user is recorded among the
+     * {@link RecentWriters} explicitly, and their first requests with the issued tokens read from the primary.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public TokenDTO register(AuthenticationDTO authDTO){
+        User user = userMapper.toUser(authDTO);
+        if(userCache.find(user.getUsername()).isPresent()) {
             throw new UserAlreadyExistsException(user.getUsername());
         }
         user.setPassword(passwordEncoder.encode(user.getPassword()));
         user.setRole(Role.USER);
         userRepository.save(user);
-        return jwtUtil.generateAccessToken(user.getUsername());
+        userCache.invalidate(user.getUsername());
+        recentWriters.record(user.getId());
+        return issueTokens(user);
     }
 
-    public String login(AuthenticationDTO authDTO) {
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public TokenDTO login(AuthenticationDTO authDTO) {
         Authentication authentication = authenticationManager.authenticate(
                 new UsernamePasswordAuthenticationToken(authDTO.getUsername(), authDTO.getPassword()));
 
         SecurityContextHolder.getContext().setAuthentication(authentication);
 
-        return jwtUtil.generateAccessToken(authDTO.getUsername());
+        return issueTokens(((UserDetailsService) authentication.getPrincipal()).getUser());
+    }
+
+    /**
+     * Exchanges a refresh token for a new access token and a new refresh token. The user is reloaded in a read-write
+     * transaction, which {@link com.example.bankcards.config.DataSourceConfig} sends to the primary, so a role
+     * changed since the last login is reflected in the new access token however far the replicas lag.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public TokenDTO refresh(String refreshToken) {
+        Long userId = refreshTokenService.consume(refreshToken);
+        User user = primaryReads.execute(status -> userRepository.findById(userId))
+                .orElseThrow(InvalidRefreshTokenException::new);
+        return issueTokens(user);
+    }
+
+    /**
+     * Revokes the access token, if it is still valid, and the refresh token, if given.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void logout(String accessToken, String refreshToken) {
+        if (refreshToken != null) {
+            try {
+                refreshTokenService.consume(refreshToken);
+            } catch (InvalidRefreshTokenException e) {
+                // already used or expired, nothing to revoke
+            }
+        }
+        if (accessToken != null) {
+            Claims claims;
+            try {
+                claims = jwtUtil.validateToken(accessToken);
+            } catch (JwtException e) {
+                return;
+            }
+            tokenRevocationService.revoke(claims.getId(),
+                    LocalDateTime.ofInstant(claims.getExpiration().toInstant(), ZoneId.systemDefault()));
+        }
+    }
+
+    private TokenDTO issueTokens(User user) {
+        return new TokenDTO(jwtUtil.generateAccessToken(user), refreshTokenService.issue(user.getId()),
+                jwtUtil.getExpirationTime());
     }
 }
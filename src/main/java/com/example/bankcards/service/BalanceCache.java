@@ -0,0 +1,145 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferEngine;
+import com.example.bankcards.repository.CardRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read-through cache of card balances by card id, in front of {@link CardRepository} and, with the ledger engine,
+ * {@link LedgerService}. A change to a balance is followed by {@link #invalidate}, which evicts the card once the
+ * change has committed, so a rolled-back transfer never reaches the cache. Recipients a transfer only knows by number
+ * are evicted through {@link #invalidateCardNumber}. Entries also expire after {@code ttl}, which bounds how long
+ * another instance, which does not see this instance's evictions, can serve a balance changed here.
+ * Unknown cards are not cached.
+ */
+@Service
+public class BalanceCache {
+    private final CardRepository cardRepository;
+    private final LedgerService ledgerService;
+    private final TransactionTemplate primaryReads;
+    private final Cache<Long, CachedBalance> balances;
+    private final Map<String, Long> idsByCardNumber = new ConcurrentHashMap<>();
+    private final Timer staleness;
+    private final Counter invalidations;
+
+    @Value("${card.transfer.engine:ENTITY}")
+    private TransferEngine transferEngine;
+
+    public BalanceCache(CardRepository cardRepository, LedgerService ledgerService,
+                        PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                        @Value("${card.balance-cache.ttl:5s}") Duration ttl,
+                        @Value("${card.balance-cache.size:100000}") long size) {
+        this.cardRepository = cardRepository;
+        this.ledgerService = ledgerService;
+        this.primaryReads = new TransactionTemplate(transactionManager);
+        this.primaryReads.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.balances = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(ttl)
+                .executor(Runnable::run)
+                .removalListener((Long cardId, CachedBalance balance, RemovalCause cause) -> {
+                    if (balance != null) {
+                        idsByCardNumber.remove(balance.cardNumber(), cardId);
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, balances, "card-balances");
+        this.staleness = Timer.builder("card.balance.cache.staleness")
+                .description("Age of the cached balance returned by a read")
+                .register(meterRegistry);
+        this.invalidations = Counter.builder("card.balance.cache.invalidations")
+                .description("Balances evicted after a committed change")
+                .register(meterRegistry);
+    }
+
+    public Optional<CachedBalance> find(Long cardId) {
+        CachedBalance balance = balances.get(cardId, this::load);
+        if (balance != null) {
+            staleness.record(System.nanoTime() - balance.loadedAt(), TimeUnit.NANOSECONDS);
+        }
+        return Optional.ofNullable(balance);
+    }
+
+    public void invalidate(Long cardId) {
+        afterCommit(() -> evict(cardId));
+    }
+
+    public void invalidateCardNumber(String cardNumber) {
+        afterCommit(() -> {
+            Long cardId = idsByCardNumber.get(cardNumber);
+            if (cardId != null) {
+                evict(cardId);
+            }
+        });
+    }
+
+    /**
+     * Caches the balance of a card that was just created with it, once the creation has committed.
+     */
+    public void put(Long cardId, Long ownerId, String cardNumber, long balance) {
+        afterCommit(() -> {
+            idsByCardNumber.put(cardNumber, cardId);
+            balances.put(cardId, new CachedBalance(ownerId, cardNumber, balance, System.nanoTime()));
+        });
+    }
+
+    /**
+     * Runs with the cache lock of {@code cardId} held, so the card number is indexed before the balance can be read
+     * and an eviction by number racing with the load waits for it instead of missing it. Reads in a read-write
+     * transaction of its own, which {@link com.example.bankcards.config.DataSourceConfig} sends to the primary,
+     * so an evicted balance is never reloaded from a replica that has not caught up with the change yet. That takes
+     * a connection of its own, so {@link #find} should not be called from inside another transaction.
+     */
+    private CachedBalance load(Long cardId) {
+        return primaryReads.execute(status -> cardRepository.findBalanceViewById(cardId).map(view -> {
+            idsByCardNumber.put(view.cardNumber(), cardId);
+            long balance = transferEngine == TransferEngine.LEDGER
+                    ? ledgerService.getBalance(cardId) : view.totalBalance();
+            return new CachedBalance(view.userId(), view.cardNumber(), balance, System.nanoTime());
+        }).orElse(null));
+    }
+
+    private void evict(Long cardId) {
+        balances.invalidate(cardId);
+        invalidations.increment();
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /**
+     * @param loadedAt {@link System#nanoTime()} when the balance was read from the database
+     */
+    public record CachedBalance(Long ownerId, String cardNumber, long balance, long loadedAt) {
+    }
+}
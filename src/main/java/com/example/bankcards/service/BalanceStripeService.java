@@ -0,0 +1,88 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardBalanceSlot;
+import com.example.bankcards.entity.enums.Status;
+import com.example.bankcards.exception.InvalidBalanceStripesException;
+import com.example.bankcards.repository.CardBalanceSlotRepository;
+import com.example.bankcards.util.Money;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Balance striping for hot cards. A striped card keeps its balance in {@code cards.balance} plus N rows of
+ * {@code card_balance_slots}; credits land on the slot picked by the writing thread, so concurrent credits to the
+ * same card update different rows instead of queueing on the card row. Slots only ever grow: a debit that the
+ * card row cannot cover first folds the slots back into it.
+ * Folding and restriping lock the card row before its slots; a credit touches one slot row only and re-checks the
+ * card in the same statement, so it needs no lock on the card row.
+ */
+@Service
+@Transactional(readOnly = true)
+public class BalanceStripeService {
+    private final CardBalanceSlotRepository cardBalanceSlotRepository;
+
+    @Value("${card.balance-stripes.max:64}")
+    private int maxStripes;
+
+    public BalanceStripeService(CardBalanceSlotRepository cardBalanceSlotRepository) {
+        this.cardBalanceSlotRepository = cardBalanceSlotRepository;
+    }
+
+    /**
+     * Changes the number of slots of a locked card; {@code 0} turns striping off.
+     * The old slots are folded into the card balance before being replaced.
+     */
+    @Transactional
+    public void restripe(Card card, int stripes) {
+        if (stripes < 0 || stripes > maxStripes) {
+            throw new InvalidBalanceStripesException(maxStripes);
+        }
+        fold(card);
+        cardBalanceSlotRepository.deleteByCardId(card.getId());
+
+        List<CardBalanceSlot> slots = new ArrayList<>(stripes);
+        for (int slot = 0; slot < stripes; slot++) {
+            slots.add(new CardBalanceSlot(card.getId(), slot));
+        }
+        cardBalanceSlotRepository.saveAll(slots);
+        card.setBalanceStripes(stripes);
+    }
+
+    /**
+     * Credits a slot of the active striped card of user {@code userId} with the given number.
+     *
+     * @return the number of slots credited, {@code 0} if the card is missing, foreign, inactive or not striped
+     */
+    @Transactional
+    public int credit(String cardNumber, Long userId, long amount) {
+        return cardBalanceSlotRepository.credit(cardNumber, userId, Status.ACTIVE, slotHash(), amount);
+    }
+
+    /**
+     * Moves everything credited to the slots of a locked card into its balance.
+     *
+     * @return whether any amount was moved
+     */
+    @Transactional
+    public boolean fold(Card card) {
+        if (card.getBalanceStripes() == 0) {
+            return false;
+        }
+        long folded = 0;
+        for (CardBalanceSlot slot : cardBalanceSlotRepository.findByCardIdForUpdate(card.getId())) {
+            folded = Money.add(folded, slot.getBalance());
+            slot.setBalance(0);
+        }
+        card.setBalance(Money.add(card.getBalance(), folded));
+        return folded != 0;
+    }
+
+    private static int slotHash() {
+        return (int) (Thread.currentThread().threadId() & Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.ExpirationRunDTO;
+import com.example.bankcards.entity.JobCheckpoint;
+import com.example.bankcards.entity.enums.Status;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.JobCheckpointRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Expires cards whose validity period has ended, with one bulk UPDATE per range of {@code chunk-size} card ids,
+ * each in a transaction of its own: row locks are held for one chunk only, so a transfer in flight waits at most
+ * that long. The end of every chunk is committed with it to {@code job_checkpoints}, so a run cut short by a crash
+ * is resumed where it stopped, and instances running the job at the same time take the chunks one after another
+ * instead of repeating them.
+ */
+@Component
+public class CardExpirationJob {
+    static final String NAME = "card-expiration";
+
+    private static final Logger log = LoggerFactory.getLogger(CardExpirationJob.class);
+
+    private final CardRepository cardRepository;
+    private final JobCheckpointRepository jobCheckpointRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter expiredCards;
+    private final Timer chunkTimer;
+    private final AtomicLong checkpoint = new AtomicLong();
+
+    @Value("${card.expiration.chunk-size:1000}")
+    private int chunkSize;
+
+    public CardExpirationJob(CardRepository cardRepository, JobCheckpointRepository jobCheckpointRepository,
+                             PlatformTransactionManager transactionManager, MeterRegistry meterRegistry) {
+        this.cardRepository = cardRepository;
+        this.jobCheckpointRepository = jobCheckpointRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.expiredCards = Counter.builder("card.expiration.expired")
+                .description("Cards expired by the expiration job")
+                .register(meterRegistry);
+        this.chunkTimer = Timer.builder("card.expiration.chunk")
+                .description("Time to expire one chunk of card ids")
+                .register(meterRegistry);
+        Gauge.builder("card.expiration.checkpoint", checkpoint, AtomicLong::get)
+                .description("Last card id the running pass has reached")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${card.expiration.initial-delay:60000}",
+            fixedDelayString = "${card.expiration.interval:3600000}")
+    public void expireCards() {
+        run();
+    }
+
+    public ExpirationRunDTO run() {
+        LocalDateTime now = LocalDateTime.now();
+        long started = System.nanoTime();
+        long maxId = transactionTemplate.execute(status -> cardRepository.findMaxId());
+        long expired = 0;
+        int chunks = 0;
+        Chunk chunk;
+        do {
+            long chunkStarted = System.nanoTime();
+            chunk = transactionTemplate.execute(status -> expireChunk(now, maxId));
+            chunkTimer.record(System.nanoTime() - chunkStarted, TimeUnit.NANOSECONDS);
+            expiredCards.increment(chunk.expired());
+            expired += chunk.expired();
+            chunks++;
+            log.debug("Expired {} cards up to id {} of {}", expired, chunk.toId(), maxId);
+        } while (!chunk.last());
+
+        ExpirationRunDTO run = new ExpirationRunDTO(expired, chunks,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+        if (expired > 0) {
+            log.info("Expired {} cards in {} chunks, {} rows/s", expired, chunks, run.getRowsPerSecond());
+        }
+        return run;
+    }
+
+    /**
+     * A checkpoint reset by a pass that started no earlier than this run means that pass already covered
+     * everything this run would, so the run stops.
+     */
+    private Chunk expireChunk(LocalDateTime now, long maxId) {
+        JobCheckpoint job = jobCheckpointRepository.findByNameForUpdate(NAME)
+                .orElseThrow(() -> new IllegalStateException("Missing job checkpoint " + NAME));
+        if (job.getLastId() == 0 && job.getCompletedAt() != null && !job.getCompletedAt().isBefore(now)) {
+            return new Chunk(0, maxId, true);
+        }
+
+        long fromId = job.getLastId();
+        long toId = Math.min(fromId + chunkSize, maxId);
+        int expired = fromId < toId ? cardRepository.expire(fromId, toId, now, Status.EXPIRED) : 0;
+        boolean last = toId >= maxId;
+        job.setLastId(last ? 0 : toId);
+        if (last) {
+            job.setCompletedAt(now);
+        }
+        checkpoint.set(toId);
+        return new Chunk(expired, toId, last);
+    }
+
+    private record Chunk(int expired, long toId, boolean last) {
+    }
+}
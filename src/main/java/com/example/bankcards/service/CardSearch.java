@@ -0,0 +1,68 @@
+package com.example.bankcards.service;
+
+/**
+ * A card number search term and the cheapest way to match it, without changing which cards match. Spaces, dashes
+ * and mask asterisks in the term are ignored, so {@code "**** 1234"} is a last-four search; a trailing asterisk asks
+ * for a prefix.
+ * <ul>
+ *     <li>16 digits: {@link Strategy#EXACT}, the unique card number index;</li>
+ *     <li>digits followed by {@code *}: {@link Strategy#PREFIX}, a range over {@code (user_id, card_number)};</li>
+ *     <li>4 digits after a mask ({@code "**** 1234"}): {@link Strategy#LAST_FOUR}, equality on
+ *     {@code (user_id, last_four)};</li>
+ *     <li>any other digits, bare 4 digits included: {@link Strategy#CONTAINS}, the trigram index on PostgreSQL.
+ *     A bare {@code "4000"} matches those digits anywhere in the number, not only at the end;</li>
+ *     <li>anything else cannot match a card number: {@link Strategy#NONE}, no query at all.</li>
+ * </ul>
+ */
+public record CardSearch(Strategy strategy, String digits) {
+    private static final int CARD_NUMBER_LENGTH = 16;
+    private static final int LAST_FOUR_LENGTH = 4;
+
+    public enum Strategy {
+        EXACT, PREFIX, LAST_FOUR, CONTAINS, NONE
+    }
+
+    /**
+     * @return the search for {@code search}, or {@code null} if it is blank and the cards are not to be filtered
+     */
+    public static CardSearch parse(String search) {
+        if (search == null || search.isBlank()) {
+            return null;
+        }
+        String term = search.trim();
+        StringBuilder digits = new StringBuilder(term.length());
+        for (int i = 0; i < term.length(); i++) {
+            char c = term.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            } else if (c != ' ' && c != '-' && c != '*') {
+                return new CardSearch(Strategy.NONE, "");
+            }
+        }
+        if (digits.isEmpty() || digits.length() > CARD_NUMBER_LENGTH) {
+            return new CardSearch(Strategy.NONE, "");
+        }
+        if (digits.length() == CARD_NUMBER_LENGTH) {
+            return new CardSearch(Strategy.EXACT, digits.toString());
+        }
+        if (term.endsWith("*") && Character.isDigit(term.charAt(0))) {
+            return new CardSearch(Strategy.PREFIX, digits.toString());
+        }
+        if (digits.length() == LAST_FOUR_LENGTH && term.startsWith("*")) {
+            return new CardSearch(Strategy.LAST_FOUR, digits.toString());
+        }
+        return new CardSearch(Strategy.CONTAINS, digits.toString());
+    }
+
+    /**
+     * The {@code LIKE} pattern over the card number for {@link Strategy#EXACT}, {@link Strategy#PREFIX} and
+     * {@link Strategy#CONTAINS}; the digits need no escaping.
+     */
+    public String pattern() {
+        return switch (strategy) {
+            case PREFIX -> digits + "%";
+            case CONTAINS -> "%" + digits + "%";
+            default -> digits;
+        };
+    }
+}
@@ -1,73 +1,206 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.config.RecentWriters;
+import com.example.bankcards.config.RetryOnConflict;
+import com.example.bankcards.config.TransferEngine;
+import com.example.bankcards.config.TransferLockMode;
 import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.CardSliceDTO;
 import com.example.bankcards.entity.Card;
-import com.example.bankcards.entity.User;
 import com.example.bankcards.exception.CardNotActivatedException;
 import com.example.bankcards.exception.CardNotFoundException;
 import com.example.bankcards.exception.CardNotReadyToBlockedException;
 import com.example.bankcards.exception.InsufficientBalanceException;
+import com.example.bankcards.exception.InvalidCursorException;
+import com.example.bankcards.exception.TransferLockTimeoutException;
+import com.example.bankcards.mapper.CardMapper;
 import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.entity.enums.Status;
 import com.example.bankcards.repository.UserRepository;
 import com.example.bankcards.util.CardNumberGenerator;
-import org.modelmapper.ModelMapper;
+import com.example.bankcards.util.CursorCodec;
+import com.example.bankcards.util.Money;
+import jakarta.persistence.criteria.JoinType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.domain.Window;
+import org.springframework.data.jpa.domain.Specification;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @Transactional(readOnly = true)
 public class CardService {
+    /** Properties the cursor mode can sort by, with their types. */
+    private static final Map<String, Class<?>> CURSOR_SORT_KEYS = Map.of(
+            "id", Long.class,
+            "balance", Long.class,
+            "validityPeriod", LocalDateTime.class,
+            "status", Status.class,
+            "maskedCardNumber", String.class);
+
     private final CardRepository cardRepository;
     private final UserRepository userRepository;
+    private final UserCache userCache;
+    private final BalanceCache balanceCache;
     private final CardNumberGenerator cardNumberGenerator;
-    private final ModelMapper modelMapper;
+    private final CardMapper cardMapper;
+    private final LedgerService ledgerService;
+    private final BalanceStripeService balanceStripeService;
+    private final TransferPipeline transferPipeline;
+    private final TransferLockTimeout transferLockTimeout;
+    private final RecentWriters recentWriters;
+    private final TransactionTemplate transactionTemplate;
+    private final CursorCodec cursorCodec;
+
+    @Value("${card.transfer.engine:ENTITY}")
+    private TransferEngine transferEngine;
+
+    @Value("${card.transfer.lock-mode:NONE}")
+    private TransferLockMode lockMode;
 
-    public CardService(CardRepository cardRepository, UserRepository userRepository, CardNumberGenerator cardNumberGenerator, ModelMapper modelMapper) {
+    public CardService(CardRepository cardRepository, UserRepository userRepository, UserCache userCache, BalanceCache balanceCache, CardNumberGenerator cardNumberGenerator, CardMapper cardMapper, LedgerService ledgerService, BalanceStripeService balanceStripeService, TransferPipeline transferPipeline, TransferLockTimeout transferLockTimeout, RecentWriters recentWriters, PlatformTransactionManager transactionManager, CursorCodec cursorCodec) {
         this.cardRepository = cardRepository;
         this.userRepository = userRepository;
+        this.userCache = userCache;
+        this.balanceCache = balanceCache;
         this.cardNumberGenerator = cardNumberGenerator;
-        this.modelMapper = modelMapper;
+        this.cardMapper = cardMapper;
+        this.ledgerService = ledgerService;
+        this.balanceStripeService = balanceStripeService;
+        this.transferPipeline = transferPipeline;
+        this.transferLockTimeout = transferLockTimeout;
+        this.recentWriters = recentWriters;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.cursorCodec = cursorCodec;
     }
 
     @Transactional
-    public void createCard(String username, BigDecimal balance) {
+    public void createCard(String username, long balance) {
         Card card = new Card();
-        card.setUser(userRepository.findByUsername(username).orElseThrow(()->new UsernameNotFoundException("Username not found!")));
+        Long userId = userCache.find(username).orElseThrow(()->new UsernameNotFoundException("Username not found!")).id();
+        card.setUser(userRepository.getReferenceById(userId));
         card.setBalance(balance);
         enrichCard(card);
         cardRepository.save(card);
+        balanceCache.put(card.getId(), userId, card.getCardNumber(), balance);
+    }
+
+    /**
+     * Returns up to {@code limit} cards with an id greater than {@code afterId}, in id order. The id of the last
+     * card returned is the {@code afterId} of the next page, so every page costs the same however far in it is.
+     */
+    public List<CardDTO> getCards(long afterId, int limit) {
+        return cardRepository.findListingAfter(afterId, Limit.of(limit));
     }
 
-    public List<CardDTO> getCards() {
-        return cardRepository.findAll().stream().map(this::convertToCardDTO).collect(Collectors.toList());
+    /**
+     * Passes every card with an id greater than {@code afterId} to {@code consumer} as it is read.
+     */
+    public void streamCards(long afterId, Consumer<CardDTO> consumer) {
+        try (Stream<CardDTO> cards = cardRepository.streamListingAfter(afterId)) {
+            cards.forEach(consumer);
+        }
     }
 
-    public Page<CardDTO> getCards(User user, String search, Pageable pageable) {
-        Page<Card> cardPage;
+    /**
+     * @param search a card number search term, matched as described in {@link CardSearch}
+     */
+    public Page<CardDTO> getCards(Long userId, String search, Pageable pageable) {
+        CardSearch cardSearch = CardSearch.parse(search);
+        if (cardSearch == null) {
+            return cardRepository.findViewsByUserId(userId, pageable);
+        }
+        return switch (cardSearch.strategy()) {
+            case NONE -> Page.empty(pageable);
+            case LAST_FOUR -> cardRepository.findViewsByUserIdAndLastFour(userId, cardSearch.digits(), pageable);
+            default -> cardRepository.findViewsByUserIdAndCardNumberLike(userId, cardSearch.pattern(), pageable);
+        };
+    }
 
-        if (search != null && !search.trim().isEmpty()) {
-            cardPage = cardRepository.findAllByUserAndCardNumberContainingIgnoreCase(user, search.trim(), pageable);
-        } else {
-            cardPage = cardRepository.findAllByUser(user, pageable);
+    /**
+     * Keyset alternative to {@link #getCards(Long, String, Pageable)}: returns up to {@code size} cards following the
+     * position in {@code cursor}, ordered by {@code sortBy} and then id, without counting the total. A page costs the
+     * same however deep it is, because the query seeks past the position instead of skipping rows.
+     *
+     * @param cursor the {@code nextCursor} of the previous slice, or empty for the first one
+     */
+    public CardSliceDTO getCards(Long userId, String search, String sortBy, String cursor, int size) {
+        Class<?> sortType = CURSOR_SORT_KEYS.get(sortBy);
+        if (sortType == null) {
+            throw new InvalidCursorException("Cannot page by " + sortBy + " with a cursor, use one of "
+                    + CURSOR_SORT_KEYS.keySet());
+        }
+        Map<String, Class<?>> keyTypes = new LinkedHashMap<>();
+        keyTypes.put(sortBy, sortType);
+        keyTypes.put("id", Long.class);
+        ScrollPosition position = cursorCodec.decode(cursor, sortBy, keyTypes);
+
+        Specification<Card> filter = (card, query, cb) -> {
+            card.fetch("user", JoinType.LEFT);
+            return cb.equal(card.get("userId"), userId);
+        };
+        CardSearch cardSearch = CardSearch.parse(search);
+        if (cardSearch != null) {
+            filter = filter.and((card, query, cb) -> switch (cardSearch.strategy()) {
+                case NONE -> cb.disjunction();
+                case LAST_FOUR -> cb.equal(card.get("lastFour"), cardSearch.digits());
+                default -> cb.like(card.get("cardNumber"), cardSearch.pattern());
+            });
         }
+        Sort sort = Sort.by(keyTypes.keySet().toArray(String[]::new));
+        Window<Card> window = cardRepository.findBy(filter, query -> query.sortBy(sort).limit(size).scroll(position));
+
+        List<CardDTO> cards = window.getContent().stream().map(cardMapper::toDTO).toList();
+        String nextCursor = window.hasNext() && !window.isEmpty()
+                ? cursorCodec.encode(sortBy, (KeysetScrollPosition) window.positionAt(window.size() - 1))
+                : null;
+        return new CardSliceDTO(cards, nextCursor);
+    }
+
+    /**
+     * Strong ETag of every card of the user, shared by all pages, slices and searches of their card list.
+     */
+    public String getCardsETag(Long userId) {
+        return cardRepository.findVersionByUserId(userId).eTag();
+    }
 
-        return cardPage.map(this::convertToCardDTO);
+    /**
+     * Strong ETag of the admin listing page {@link #getCards(long, int)} returns for the same arguments.
+     */
+    public String getCardsETag(long afterId, int limit) {
+        return cardRepository.findListingVersionAfter(afterId, limit).eTag();
+    }
+
+    public String getCardETag(Long cardId) {
+        return cardRepository.findVersionById(cardId).eTag();
     }
 
     public CardDTO getCard(Long cardId) {
-        return convertToCardDTO(cardRepository.findById(cardId)
-                .orElseThrow(() -> new CardNotFoundException(cardId)));
+        return cardRepository.findViewById(cardId)
+                .orElseThrow(() -> new CardNotFoundException(cardId));
     }
 
+    @RetryOnConflict
     @Transactional
     public void blockCard(Long cardId) {
         Card card = cardRepository.findById(cardId)
@@ -77,75 +210,269 @@ public class CardService {
         }
         card.setStatus(Status.BLOCKED);
         cardRepository.save(card);
+        balanceCache.invalidate(cardId);
     }
 
+    @RetryOnConflict
     @Transactional
-    public void blockCard(Long cardId, User user) {
+    public void blockCard(Long cardId, Long userId) {
         Card card = cardRepository.findById(cardId)
                 .orElseThrow(() -> new CardNotFoundException(cardId));
-        if(!card.getUser().equals(user)) {
+        if(!isOwner(card, userId)) {
             throw new CardNotFoundException(cardId);
         }
         card.setStatus(Status.PENDING_TO_BLOCKING);
         cardRepository.save(card);
+        balanceCache.invalidate(cardId);
     }
 
+    @RetryOnConflict
     @Transactional
     public void activateCard(Long cardId) {
         Card card = cardRepository.findById(cardId)
                 .orElseThrow(() -> new CardNotFoundException(cardId));
         card.setStatus(Status.ACTIVE);
         cardRepository.save(card);
+        balanceCache.invalidate(cardId);
     }
 
+    @RetryOnConflict
     @Transactional
     public void deleteCard(Long cardId) {
         Card card = cardRepository.findById(cardId)
                 .orElseThrow(() -> new CardNotFoundException(cardId));
         cardRepository.delete(card);
+        balanceCache.invalidate(cardId);
     }
 
-    public BigDecimal getBalance(Long cardId, User user) {
-        Card card = cardRepository.findById(cardId)
-                .orElseThrow(() -> new CardNotFoundException(cardId));
-        if (!card.getUser().equals(user)) {
-            throw new CardNotFoundException(cardId);
+    @RetryOnConflict
+    @Transactional
+    public void setBalanceStripes(Long cardId, int stripes) {
+        Card card;
+        try {
+            card = cardRepository.findByIdForUpdate(cardId)
+                    .orElseThrow(() -> new CardNotFoundException(cardId));
+        } catch (PessimisticLockingFailureException e) {
+            throw new TransferLockTimeoutException(cardId, e);
         }
-        return card.getBalance();
+        balanceStripeService.restripe(card, stripes);
     }
 
-    @Transactional
-    public void transfer(Long cardId, String recipientCardNumber, double amount, User user) {
-        Card senderCard = cardRepository.findById(cardId)
-                .orElseThrow(() -> new CardNotFoundException(cardId));
-        Card recipientCard = cardRepository.findByCardNumber(recipientCardNumber)
-                .orElseThrow(() -> new CardNotFoundException(recipientCardNumber));
-        if (!senderCard.getUser().equals(user) || !recipientCard.getUser().equals(user)) {
+    /**
+     * Served from {@link BalanceCache}, which is refreshed once a change to the balance commits. Runs outside of any
+     * transaction: a miss loads the balance in a transaction of its own, and holding a connection for an outer one
+     * meanwhile would let enough concurrent misses take every connection in the pool and wait for each other.
+     *
+     * @return the balance in minor units, see {@link Money}
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public long getBalance(Long cardId, Long userId) {
+        return balanceCache.find(cardId)
+                .filter(balance -> balance.ownerId().equals(userId))
+                .orElseThrow(() -> new CardNotFoundException(cardId))
+                .balance();
+    }
+
+    /**
+     * Applies the transfer in its own transaction, or joins the caller's transaction if there is one.
+     * With the group-commit pipeline enabled a transfer outside of any transaction is handed to
+     * {@link TransferPipeline} instead, and this call returns once the micro-batch holding it has committed.
+     */
+    @RetryOnConflict
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void transfer(Long cardId, String recipientCardNumber, long amount, Long userId) {
+        if (transferPipeline.isEnabled() && !TransactionSynchronizationManager.isActualTransactionActive()) {
+            transferPipeline.execute(cardId, recipientCardNumber,
+                    () -> applyTransfer(cardId, recipientCardNumber, amount, userId));
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> applyTransfer(cardId, recipientCardNumber, amount, userId));
+    }
+
+    private void applyTransfer(Long cardId, String recipientCardNumber, long amount, Long userId) {
+        transferLockTimeout.apply();
+        balanceCache.invalidate(cardId);
+        balanceCache.invalidateCardNumber(recipientCardNumber);
+        recentWriters.record(userId);
+        if (transferEngine == TransferEngine.CONDITIONAL_UPDATE) {
+            transferWithConditionalUpdates(cardId, recipientCardNumber, amount, userId);
+            return;
+        }
+        if (transferEngine == TransferEngine.LEDGER) {
+            transferThroughLedger(cardId, recipientCardNumber, amount, userId);
+            return;
+        }
+
+        Card senderCard;
+        Card recipientCard;
+        if (lockMode == TransferLockMode.PESSIMISTIC) {
+            TransferCards cards = lockTransferCards(cardId, recipientCardNumber);
+            senderCard = cards.sender();
+            recipientCard = cards.recipient();
+        } else {
+            senderCard = cardRepository.findById(cardId)
+                    .orElseThrow(() -> new CardNotFoundException(cardId));
+            recipientCard = cardRepository.findByCardNumber(recipientCardNumber)
+                    .orElseThrow(() -> new CardNotFoundException(recipientCardNumber));
+        }
+        validateTransfer(senderCard, recipientCard, senderCard.getTotalBalance(), amount, userId);
+
+        try {
+            if (senderCard.getBalance() < amount) {
+                balanceStripeService.fold(senderCard);
+                if (senderCard.getBalance() < amount) {
+                    throw new InsufficientBalanceException("Insufficient balance for transfer");
+                }
+            }
+            senderCard.setBalance(Money.subtract(senderCard.getBalance(), amount));
+            if (recipientCard.getBalanceStripes() > 0) {
+                creditSlot(recipientCard, amount, userId);
+            } else {
+                recipientCard.setBalance(Money.add(recipientCard.getBalance(), amount));
+            }
+        } catch (PessimisticLockingFailureException e) {
+            throw new TransferLockTimeoutException(cardId, e);
+        }
+
+        cardRepository.save(senderCard);
+        cardRepository.save(recipientCard);
+    }
+
+    /**
+     * Credits a slot of a striped recipient whose row was read without a lock. The slot update re-checks the card,
+     * so a card restriped, blocked or deleted since it was read is treated as a conflict and the transfer is retried
+     * against its new state.
+     */
+    private void creditSlot(Card recipientCard, long amount, Long userId) {
+        if (balanceStripeService.credit(recipientCard.getCardNumber(), userId, amount) == 0) {
+            throw new ObjectOptimisticLockingFailureException(Card.class, recipientCard.getId());
+        }
+    }
+
+    private void validateTransfer(Card senderCard, Card recipientCard, long available, long amount, Long userId) {
+        if (!isOwner(senderCard, userId) || !isOwner(recipientCard, userId)) {
             throw new CardNotFoundException("None of the cards belong to you");
         }
 
-        if (senderCard.getBalance().compareTo(BigDecimal.valueOf(amount)) < 0 || amount <= 0) {
+        if (available < amount || amount <= 0) {
             throw new InsufficientBalanceException("Insufficient balance for transfer");
         }
 
         if (senderCard.getStatus() != Status.ACTIVE || recipientCard.getStatus() != Status.ACTIVE) {
             throw new CardNotActivatedException("One or both cards are not active");
         }
+    }
 
-        senderCard.setBalance(senderCard.getBalance().subtract(BigDecimal.valueOf(amount)));
-        recipientCard.setBalance(recipientCard.getBalance().add(BigDecimal.valueOf(amount)));
+    /**
+     * Records the transfer as a pair of ledger entries instead of rewriting both balances.
+     * Only the sender card is locked, to serialize debits against its materialized balance plus unapplied tail;
+     * the recipient row is not written at all until the aggregator folds the credit in.
+     */
+    private void transferThroughLedger(Long cardId, String recipientCardNumber, long amount, Long userId) {
+        Card senderCard;
+        try {
+            senderCard = cardRepository.findByIdForUpdate(cardId)
+                    .orElseThrow(() -> new CardNotFoundException(cardId));
+        } catch (PessimisticLockingFailureException e) {
+            throw new TransferLockTimeoutException(cardId, e);
+        }
+        Card recipientCard = cardRepository.findByCardNumber(recipientCardNumber)
+                .orElseThrow(() -> new CardNotFoundException(recipientCardNumber));
 
-        cardRepository.save(senderCard);
-        cardRepository.save(recipientCard);
+        long available = Money.add(senderCard.getTotalBalance(), ledgerService.getUnappliedAmount(cardId));
+        validateTransfer(senderCard, recipientCard, available, amount, userId);
+
+        ledgerService.append(senderCard.getId(), recipientCard.getId(), amount);
     }
 
-    @Transactional
-    public void updateExpirationTime() {
-        LocalDateTime currentDate = LocalDateTime.now();
-        List<Card> expiredCards = cardRepository.findByValidityPeriodBeforeAndStatusNot(currentDate, Status.EXPIRED);
+    /**
+     * Locks both cards of a transfer with {@code SELECT ... FOR UPDATE}, always in ascending id order,
+     * so that two transfers between the same pair of cards can never wait on each other in a cycle.
+     * A striped recipient is read without a lock: it is credited on one of its slots, so credits to a hot card
+     * do not queue on its row.
+     */
+    private TransferCards lockTransferCards(Long cardId, String recipientCardNumber) {
+        CardRepository.CardRef recipient = cardRepository.findRefByCardNumber(recipientCardNumber)
+                .orElseThrow(() -> new CardNotFoundException(recipientCardNumber));
+        Long recipientCardId = recipient.id();
+
+        try {
+            if (recipient.balanceStripes() > 0 && !recipientCardId.equals(cardId)) {
+                Card sender = cardRepository.findByIdForUpdate(cardId)
+                        .orElseThrow(() -> new CardNotFoundException(cardId));
+                Card recipientCard = cardRepository.findById(recipientCardId)
+                        .orElseThrow(() -> new CardNotFoundException(recipientCardNumber));
+                return new TransferCards(sender, recipientCard);
+            }
+
+            Long firstId = Math.min(cardId, recipientCardId);
+            Long secondId = Math.max(cardId, recipientCardId);
+            Card first = cardRepository.findByIdForUpdate(firstId)
+                    .orElseThrow(() -> new CardNotFoundException(firstId));
+            Card second = firstId.equals(secondId) ? first : cardRepository.findByIdForUpdate(secondId)
+                    .orElseThrow(() -> new CardNotFoundException(secondId));
+            return cardId.equals(firstId) ? new TransferCards(first, second) : new TransferCards(second, first);
+        } catch (PessimisticLockingFailureException e) {
+            throw new TransferLockTimeoutException(cardId, e);
+        }
+    }
+
+    /**
+     * Applies the transfer as two guarded UPDATE statements without loading either card.
+     * The debit only matches an active card of the user with enough balance, the credit only an active card
+     * of the user; when a statement matches no row the cards are read once to report why.
+     * A striped recipient is credited on one of its slots, and a debit the sender's balance row cannot cover
+     * is retried once after folding the sender's slots into it.
+     */
+    private void transferWithConditionalUpdates(Long cardId, String recipientCardNumber, long amount, Long userId) {
+        if (amount <= 0) {
+            throw new InsufficientBalanceException("Insufficient balance for transfer");
+        }
+        try {
+            if (cardRepository.debit(cardId, userId, Status.ACTIVE, amount) == 0 && !debitAfterFold(cardId, amount, userId)) {
+                throw debitFailure(cardId, amount, userId);
+            }
+            if (cardRepository.credit(recipientCardNumber, userId, Status.ACTIVE, amount) == 0
+                    && balanceStripeService.credit(recipientCardNumber, userId, amount) == 0) {
+                throw creditFailure(recipientCardNumber, userId);
+            }
+        } catch (PessimisticLockingFailureException e) {
+            throw new TransferLockTimeoutException(cardId, e);
+        }
+    }
+
+    private boolean debitAfterFold(Long cardId, long amount, Long userId) {
+        Card card = cardRepository.findByIdForUpdate(cardId).orElse(null);
+        if (card == null || card.getBalanceStripes() == 0) {
+            return false;
+        }
+        balanceStripeService.fold(card);
+        return cardRepository.debit(cardId, userId, Status.ACTIVE, amount) == 1;
+    }
+
+    private RuntimeException debitFailure(Long cardId, long amount, Long userId) {
+        Card card = cardRepository.findById(cardId)
+                .orElseThrow(() -> new CardNotFoundException(cardId));
+        if (!isOwner(card, userId)) {
+            return new CardNotFoundException("None of the cards belong to you");
+        }
+        if (card.getBalance() < amount) {
+            return new InsufficientBalanceException("Insufficient balance for transfer");
+        }
+        return new CardNotActivatedException("One or both cards are not active");
+    }
+
+    private RuntimeException creditFailure(String recipientCardNumber, Long userId) {
+        Card card = cardRepository.findByCardNumber(recipientCardNumber)
+                .orElseThrow(() -> new CardNotFoundException(recipientCardNumber));
+        if (!isOwner(card, userId)) {
+            return new CardNotFoundException("None of the cards belong to you");
+        }
+        return new CardNotActivatedException("One or both cards are not active");
+    }
 
-        expiredCards.forEach(card -> card.setStatus(Status.EXPIRED));
-        cardRepository.saveAll(expiredCards);
+    private boolean isOwner(Card card, Long userId) {
+        return card.getUser().getId().equals(userId);
     }
 
     private void enrichCard(Card card) {
@@ -155,7 +482,6 @@ public class CardService {
         card.setValidityPeriod(LocalDateTime.now().plusYears(2));
     }
 
-    private CardDTO convertToCardDTO(Card card) {
-        return modelMapper.map(card, CardDTO.class);
+    private record TransferCards(Card sender, Card recipient) {
     }
 }
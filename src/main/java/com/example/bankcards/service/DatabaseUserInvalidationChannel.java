@@ -0,0 +1,71 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.UserInvalidation;
+import com.example.bankcards.repository.UserInvalidationRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Shares invalidations between instances through the {@code user_invalidations} table.
+ * Every instance polls the table each {@code poll-interval}; a poll re-reads the last {@code max-clock-skew}
+ * before the previous one, so rows committed late or stamped by a clock running behind are still seen.
+ * Evicting twice is harmless, so no row is tracked as delivered.
+ */
+@Component
+@ConditionalOnProperty(name = "card.user-cache.channel", havingValue = "database")
+public class DatabaseUserInvalidationChannel implements UserInvalidationChannel {
+    private static final Duration RETENTION = Duration.ofHours(1);
+
+    private final UserInvalidationRepository userInvalidationRepository;
+    private final Duration maxClockSkew;
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+    private volatile LocalDateTime polledAt = LocalDateTime.now();
+
+    public DatabaseUserInvalidationChannel(UserInvalidationRepository userInvalidationRepository,
+                                           @Value("${card.user-cache.max-clock-skew:5s}") Duration maxClockSkew) {
+        this.userInvalidationRepository = userInvalidationRepository;
+        this.maxClockSkew = maxClockSkew;
+    }
+
+    /**
+     * Called once the change to the user has committed, when a write joining that transaction would never be
+     * committed itself, so the row is written in a transaction of its own.
+     */
+    @Override
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void publish(String username) {
+        userInvalidationRepository.save(new UserInvalidation(username, LocalDateTime.now()));
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+
+    @Scheduled(fixedDelayString = "${card.user-cache.poll-interval:5000}")
+    public void poll() {
+        LocalDateTime now = LocalDateTime.now();
+        List<UserInvalidation> invalidations =
+                userInvalidationRepository.findByCreatedAtAfterOrderById(polledAt.minus(maxClockSkew));
+        polledAt = now;
+        for (UserInvalidation invalidation : invalidations) {
+            listeners.forEach(listener -> listener.accept(invalidation.getUsername()));
+        }
+    }
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${card.user-cache.cleanup-interval:600000}")
+    public void deleteDelivered() {
+        userInvalidationRepository.deleteOlderThan(LocalDateTime.now().minus(RETENTION));
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.IdempotencyKey;
+import com.example.bankcards.exception.IdempotencyKeyReuseException;
+import com.example.bankcards.repository.IdempotencyKeyRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Runs an operation at most once per {@code Idempotency-Key}.
+ * Recently completed keys are answered from a bounded in-memory cache; otherwise the key is claimed in the
+ * {@code idempotency_keys} table inside the same transaction as the operation, so the key and the operation's
+ * effects commit or roll back together and a concurrent duplicate waits for the first request to finish.
+ */
+@Service
+@Transactional(readOnly = true)
+public class IdempotencyService {
+    private final IdempotencyKeyRepository idempotencyKeyRepository;
+    private final Duration ttl;
+    private final Cache<String, CompletedRequest> recentKeys;
+    private final Counter cacheHits;
+    private final Counter databaseHits;
+    private final Counter misses;
+
+    public IdempotencyService(IdempotencyKeyRepository idempotencyKeyRepository, MeterRegistry meterRegistry,
+                              @Value("${card.idempotency.ttl:24h}") Duration ttl,
+                              @Value("${card.idempotency.cache-size:10000}") long cacheSize) {
+        this.idempotencyKeyRepository = idempotencyKeyRepository;
+        this.ttl = ttl;
+        this.recentKeys = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, recentKeys, "idempotency-keys");
+        this.cacheHits = counter(meterRegistry, "cache_hit");
+        this.databaseHits = counter(meterRegistry, "database_hit");
+        this.misses = counter(meterRegistry, "miss");
+    }
+
+    @Transactional
+    public HttpStatus execute(String scope, String key, String request, Supplier<HttpStatus> operation) {
+        if (key == null) {
+            return operation.get();
+        }
+
+        String cacheKey = scope + '\n' + key;
+        String requestHash = hash(request);
+        CompletedRequest completed = recentKeys.getIfPresent(cacheKey);
+        if (completed != null && completed.expiresAt().isAfter(LocalDateTime.now())) {
+            cacheHits.increment();
+            return completed.replay(key, requestHash);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expiresAt = now.plus(ttl);
+        while (idempotencyKeyRepository.insertIfAbsent(scope, key, requestHash, now, expiresAt) == 0) {
+            Optional<IdempotencyKey> existing = idempotencyKeyRepository.findByScopeAndKey(scope, key);
+            if (existing.isPresent() && existing.get().getExpiresAt().isAfter(now)) {
+                databaseHits.increment();
+                completed = new CompletedRequest(existing.get().getRequestHash(),
+                        HttpStatus.valueOf(existing.get().getResponseStatus()), existing.get().getExpiresAt());
+                recentKeys.put(cacheKey, completed);
+                return completed.replay(key, requestHash);
+            }
+            existing.ifPresent(expired -> {
+                idempotencyKeyRepository.delete(expired);
+                idempotencyKeyRepository.flush();
+            });
+        }
+
+        misses.increment();
+        HttpStatus status = operation.get();
+        idempotencyKeyRepository.complete(scope, key, status.value());
+        CompletedRequest result = new CompletedRequest(requestHash, status, expiresAt);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    recentKeys.put(cacheKey, result);
+                }
+            });
+        } else {
+            recentKeys.put(cacheKey, result);
+        }
+        return status;
+    }
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${card.idempotency.cleanup-interval:3600000}")
+    public void deleteExpired() {
+        idempotencyKeyRepository.deleteExpired(LocalDateTime.now());
+    }
+
+    private static Counter counter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("idempotency.requests")
+                .description("Requests carrying an Idempotency-Key, by where their result came from")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private static String hash(String request) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(request.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record CompletedRequest(String requestHash, HttpStatus status, LocalDateTime expiresAt) {
+        HttpStatus replay(String key, String requestHash) {
+            if (!this.requestHash.equals(requestHash)) {
+                throw new IdempotencyKeyReuseException(key);
+            }
+            return status;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.bankcards.service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Delivers invalidations to the listeners of this JVM only, as they are published.
+ * Enough for a single instance; tests share one channel between several caches to stand in for a cluster.
+ */
+@Component
+@ConditionalOnProperty(name = "card.user-cache.channel", havingValue = "in-process", matchIfMissing = true)
+public class InProcessUserInvalidationChannel implements UserInvalidationChannel {
+    private final List<Consumer<String>> listeners = new CopyOnWriteArrayList<>();
+
+    @Override
+    public void publish(String username) {
+        listeners.forEach(listener -> listener.accept(username));
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener) {
+        listeners.add(listener);
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.bankcards.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+@Component
+public class LedgerAggregator {
+    private static final Logger log = LoggerFactory.getLogger(LedgerAggregator.class);
+
+    private final LedgerService ledgerService;
+
+    @Value("${card.ledger.aggregator.batch-size:500}")
+    private int batchSize;
+
+    public LedgerAggregator(LedgerService ledgerService) {
+        this.ledgerService = ledgerService;
+    }
+
+    @Scheduled(fixedDelayString = "${card.ledger.aggregator.interval:1000}")
+    public void materialize() {
+        int folded;
+        int total = 0;
+        do {
+            folded = ledgerService.materialize(batchSize);
+            total += folded;
+        } while (folded == batchSize);
+
+        if (total > 0) {
+            log.debug("Materialized ledger entries of {} cards", total);
+        }
+    }
+}
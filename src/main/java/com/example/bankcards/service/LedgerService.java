@@ -0,0 +1,87 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.LedgerEntry;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import com.example.bankcards.util.Money;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Double-entry card ledger. Every transfer appends a debit and a credit entry; the entries stay unapplied until
+ * {@link #materialize(int)} folds them into {@code cards.balance}, so the current balance of a card is always
+ * the materialized balance plus its unapplied tail.
+ */
+@Service
+@Transactional(readOnly = true)
+public class LedgerService {
+    private final LedgerEntryRepository ledgerEntryRepository;
+    private final CardRepository cardRepository;
+    private final BalanceStripeService balanceStripeService;
+
+    public LedgerService(LedgerEntryRepository ledgerEntryRepository, CardRepository cardRepository,
+                         BalanceStripeService balanceStripeService) {
+        this.ledgerEntryRepository = ledgerEntryRepository;
+        this.cardRepository = cardRepository;
+        this.balanceStripeService = balanceStripeService;
+    }
+
+    @Transactional
+    public void append(Long senderCardId, Long recipientCardId, long amount) {
+        UUID transferId = UUID.randomUUID();
+        ledgerEntryRepository.saveAll(List.of(
+                new LedgerEntry(transferId, senderCardId, -amount),
+                new LedgerEntry(transferId, recipientCardId, amount)));
+    }
+
+    public long getUnappliedAmount(Long cardId) {
+        return ledgerEntryRepository.sumUnappliedAmount(cardId);
+    }
+
+    public Map<Long, Long> getUnappliedAmounts(Collection<Long> cardIds) {
+        Map<Long, Long> amounts = new HashMap<>();
+        ledgerEntryRepository.sumUnappliedAmountByCard(cardIds)
+                .forEach(amount -> amounts.put(amount.getCardId(), amount.getAmount()));
+        return amounts;
+    }
+
+    public long getBalance(Long cardId) {
+        return cardRepository.findLedgerBalance(cardId);
+    }
+
+    /**
+     * Folds all unapplied entries of up to {@code batchSize} cards into their balances.
+     * The cards are locked first, so a card is never folded while a ledger transfer is debiting it,
+     * and all of its entries are applied together. Striped cards have their slots folded in first, since their
+     * debits were checked against the slots as well.
+     *
+     * @return the number of cards folded
+     */
+    @Transactional
+    public int materialize(int batchSize) {
+        List<Card> cards = cardRepository.findWithUnappliedLedgerForUpdate(PageRequest.of(0, batchSize));
+        if (cards.isEmpty()) {
+            return 0;
+        }
+
+        Map<Long, Card> cardsById = new HashMap<>();
+        for (Card card : cards) {
+            balanceStripeService.fold(card);
+            cardsById.put(card.getId(), card);
+        }
+        for (LedgerEntry entry : ledgerEntryRepository.findByCardIdInAndAppliedFalse(cardsById.keySet())) {
+            Card card = cardsById.get(entry.getCardId());
+            card.setBalance(Money.add(card.getBalance(), entry.getAmount()));
+            entry.setApplied(true);
+        }
+        return cards.size();
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.RefreshToken;
+import com.example.bankcards.exception.InvalidRefreshTokenException;
+import com.example.bankcards.repository.RefreshTokenRepository;
+import com.example.bankcards.security.JwtUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * Issues opaque refresh tokens. Only the SHA-256 digest of a token is stored in {@code refresh_tokens}, so the
+ * table is useless to whoever reads it. A token is single-use: exchanging it deletes it, and the caller receives a
+ * new one along with the new access token.
+ */
+@Service
+public class RefreshTokenService {
+    private final RefreshTokenRepository refreshTokenRepository;
+    private final SecureRandom random = new SecureRandom();
+    private final Duration ttl;
+
+    public RefreshTokenService(RefreshTokenRepository refreshTokenRepository,
+                               @Value("${jwt.refresh-expiration:2592000}") long ttlSeconds) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+    }
+
+    @Transactional
+    public String issue(Long userId) {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+        LocalDateTime now = LocalDateTime.now();
+        refreshTokenRepository.save(new RefreshToken(userId, JwtUtil.digest(token), now, now.plus(ttl)));
+        return token;
+    }
+
+    /**
+     * Consumes the token.
+     *
+     * @return the id of the user the token was issued to
+     * @throws InvalidRefreshTokenException if the token is unknown, expired or already used
+     */
+    @Transactional
+    public Long consume(String token) {
+        RefreshToken refreshToken = refreshTokenRepository.findByTokenHash(JwtUtil.digest(token))
+                .orElseThrow(InvalidRefreshTokenException::new);
+        if (refreshTokenRepository.consume(refreshToken.getId()) == 0
+                || refreshToken.getExpiresAt().isBefore(LocalDateTime.now())) {
+            throw new InvalidRefreshTokenException();
+        }
+        return refreshToken.getUserId();
+    }
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${jwt.refresh-cleanup-interval:3600000}")
+    public void deleteExpired() {
+        refreshTokenRepository.deleteExpired(LocalDateTime.now());
+    }
+}
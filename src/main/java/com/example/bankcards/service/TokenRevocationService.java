@@ -0,0 +1,101 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.RevokedToken;
+import com.example.bankcards.repository.RevokedTokenRepository;
+import com.example.bankcards.util.BloomFilter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Keeps the ids ({@code jti}) of revoked access tokens in {@code revoked_tokens} and in an in-memory Bloom filter,
+ * so that checking a token that was not revoked - nearly every request - takes a few memory reads and no query.
+ * Only a filter hit, a revoked token or a false positive at about {@code false-positive-rate}, is confirmed
+ * against the table.
+ * Revocations made by other instances are picked up every {@code poll-interval}, re-reading the last
+ * {@code max-clock-skew} before the previous poll. A Bloom filter cannot forget, so it is rebuilt from the
+ * unexpired rows after expired ones are deleted, sized for at least twice as many tokens as remain.
+ */
+@Service
+public class TokenRevocationService {
+    private final RevokedTokenRepository revokedTokenRepository;
+    private final long expectedTokens;
+    private final double falsePositiveRate;
+    private final Duration maxClockSkew;
+    private final Counter confirmations;
+    private volatile BloomFilter revoked;
+    private volatile LocalDateTime polledAt = LocalDateTime.now();
+
+    public TokenRevocationService(RevokedTokenRepository revokedTokenRepository, MeterRegistry meterRegistry,
+                                  @Value("${jwt.revocation.expected-tokens:100000}") long expectedTokens,
+                                  @Value("${jwt.revocation.false-positive-rate:0.01}") double falsePositiveRate,
+                                  @Value("${jwt.revocation.max-clock-skew:5s}") Duration maxClockSkew) {
+        this.revokedTokenRepository = revokedTokenRepository;
+        this.expectedTokens = expectedTokens;
+        this.falsePositiveRate = falsePositiveRate;
+        this.maxClockSkew = maxClockSkew;
+        this.revoked = new BloomFilter(expectedTokens, falsePositiveRate);
+        this.confirmations = Counter.builder("jwt.revocation.confirmations")
+                .description("Revocation checks that hit the Bloom filter and were confirmed against the database")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @param tokenId   the token's {@code jti}; tokens issued without one cannot be revoked
+     * @param expiresAt the token's expiry, after which the revocation no longer needs to be kept
+     */
+    public void revoke(String tokenId, LocalDateTime expiresAt) {
+        if (tokenId == null || revokedTokenRepository.existsByTokenId(tokenId)) {
+            return;
+        }
+        try {
+            revokedTokenRepository.save(new RevokedToken(tokenId, LocalDateTime.now(), expiresAt));
+        } catch (DataIntegrityViolationException e) {
+            // revoked concurrently by another request
+        }
+        revoked.add(tokenId);
+    }
+
+    public boolean isRevoked(String tokenId) {
+        if (tokenId == null || !revoked.mightContain(tokenId)) {
+            return false;
+        }
+        confirmations.increment();
+        return revokedTokenRepository.existsByTokenId(tokenId);
+    }
+
+    @Scheduled(fixedDelayString = "${jwt.revocation.poll-interval:5000}")
+    public void poll() {
+        LocalDateTime now = LocalDateTime.now();
+        List<String> tokenIds = revokedTokenRepository.findTokenIdsRevokedAfter(polledAt.minus(maxClockSkew));
+        polledAt = now;
+        BloomFilter filter = revoked;
+        tokenIds.forEach(filter::add);
+    }
+
+    @PostConstruct
+    public void rebuild() {
+        LocalDateTime now = LocalDateTime.now();
+        List<String> tokenIds = revokedTokenRepository.findUnexpiredTokenIds(now);
+        BloomFilter filter = new BloomFilter(Math.max(expectedTokens, 2L * tokenIds.size()), falsePositiveRate);
+        tokenIds.forEach(filter::add);
+        revoked = filter;
+        polledAt = now;
+    }
+
+    @Transactional
+    @Scheduled(fixedDelayString = "${jwt.revocation.cleanup-interval:600000}")
+    public void deleteExpired() {
+        revokedTokenRepository.deleteExpired(LocalDateTime.now());
+        rebuild();
+    }
+}
@@ -0,0 +1,163 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferEngine;
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferResultDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.enums.Status;
+import com.example.bankcards.exception.TransferBatchTooLargeException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.util.Money;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies a batch of transfers in chunks, one transaction per chunk.
+ * All cards of a chunk are locked with a single {@code SELECT ... FOR UPDATE} in id order, the transfers are
+ * checked one after another against the locked balances, and the changed balances are written back by Hibernate
+ * as batched UPDATE statements on commit. A transfer that fails a check is reported and skipped.
+ * With the ledger engine the unapplied ledger tail counts towards the balances and the transfers are appended
+ * to the ledger instead. Striped cards have their balance slots folded in once the chunk holds their locks.
+ */
+@Service
+public class TransferBatchService {
+    private final CardRepository cardRepository;
+    private final BalanceCache balanceCache;
+    private final LedgerService ledgerService;
+    private final BalanceStripeService balanceStripeService;
+    private final TransferLockTimeout transferLockTimeout;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${card.transfer.engine:ENTITY}")
+    private TransferEngine transferEngine;
+
+    @Value("${card.transfer.batch.chunk-size:500}")
+    private int chunkSize;
+
+    @Value("${card.transfer.batch.max-size:10000}")
+    private int maxSize;
+
+    public TransferBatchService(CardRepository cardRepository, LedgerService ledgerService,
+                                BalanceStripeService balanceStripeService, BalanceCache balanceCache,
+                                TransferLockTimeout transferLockTimeout, PlatformTransactionManager transactionManager) {
+        this.cardRepository = cardRepository;
+        this.balanceCache = balanceCache;
+        this.ledgerService = ledgerService;
+        this.balanceStripeService = balanceStripeService;
+        this.transferLockTimeout = transferLockTimeout;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    public List<TransferResultDTO> transfer(List<TransferDTO> transfers, Long userId) {
+        if (transfers.size() > maxSize) {
+            throw new TransferBatchTooLargeException(maxSize);
+        }
+
+        List<TransferResultDTO> results = new ArrayList<>(transfers.size());
+        for (int from = 0; from < transfers.size(); from += chunkSize) {
+            int offset = from;
+            List<TransferDTO> chunk = transfers.subList(from, Math.min(from + chunkSize, transfers.size()));
+            try {
+                results.addAll(transactionTemplate.execute(status -> applyChunk(chunk, offset, userId)));
+            } catch (PessimisticLockingFailureException e) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    results.add(TransferResultDTO.rejected(offset + i, "Could not lock cards for transfer, please retry"));
+                }
+            }
+        }
+        return results;
+    }
+
+    private List<TransferResultDTO> applyChunk(List<TransferDTO> chunk, int offset, Long userId) {
+        Set<Long> ids = new HashSet<>();
+        Set<String> cardNumbers = new HashSet<>();
+        for (TransferDTO transfer : chunk) {
+            if (transfer.getCardId() != null) {
+                ids.add(transfer.getCardId());
+            }
+            if (transfer.getRecipientCardNumber() != null) {
+                cardNumbers.add(transfer.getRecipientCardNumber());
+            }
+        }
+
+        Map<Long, Card> cardsById = new HashMap<>();
+        Map<String, Card> cardsByNumber = new HashMap<>();
+        Map<Long, Long> available = new HashMap<>();
+        if (!ids.isEmpty() || !cardNumbers.isEmpty()) {
+            transferLockTimeout.apply();
+            for (Card card : cardRepository.findAllForUpdate(ids, cardNumbers)) {
+                balanceStripeService.fold(card);
+                cardsById.put(card.getId(), card);
+                cardsByNumber.put(card.getCardNumber(), card);
+                available.put(card.getId(), card.getBalance());
+            }
+        }
+        boolean ledger = transferEngine == TransferEngine.LEDGER;
+        if (ledger && !cardsById.isEmpty()) {
+            ledgerService.getUnappliedAmounts(cardsById.keySet())
+                    .forEach((cardId, amount) -> available.merge(cardId, amount, Money::add));
+        }
+
+        List<TransferResultDTO> results = new ArrayList<>(chunk.size());
+        for (int i = 0; i < chunk.size(); i++) {
+            TransferDTO transfer = chunk.get(i);
+            Card senderCard = cardsById.get(transfer.getCardId());
+            Card recipientCard = cardsByNumber.get(transfer.getRecipientCardNumber());
+
+            String error = validate(transfer, senderCard, recipientCard, available, userId);
+            if (error != null) {
+                results.add(TransferResultDTO.rejected(offset + i, error));
+                continue;
+            }
+
+            long amount = transfer.getAmount();
+            available.merge(senderCard.getId(), -amount, Money::add);
+            available.merge(recipientCard.getId(), amount, Money::add);
+            if (ledger) {
+                ledgerService.append(senderCard.getId(), recipientCard.getId(), amount);
+            } else {
+                senderCard.setBalance(Money.subtract(senderCard.getBalance(), amount));
+                recipientCard.setBalance(Money.add(recipientCard.getBalance(), amount));
+            }
+            balanceCache.invalidate(senderCard.getId());
+            balanceCache.invalidate(recipientCard.getId());
+            results.add(TransferResultDTO.applied(offset + i));
+        }
+        return results;
+    }
+
+    private String validate(TransferDTO transfer, Card senderCard, Card recipientCard, Map<Long, Long> available,
+                            Long userId) {
+        if (senderCard == null) {
+            return "Card not found with id: " + transfer.getCardId();
+        }
+        if (recipientCard == null) {
+            return "Card not found with number: " + transfer.getRecipientCardNumber();
+        }
+        if (!isOwner(senderCard, userId) || !isOwner(recipientCard, userId)) {
+            return "None of the cards belong to you";
+        }
+        long amount = transfer.getAmount();
+        if (amount <= 0 || available.get(senderCard.getId()) < amount) {
+            return "Insufficient balance for transfer";
+        }
+        if (senderCard.getStatus() != Status.ACTIVE || recipientCard.getStatus() != Status.ACTIVE) {
+            return "One or both cards are not active";
+        }
+        return null;
+    }
+
+    private boolean isOwner(Card card, Long userId) {
+        return card.getUser().getId().equals(userId);
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.bankcards.service;
+
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Bounds how long a transfer waits for a row lock, for the transaction it runs in only
+ * ({@code SET LOCAL lock_timeout} on PostgreSQL), so migrations, background jobs and admin operations on the same
+ * connections keep waiting as long as they need. The statement is sent once per transaction, however many transfers
+ * the transaction applies.
+ */
+@Component
+public class TransferLockTimeout {
+    private final EntityManager entityManager;
+    private final String statement;
+
+    public TransferLockTimeout(EntityManager entityManager,
+                               @Value("${card.transfer.lock-timeout-statement:}") String statement) {
+        this.entityManager = entityManager;
+        this.statement = statement;
+    }
+
+    /**
+     * Applies the timeout to the current transaction, if it has not been applied to it yet.
+     */
+    public void apply() {
+        if (statement.isBlank() || !TransactionSynchronizationManager.isActualTransactionActive()
+                || TransactionSynchronizationManager.hasResource(this)) {
+            return;
+        }
+        entityManager.createNativeQuery(statement).executeUpdate();
+        TransactionSynchronizationManager.bindResource(this, Boolean.TRUE);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(TransferLockTimeout.this);
+            }
+        });
+    }
+}
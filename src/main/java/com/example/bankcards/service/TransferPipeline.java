@@ -0,0 +1,328 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferEngine;
+import com.example.bankcards.exception.TransferLockTimeoutException;
+import com.example.bankcards.exception.TransferPipelineTimeoutException;
+import com.example.bankcards.exception.TransferPipelineUnavailableException;
+import com.example.bankcards.repository.CardRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Connection;
+import java.sql.Savepoint;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Group commit for single transfers.
+ * Transfers are queued in a bounded ring buffer per shard of the sender card id, and one writer thread per shard
+ * drains its buffer in micro-batches of up to {@code batch-size} transfers, waiting at most {@code linger} for a
+ * batch to fill. A micro-batch runs in one transaction with a savepoint around each transfer, so a failed transfer
+ * is rolled back on its own while the rest of the batch shares a single commit; a caller's future completes once
+ * the batch holding its transfer has committed.
+ * Recipients belong to any shard, so before running a batch its writer locks every card the batch touches in one
+ * id-ordered statement; two writers sharing cards then wait for each other instead of taking them in opposite order.
+ * A writer claims a transfer before running it, and a caller that gives up first (on {@code timeout} or shutdown)
+ * claims it instead, so a transfer is either run by a writer or reported as not applied, never both.
+ */
+@Service
+public class TransferPipeline {
+    private static final Logger log = LoggerFactory.getLogger(TransferPipeline.class);
+
+    private final TransactionTemplate transactionTemplate;
+    private final EntityManager entityManager;
+    private final CardRepository cardRepository;
+    private final TransferLockTimeout transferLockTimeout;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long lingerNanos;
+    private final Duration timeout;
+    private final List<BlockingQueue<Request>> queues = new ArrayList<>();
+    private final List<Thread> writers = new ArrayList<>();
+    private final DistributionSummary queueDepth;
+    private final DistributionSummary batchSizes;
+    private volatile boolean running = true;
+
+    @Value("${card.transfer.engine:ENTITY}")
+    private TransferEngine transferEngine;
+
+    public TransferPipeline(PlatformTransactionManager transactionManager, EntityManager entityManager,
+                            CardRepository cardRepository, TransferLockTimeout transferLockTimeout,
+                            MeterRegistry meterRegistry,
+                            @Value("${card.transfer.pipeline.enabled:false}") boolean enabled,
+                            @Value("${card.transfer.pipeline.shards:4}") int shards,
+                            @Value("${card.transfer.pipeline.batch-size:64}") int batchSize,
+                            @Value("${card.transfer.pipeline.linger:2ms}") Duration linger,
+                            @Value("${card.transfer.pipeline.queue-capacity:4096}") int queueCapacity,
+                            @Value("${card.transfer.pipeline.timeout:30s}") Duration timeout) {
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.entityManager = entityManager;
+        this.cardRepository = cardRepository;
+        this.transferLockTimeout = transferLockTimeout;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.lingerNanos = linger.toNanos();
+        this.timeout = timeout;
+        this.queueDepth = DistributionSummary.builder("card.transfer.pipeline.queue.depth")
+                .description("Transfers waiting in a shard queue, sampled when a transfer is queued")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.batchSizes = DistributionSummary.builder("card.transfer.pipeline.batch.size")
+                .description("Transfers committed together in one micro-batch")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+
+        for (int i = 0; i < shards; i++) {
+            queues.add(new ArrayBlockingQueue<>(queueCapacity));
+        }
+        if (enabled) {
+            for (int i = 0; i < shards; i++) {
+                BlockingQueue<Request> queue = queues.get(i);
+                writers.add(Thread.ofPlatform().name("transfer-pipeline-" + i).daemon().start(() -> drain(queue)));
+            }
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a transfer on the shard of its sender card.
+     *
+     * @return a future completed when the micro-batch holding the transfer has committed, or exceptionally
+     * with whatever the transfer threw
+     */
+    public CompletableFuture<Void> submit(Long cardId, String recipientCardNumber, Runnable transfer) {
+        return enqueue(cardId, recipientCardNumber, transfer).result();
+    }
+
+    /**
+     * Queues a transfer and waits up to {@code timeout} for its micro-batch to commit, rethrowing the transfer's
+     * own exception. A transfer no writer has picked up by then is withdrawn and reported as not applied.
+     */
+    public void execute(Long cardId, String recipientCardNumber, Runnable transfer) {
+        Request request = enqueue(cardId, recipientCardNumber, transfer);
+        try {
+            request.result().get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new CompletionException(e.getCause());
+        } catch (TimeoutException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            if (request.claim()) {
+                throw new TransferPipelineUnavailableException("Transfer was not started in time, please retry");
+            }
+            throw new TransferPipelineTimeoutException(
+                    "Transfer did not complete in time and may still be applied, check the balance before retrying");
+        }
+    }
+
+    /**
+     * The pipeline is checked again after the transfer is queued: a shutdown that started in between may already
+     * have emptied the queues, in which case the transfer is withdrawn rather than left waiting forever.
+     */
+    private Request enqueue(Long cardId, String recipientCardNumber, Runnable transfer) {
+        Request request = new Request(cardId, recipientCardNumber, transfer, new CompletableFuture<>(),
+                new AtomicBoolean());
+        BlockingQueue<Request> queue = queues.get(Math.floorMod(cardId, queues.size()));
+        if (!running) {
+            throw new TransferPipelineUnavailableException("Transfer pipeline is shutting down, please retry");
+        }
+        if (!queue.offer(request)) {
+            throw new TransferPipelineUnavailableException("Transfer queue is full, please retry");
+        }
+        if (!running && request.claim()) {
+            queue.remove(request);
+            throw new TransferPipelineUnavailableException("Transfer pipeline is shutting down, please retry");
+        }
+        queueDepth.record(queue.size());
+        return request;
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        running = false;
+        writers.forEach(Thread::interrupt);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        for (BlockingQueue<Request> queue : queues) {
+            List<Request> abandoned = new ArrayList<>();
+            queue.drainTo(abandoned);
+            abandoned.forEach(request -> request.result().completeExceptionally(
+                    new TransferPipelineUnavailableException("Transfer pipeline is shutting down, please retry")));
+        }
+    }
+
+    private void drain(BlockingQueue<Request> queue) {
+        List<Request> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - batch.size());
+                long deadline = System.nanoTime() + lingerNanos;
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    Request next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : null;
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                if (batch.isEmpty()) {
+                    break;
+                }
+            }
+            batch.removeIf(request -> !request.claim());
+            if (!batch.isEmpty()) {
+                batchSizes.record(batch.size());
+                try {
+                    commit(batch);
+                } catch (Throwable e) {
+                    log.error("Transfer pipeline writer failed on a micro-batch of {} transfers", batch.size(), e);
+                    batch.forEach(request -> request.result().completeExceptionally(e));
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Commits a micro-batch. A failed statement inside a repository call leaves the whole transaction
+     * rollback-only, which a savepoint cannot undo; the batch is then rolled back, the transfer that caused it
+     * is reported as failed and the others are run again in a fresh transaction. A batch whose cards could not be
+     * locked in time is reported as not applied, as a single transfer would be.
+     */
+    private void commit(List<Request> batch) {
+        List<Request> pending = new ArrayList<>(batch);
+        while (!pending.isEmpty()) {
+            List<Request> attempt = List.copyOf(pending);
+            Map<Request, RuntimeException> failures = new HashMap<>();
+            Request poisoned;
+            try {
+                poisoned = transactionTemplate.execute(status -> apply(attempt, failures, status));
+            } catch (PessimisticLockingFailureException e) {
+                attempt.forEach(request -> request.result().completeExceptionally(
+                        new TransferLockTimeoutException(request.cardId(), e)));
+                return;
+            } catch (Throwable e) {
+                log.warn("Transfer micro-batch of {} transfers failed to commit", attempt.size(), e);
+                attempt.forEach(request -> request.result().completeExceptionally(e));
+                return;
+            }
+
+            if (poisoned == null) {
+                attempt.forEach(request -> complete(request, failures.get(request)));
+                return;
+            }
+            complete(poisoned, failures.get(poisoned));
+            pending.remove(poisoned);
+        }
+    }
+
+    /**
+     * Savepoints are set on the JDBC connection directly, as Hibernate's JPA dialect does not offer them to Spring;
+     * every applied transfer is flushed before the next savepoint, and the session is cleared after rolling back
+     * to one so that no entity keeps state the database no longer has. A transfer after which the savepoint cannot
+     * be rolled back to, as when the database has aborted the whole transaction, poisons the batch like one that
+     * left it rollback-only.
+     */
+    private Request apply(List<Request> batch, Map<Request, RuntimeException> failures, TransactionStatus status) {
+        lockCards(batch);
+        Session session = entityManager.unwrap(Session.class);
+        for (Request request : batch) {
+            Savepoint savepoint = session.doReturningWork(Connection::setSavepoint);
+            try {
+                request.transfer().run();
+                entityManager.flush();
+                session.doWork(connection -> connection.releaseSavepoint(savepoint));
+            } catch (RuntimeException e) {
+                failures.put(request, e);
+                if (!rollBackTo(session, savepoint) || status.isRollbackOnly()) {
+                    status.setRollbackOnly();
+                    return request;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The ledger engine locks senders only, and a sender always belongs to the shard of its writer, so its batches
+     * cannot share locked cards.
+     */
+    private void lockCards(List<Request> batch) {
+        if (transferEngine == TransferEngine.LEDGER) {
+            return;
+        }
+        Set<Long> cardIds = new HashSet<>();
+        Set<String> recipientCardNumbers = new HashSet<>();
+        for (Request request : batch) {
+            cardIds.add(request.cardId());
+            recipientCardNumbers.add(request.recipientCardNumber());
+        }
+        transferLockTimeout.apply();
+        cardRepository.findTransferCardsForUpdate(cardIds, recipientCardNumbers);
+    }
+
+    private boolean rollBackTo(Session session, Savepoint savepoint) {
+        try {
+            session.doWork(connection -> connection.rollback(savepoint));
+            return true;
+        } catch (RuntimeException e) {
+            log.warn("Could not roll back to the savepoint of a failed transfer", e);
+            return false;
+        } finally {
+            entityManager.clear();
+        }
+    }
+
+    private static void complete(Request request, RuntimeException failure) {
+        if (failure == null) {
+            request.result().complete(null);
+        } else {
+            request.result().completeExceptionally(failure);
+        }
+    }
+
+    private record Request(Long cardId, String recipientCardNumber, Runnable transfer,
+                           CompletableFuture<Void> result, AtomicBoolean claimed) {
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Read-through cache of users by username, in front of {@link UserRepository}.
+ * Entries expire after {@code ttl}. A change to a user is followed by {@link #invalidate}, which evicts the user
+ * on every instance through the {@link UserInvalidationChannel} once the change has committed, so other instances
+ * see it within the channel's delivery delay and at the latest after {@code ttl}.
+ * Unknown usernames are not cached, so a user registered on another instance can log in here right away.
+ */
+@Service
+public class UserCache {
+    private final UserRepository userRepository;
+    private final UserInvalidationChannel invalidationChannel;
+    private final TransactionTemplate primaryReads;
+    private final Cache<String, CachedUser> users;
+
+    public UserCache(UserRepository userRepository, UserInvalidationChannel invalidationChannel,
+                     PlatformTransactionManager transactionManager, MeterRegistry meterRegistry,
+                     @Value("${card.user-cache.ttl:10m}") Duration ttl,
+                     @Value("${card.user-cache.size:10000}") long size) {
+        this.userRepository = userRepository;
+        this.invalidationChannel = invalidationChannel;
+        this.primaryReads = new TransactionTemplate(transactionManager);
+        this.primaryReads.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.users = Caffeine.newBuilder()
+                .maximumSize(size)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+        invalidationChannel.subscribe(users::invalidate);
+    }
+
+    /**
+     * A miss is read in a read-write transaction of its own, which
+     * {@link com.example.bankcards.config.DataSourceConfig} sends to the primary, so a user evicted after a change
+     * is never reloaded from a replica that still has the old role or password hash. That takes a connection of its
+     * own, so this should not be called from inside another transaction.
+     */
+    public Optional<CachedUser> find(String username) {
+        return Optional.ofNullable(users.get(username, this::load));
+    }
+
+    public void invalidate(String username) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    evict(username);
+                }
+            });
+        } else {
+            evict(username);
+        }
+    }
+
+    private CachedUser load(String username) {
+        return primaryReads.execute(status -> userRepository.findByUsername(username).map(CachedUser::of).orElse(null));
+    }
+
+    private void evict(String username) {
+        users.invalidate(username);
+        invalidationChannel.publish(username);
+    }
+
+    /**
+     * Snapshot of a user, shared between threads; {@link #toUser()} gives each caller its own detached entity.
+     */
+    public record CachedUser(Long id, String username, String password, Role role) {
+        static CachedUser of(User user) {
+            return new CachedUser(user.getId(), user.getUsername(), user.getPassword(), user.getRole());
+        }
+
+        public User toUser() {
+            User user = new User();
+            user.setId(id);
+            user.setUsername(username);
+            user.setPassword(password);
+            user.setRole(role);
+            return user;
+        }
+    }
+}
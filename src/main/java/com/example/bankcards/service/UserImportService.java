@@ -0,0 +1,185 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.AuthenticationDTO;
+import com.example.bankcards.dto.UserImportProgressDTO;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.repository.UserRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Registers users from a CSV ({@code username,password} per line, optionally with that header) or NDJSON
+ * ({@code {"username": ..., "password": ...}} per line) stream. Lines are read one at a time and handled in
+ * chunks of {@code batch-size}: usernames already taken are found with one {@code IN} query per chunk, passwords
+ * are hashed in parallel on {@code parallelism} threads, and the new users are inserted as one JDBC batch in
+ * their own transaction. Only the current chunk is held in memory, and progress is reported after every chunk.
+ * A line failing the same checks as registration is counted as invalid and skipped.
+ */
+@Service
+public class UserImportService {
+    private static final String INSERT_USER =
+            "insert into users (username, password, role) values (?, ?, ?) on conflict do nothing";
+
+    public enum Format { CSV, NDJSON }
+
+    private final UserRepository userRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final PasswordEncoder passwordEncoder;
+    private final ForkJoinPool hashingPool;
+    private final int batchSize;
+
+    public UserImportService(UserRepository userRepository, JdbcTemplate jdbcTemplate,
+                             PlatformTransactionManager transactionManager, ObjectMapper objectMapper,
+                             Validator validator,
+                             @Value("${password.strength:10}") int strength,
+                             @Value("${card.user-import.parallelism:0}") int parallelism,
+                             @Value("${card.user-import.batch-size:1000}") int batchSize) {
+        this.userRepository = userRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.passwordEncoder = new BCryptPasswordEncoder(strength);
+        this.hashingPool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @param progress receives the running totals after every chunk, the last time with {@code completed} set
+     * @return the final totals
+     */
+    public UserImportProgressDTO importUsers(InputStream body, Format format, Consumer<UserImportProgressDTO> progress)
+            throws IOException {
+        Totals totals = new Totals();
+        List<AuthenticationDTO> chunk = new ArrayList<>(batchSize);
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        boolean first = true;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isBlank()) {
+                continue;
+            }
+            if (first && format == Format.CSV && line.strip().equalsIgnoreCase("username,password")) {
+                first = false;
+                continue;
+            }
+            first = false;
+            totals.processed++;
+
+            AuthenticationDTO user = parse(line, format);
+            if (user == null || !validator.validate(user).isEmpty()) {
+                totals.invalid++;
+                continue;
+            }
+            chunk.add(user);
+            if (chunk.size() == batchSize) {
+                importChunk(chunk, totals);
+                chunk.clear();
+                progress.accept(totals.snapshot(false));
+            }
+        }
+        if (!chunk.isEmpty()) {
+            importChunk(chunk, totals);
+        }
+        UserImportProgressDTO result = totals.snapshot(true);
+        progress.accept(result);
+        return result;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashingPool.shutdownNow();
+    }
+
+    private void importChunk(List<AuthenticationDTO> chunk, Totals totals) {
+        Map<String, String> passwords = new LinkedHashMap<>();
+        for (AuthenticationDTO user : chunk) {
+            if (passwords.putIfAbsent(user.getUsername(), user.getPassword()) != null) {
+                totals.duplicates++;
+            }
+        }
+        Set<String> existing = new HashSet<>(userRepository.findExistingUsernames(passwords.keySet()));
+        passwords.keySet().removeAll(existing);
+        totals.duplicates += existing.size();
+        if (passwords.isEmpty()) {
+            return;
+        }
+
+        List<String> usernames = new ArrayList<>(passwords.keySet());
+        List<ForkJoinTask<String>> hashes = new ArrayList<>(usernames.size());
+        for (String username : usernames) {
+            String password = passwords.get(username);
+            hashes.add(hashingPool.submit(() -> passwordEncoder.encode(password)));
+        }
+        List<Object[]> rows = new ArrayList<>(usernames.size());
+        for (int i = 0; i < usernames.size(); i++) {
+            rows.add(new Object[]{usernames.get(i), hashes.get(i).join(), Role.USER.name()});
+        }
+
+        int[] inserted = transactionTemplate.execute(status -> jdbcTemplate.batchUpdate(INSERT_USER, rows));
+        for (int count : inserted) {
+            if (count > 0 || count == Statement.SUCCESS_NO_INFO) {
+                totals.imported++;
+            } else {
+                totals.duplicates++;
+            }
+        }
+    }
+
+    private AuthenticationDTO parse(String line, Format format) {
+        if (format == Format.NDJSON) {
+            try {
+                return objectMapper.readValue(line, AuthenticationDTO.class);
+            } catch (JsonProcessingException e) {
+                return null;
+            }
+        }
+        int comma = line.indexOf(',');
+        if (comma < 0) {
+            return null;
+        }
+        AuthenticationDTO user = new AuthenticationDTO();
+        user.setUsername(line.substring(0, comma).strip());
+        user.setPassword(line.substring(comma + 1));
+        return user;
+    }
+
+    private static final class Totals {
+        private long processed;
+        private long imported;
+        private long duplicates;
+        private long invalid;
+
+        private UserImportProgressDTO snapshot(boolean completed) {
+            return new UserImportProgressDTO(processed, imported, duplicates, invalid, completed);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.bankcards.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries user cache invalidations to every application instance, including the one that published them.
+ * Selected by {@code card.user-cache.channel}.
+ */
+public interface UserInvalidationChannel {
+    void publish(String username);
+
+    void subscribe(Consumer<String> listener);
+}
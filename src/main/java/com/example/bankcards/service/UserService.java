@@ -6,32 +6,63 @@ import com.example.bankcards.exception.UserNotFoundException;
 import com.example.bankcards.repository.UserRepository;
 import com.example.bankcards.security.UserDetailsService;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
 @Service
 @Transactional(readOnly = true)
-public class UserService implements org.springframework.security.core.userdetails.UserDetailsService {
+public class UserService implements org.springframework.security.core.userdetails.UserDetailsService,
+        UserDetailsPasswordService {
     private final UserRepository userRepository;
+    private final UserCache userCache;
 
-    public UserService(UserRepository userRepository) {
+    public UserService(UserRepository userRepository, UserCache userCache) {
         this.userRepository = userRepository;
+        this.userCache = userCache;
     }
 
     @Override
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        User user = userRepository.findByUsername(username).orElseThrow(() -> new UserNotFoundException(username));
-        return new UserDetailsService(user);
+        return new UserDetailsService(findByUsername(username));
     }
 
+    /**
+     * Access tokens carry the role, so requests keep the old one until the user refreshes their token, within the
+     * access token lifetime ({@code jwt.expiration}); evicting the user from {@link UserCache} does not change it.
+     */
+    @Transactional
     public void makeAdmin(String username) {
         User user = userRepository.findByUsername(username).orElseThrow(() -> new UserNotFoundException(username));
         user.setRole(Role.ADMIN);
         userRepository.save(user);
+        userCache.invalidate(username);
+    }
+
+    /**
+     * Called by Spring Security after a successful login when the stored hash has a lower cost than configured.
+     */
+    @Override
+    @Transactional
+    public UserDetails updatePassword(UserDetails userDetails, String newPassword) {
+        User user = userRepository.findByUsername(userDetails.getUsername())
+                .orElseThrow(() -> new UserNotFoundException(userDetails.getUsername()));
+        user.setPassword(newPassword);
+        userRepository.save(user);
+        userCache.invalidate(user.getUsername());
+        return new UserDetailsService(user);
     }
 
+    /**
+     * Served from {@link UserCache}, outside of any transaction, as a miss loads the user in a transaction of its own.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public User findByUsername(String username) {
-        return userRepository.findByUsername(username).orElseThrow(() -> new UserNotFoundException(username));
+        return userCache.find(username)
+                .map(UserCache.CachedUser::toUser)
+                .orElseThrow(() -> new UserNotFoundException(username));
     }
 }
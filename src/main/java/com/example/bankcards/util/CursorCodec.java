@@ -0,0 +1,67 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.exception.InvalidCursorException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.springframework.data.domain.KeysetScrollPosition;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Turns a keyset position into an opaque continuation token and back. The token is the URL-safe Base64 of
+ * {@code {"sort": ..., "keys": {...}}}; it is not signed, because it only selects where a listing the caller is
+ * already allowed to see continues.
+ */
+@Component
+public class CursorCodec {
+    private final ObjectMapper objectMapper;
+
+    public CursorCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    public String encode(String sort, KeysetScrollPosition position) {
+        ObjectNode token = objectMapper.createObjectNode();
+        token.put("sort", sort);
+        token.set("keys", objectMapper.valueToTree(position.getKeys()));
+        try {
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(token));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @param keyTypes the type of every key the position may hold, in sort order
+     * @return the start of the listing for an empty token, otherwise the position after the token's last element
+     * @throws InvalidCursorException if the token is malformed or was issued for another sort
+     */
+    public ScrollPosition decode(String token, String sort, Map<String, Class<?>> keyTypes) {
+        if (token == null || token.isEmpty()) {
+            return ScrollPosition.keyset();
+        }
+        try {
+            JsonNode node = objectMapper.readTree(Base64.getUrlDecoder().decode(token));
+            if (!sort.equals(node.path("sort").asText())) {
+                throw new InvalidCursorException("Cursor was issued for sorting by " + node.path("sort").asText());
+            }
+            Map<String, Object> keys = new LinkedHashMap<>();
+            for (Map.Entry<String, Class<?>> key : keyTypes.entrySet()) {
+                JsonNode value = node.path("keys").get(key.getKey());
+                if (value == null || value.isNull()) {
+                    throw new InvalidCursorException("Cursor is missing " + key.getKey());
+                }
+                keys.put(key.getKey(), objectMapper.treeToValue(value, key.getValue()));
+            }
+            return ScrollPosition.forward(keys);
+        } catch (IOException | IllegalArgumentException e) {
+            throw new InvalidCursorException("Cursor is malformed");
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.bankcards.util;
+
+import java.util.StringJoiner;
+
+/**
+ * Strong entity tags made of version numbers. The tag spells the numbers out instead of hashing them,
+ * so two different versions never share a tag and a stale representation is never answered with {@code 304}.
+ */
+public final class ETags {
+
+    private ETags() {
+    }
+
+    public static String of(long... versions) {
+        StringJoiner tag = new StringJoiner(".", "\"", "\"");
+        for (long version : versions) {
+            tag.add(Long.toHexString(version));
+        }
+        return tag.toString();
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.exception.InvalidAmountException;
+
+/**
+ * Money as a {@code long} number of minor units (kopecks, cents): {@code 12.34} is {@code 1234}.
+ * Balances and amounts are stored, bound and computed in this form; the decimal text form is only produced
+ * and parsed at the API boundary. Arithmetic is overflow-checked instead of silently wrapping around.
+ */
+public final class Money {
+    public static final int SCALE = 2;
+
+    private static final long MINOR_UNITS_PER_UNIT = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Parses a plain decimal such as {@code 100}, {@code -5.5} or {@code 12.34}; digits past the second
+     * fraction digit are only accepted when they are zeros.
+     */
+    public static long parse(String amount) {
+        if (amount == null || amount.isEmpty()) {
+            throw new InvalidAmountException("Amount is required");
+        }
+
+        int length = amount.length();
+        int i = 0;
+        boolean negative = amount.charAt(0) == '-';
+        if (negative || amount.charAt(0) == '+') {
+            i++;
+        }
+
+        long units = 0;
+        int digits = 0;
+        try {
+            for (; i < length && amount.charAt(i) != '.'; i++, digits++) {
+                units = Math.addExact(Math.multiplyExact(units, 10), digit(amount, i));
+            }
+            long fraction = 0;
+            int fractionDigits = 0;
+            if (i < length) {
+                for (i++; i < length; i++, fractionDigits++) {
+                    int digit = digit(amount, i);
+                    if (fractionDigits < SCALE) {
+                        fraction = fraction * 10 + digit;
+                    } else if (digit != 0) {
+                        throw new InvalidAmountException("Amount must have at most " + SCALE + " decimal places: " + amount);
+                    }
+                }
+            }
+            if (digits + fractionDigits == 0) {
+                throw new InvalidAmountException("Invalid amount: " + amount);
+            }
+            for (; fractionDigits < SCALE; fractionDigits++) {
+                fraction *= 10;
+            }
+
+            long minorUnits = Math.addExact(Math.multiplyExact(units, MINOR_UNITS_PER_UNIT), fraction);
+            return negative ? -minorUnits : minorUnits;
+        } catch (ArithmeticException e) {
+            throw new InvalidAmountException("Amount is out of range: " + amount);
+        }
+    }
+
+    public static String format(long minorUnits) {
+        long units = Math.abs(minorUnits / MINOR_UNITS_PER_UNIT);
+        long fraction = Math.abs(minorUnits % MINOR_UNITS_PER_UNIT);
+        StringBuilder text = new StringBuilder(24);
+        if (minorUnits < 0) {
+            text.append('-');
+        }
+        text.append(units).append('.');
+        if (fraction < 10) {
+            text.append('0');
+        }
+        return text.append(fraction).toString();
+    }
+
+    public static long add(long minorUnits, long amount) {
+        try {
+            return Math.addExact(minorUnits, amount);
+        } catch (ArithmeticException e) {
+            throw new InvalidAmountException("Amount is out of range");
+        }
+    }
+
+    public static long subtract(long minorUnits, long amount) {
+        try {
+            return Math.subtractExact(minorUnits, amount);
+        } catch (ArithmeticException e) {
+            throw new InvalidAmountException("Amount is out of range");
+        }
+    }
+
+    private static int digit(String amount, int index) {
+        char c = amount.charAt(index);
+        if (c < '0' || c > '9') {
+            throw new InvalidAmountException("Invalid amount: " + amount);
+        }
+        return c - '0';
+    }
+}
@@ -0,0 +1,18 @@
+package com.example.bankcards.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Reads a JSON decimal number (or numeric string) such as {@code 12.34} as minor units, from its original text
+ * so that no binary floating point value is ever involved.
+ */
+public class MoneyDeserializer extends JsonDeserializer<Long> {
+    @Override
+    public Long deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        return Money.parse(parser.getText().trim());
+    }
+}
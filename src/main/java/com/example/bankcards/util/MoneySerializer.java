@@ -0,0 +1,17 @@
+package com.example.bankcards.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+
+/**
+ * Writes a minor-unit amount as a JSON decimal number, e.g. {@code 1234} as {@code 12.34}.
+ */
+public class MoneySerializer extends JsonSerializer<Long> {
+    @Override
+    public void serialize(Long minorUnits, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeNumber(Money.format(minorUnits));
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.BankRestApplication;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.service.CardService;
+import com.example.bankcards.util.CursorCodec;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.ScrollPosition;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency of reading page 1 and page 10 000 of one user's {@value #CARDS} cards, {@value #PAGE_SIZE} per page,
+ * through the offset {@code Page} mode and the keyset cursor mode of the card list.
+ * Runs against the {@code test} profile database; pass {@code -Dspring.datasource.*} and
+ * {@code -Dspring.jpa.database-platform} through {@code -Djmh.args="-jvmArgsAppend ..."} to target PostgreSQL.
+ * Compare the modes on PostgreSQL: H2 does not read {@code idx_cards_user_id_id} in order, so it sorts all the
+ * user's cards for every page in both modes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class CardPagingBenchmark {
+    static final int CARDS = 100_010;
+    static final int PAGE_SIZE = 10;
+
+    @Param({"offset", "cursor"})
+    public String mode;
+
+    @Param({"1", "10000"})
+    public int page;
+
+    private ConfigurableApplicationContext context;
+    private CardService cardService;
+    private Long userId;
+    private Pageable pageable;
+    private String cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(BankRestApplication.class)
+                .profiles("test")
+                .web(WebApplicationType.NONE)
+                .run();
+        cardService = context.getBean(CardService.class);
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+
+        User user = new User();
+        user.setUsername("benchmark-" + System.nanoTime());
+        user.setPassword("password");
+        user.setRole(Role.USER);
+        context.getBean(UserRepository.class).save(user);
+        userId = user.getId();
+
+        Timestamp validityPeriod = Timestamp.valueOf(LocalDateTime.now().plusYears(4));
+        String prefix = String.format("%06d", System.nanoTime() % 1_000_000);
+        List<Object[]> rows = new ArrayList<>(CARDS);
+        for (int i = 0; i < CARDS; i++) {
+            String number = prefix + String.format("%010d", i);
+            rows.add(new Object[]{number, "**** **** **** " + number.substring(12), number.substring(12), userId,
+                    validityPeriod, 100000L});
+        }
+        jdbcTemplate.batchUpdate("insert into cards (card_number, masked_card_number, last_four, user_id, validity_period, "
+                + "status, balance) values (?, ?, ?, ?, ?, 'ACTIVE', ?)", rows);
+        jdbcTemplate.execute("analyze");
+
+        pageable = PageRequest.of(page - 1, PAGE_SIZE, Sort.by("id"));
+        cursor = "";
+        if (page > 1) {
+            Long lastIdOfPreviousPage = jdbcTemplate.queryForObject(
+                    "select id from cards where user_id = ? order by id offset ? rows fetch next 1 rows only",
+                    Long.class, userId, (page - 1) * PAGE_SIZE - 1);
+            cursor = context.getBean(CursorCodec.class)
+                    .encode("id", ScrollPosition.forward(Map.of("id", lastIdOfPreviousPage)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Object readPage() {
+        return mode.equals("offset")
+                ? cardService.getCards(userId, null, pageable)
+                : cardService.getCards(userId, null, "id", cursor, PAGE_SIZE);
+    }
+}
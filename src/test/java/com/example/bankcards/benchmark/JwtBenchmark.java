@@ -0,0 +1,85 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.security.JwtUtil;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token verification done by {@code JwtAuthenticationFilter} on one authenticated request.
+ * {@code perCallParser} is the former path: the subject is extracted and the token validated with three parses,
+ * each building a new key and parser. {@code uncached} is a single parse with the precomputed parser, cycling
+ * through more distinct tokens than the cache holds, {@code cached} a token answered from the verified-token cache.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class JwtBenchmark {
+    private static final String SECRET = "uqwre783874awueyruiwr787f453y243870sd0dew3";
+    private static final int DISTINCT_TOKENS = 4096;
+
+    private JwtUtil cachingJwtUtil;
+    private JwtUtil nonCachingJwtUtil;
+    private String token;
+    private String[] distinctTokens;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        cachingJwtUtil = new JwtUtil(new SimpleMeterRegistry(), SECRET, 86400, 10000);
+        nonCachingJwtUtil = new JwtUtil(new SimpleMeterRegistry(), SECRET, 86400, 16);
+        token = cachingJwtUtil.generateAccessToken(user("benchmark-user", 1L));
+        distinctTokens = new String[DISTINCT_TOKENS];
+        for (int i = 0; i < DISTINCT_TOKENS; i++) {
+            distinctTokens[i] = cachingJwtUtil.generateAccessToken(user("benchmark-user-" + i, i + 2L));
+        }
+    }
+
+    @Benchmark
+    public String perCallParser() {
+        String username = parse(token);
+        if (!username.equals(parse(token))) {
+            return null;
+        }
+        parse(token);
+        return username;
+    }
+
+    @Benchmark
+    public String uncached() {
+        String distinctToken = distinctTokens[next];
+        next = next + 1 == DISTINCT_TOKENS ? 0 : next + 1;
+        return nonCachingJwtUtil.validateToken(distinctToken).getSubject();
+    }
+
+    @Benchmark
+    public String cached() {
+        return cachingJwtUtil.validateToken(token).getSubject();
+    }
+
+    private static User user(String username, long id) {
+        User user = new User();
+        user.setId(id);
+        user.setUsername(username);
+        user.setRole(Role.USER);
+        return user;
+    }
+
+    private static String parse(String token) {
+        return Jwts.parser()
+                .verifyWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)))
+                .build()
+                .parseSignedClaims(token)
+                .getPayload()
+                .getSubject();
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.dto.AuthenticationDTO;
+import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.UserDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.entity.enums.Status;
+import com.example.bankcards.mapper.CardMapper;
+import com.example.bankcards.mapper.UserMapper;
+import org.modelmapper.ModelMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of one conversion through the former reflective {@link ModelMapper} and through the hand-written
+ * {@link CardMapper} and {@link UserMapper}, for each mapping the application performs.
+ * Run with {@code -prof gc} to compare allocations per conversion as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class MappingBenchmark {
+    private ModelMapper modelMapper;
+    private UserMapper userMapper;
+    private CardMapper cardMapper;
+    private Card card;
+    private User user;
+    private AuthenticationDTO authDTO;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        modelMapper = new ModelMapper();
+        userMapper = new UserMapper();
+        cardMapper = new CardMapper(userMapper);
+
+        user = new User();
+        user.setId(7L);
+        user.setUsername("testuser");
+        user.setRole(Role.USER);
+
+        card = new Card();
+        card.setId(1L);
+        card.setCardNumber("1234567812345678");
+        card.setMaskedCardNumber("**** **** **** 5678");
+        card.setUser(user);
+        card.setValidityPeriod(LocalDateTime.of(2030, 1, 1, 0, 0));
+        card.setStatus(Status.ACTIVE);
+        card.setBalance(100000L);
+
+        authDTO = new AuthenticationDTO();
+        authDTO.setUsername("testuser");
+        authDTO.setPassword("testpass123");
+    }
+
+    @Benchmark
+    public CardDTO cardModelMapper() {
+        return modelMapper.map(card, CardDTO.class);
+    }
+
+    @Benchmark
+    public CardDTO cardMapper() {
+        return cardMapper.toDTO(card);
+    }
+
+    @Benchmark
+    public UserDTO userModelMapper() {
+        return modelMapper.map(user, UserDTO.class);
+    }
+
+    @Benchmark
+    public UserDTO userMapper() {
+        return userMapper.toDTO(user);
+    }
+
+    @Benchmark
+    public User registrationModelMapper() {
+        return modelMapper.map(authDTO, User.class);
+    }
+
+    @Benchmark
+    public User registrationMapper() {
+        return userMapper.toUser(authDTO);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.util.Money;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Money handling of a single transfer: parse the requested amount, check it against the sender's balance,
+ * move it between two balances and format the sender's new balance.
+ * {@code bigDecimal} is the former path ({@code double} request parameter, {@code BigDecimal} balances),
+ * {@code minorUnits} the {@link Money} path. Run with {@code -prof gc} to compare allocations as well.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class MoneyBenchmark {
+    private static final String[] AMOUNTS = {"0.01", "12.34", "100", "2500.5", "99999.99", "7.05"};
+
+    private int next;
+    private BigDecimal senderBalance;
+    private BigDecimal recipientBalance;
+    private long senderMinorUnits;
+    private long recipientMinorUnits;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        senderBalance = new BigDecimal("1000000000.00");
+        recipientBalance = BigDecimal.ZERO;
+        senderMinorUnits = 100000000000L;
+        recipientMinorUnits = 0;
+    }
+
+    @Benchmark
+    public String bigDecimal() {
+        double amount = Double.parseDouble(nextAmount());
+        BigDecimal value = BigDecimal.valueOf(amount);
+        if (senderBalance.compareTo(value) < 0) {
+            return null;
+        }
+        senderBalance = senderBalance.subtract(BigDecimal.valueOf(amount));
+        recipientBalance = recipientBalance.add(BigDecimal.valueOf(amount));
+        return BigDecimal.valueOf(senderBalance.doubleValue()).toPlainString();
+    }
+
+    @Benchmark
+    public String minorUnits() {
+        long amount = Money.parse(nextAmount());
+        if (senderMinorUnits < amount) {
+            return null;
+        }
+        senderMinorUnits = Money.subtract(senderMinorUnits, amount);
+        recipientMinorUnits = Money.add(recipientMinorUnits, amount);
+        return Money.format(senderMinorUnits);
+    }
+
+    private String nextAmount() {
+        String amount = AMOUNTS[next];
+        next = next + 1 == AMOUNTS.length ? 0 : next + 1;
+        return amount;
+    }
+}
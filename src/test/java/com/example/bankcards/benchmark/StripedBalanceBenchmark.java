@@ -0,0 +1,99 @@
+package com.example.bankcards.benchmark;
+
+import com.example.bankcards.BankRestApplication;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.service.CardService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@value #WRITERS} writers that all credit the same hot card, each debiting its own card,
+ * with the hot card unstriped ({@code stripes=0}) and striped, on the default {@code ENTITY} engine with
+ * pessimistic locking and on {@code CONDITIONAL_UPDATE}.
+ * Runs against the {@code test} profile database; pass {@code -Dspring.datasource.*} and
+ * {@code -Dspring.jpa.database-platform} through {@code -Djmh.args="-jvmArgsAppend ..."} to target PostgreSQL.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+@Threads(StripedBalanceBenchmark.WRITERS)
+public class StripedBalanceBenchmark {
+    static final int WRITERS = 64;
+
+    @Param({"0", "16"})
+    public int stripes;
+
+    @Param({"ENTITY", "CONDITIONAL_UPDATE"})
+    public String engine;
+
+    private ConfigurableApplicationContext context;
+    private CardService cardService;
+    private User user;
+    private String hotCardNumber;
+    private final Queue<Long> senderCardIds = new ConcurrentLinkedQueue<>();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(BankRestApplication.class)
+                .profiles("test")
+                .web(WebApplicationType.NONE)
+                .run("--card.transfer.engine=" + engine,
+                        "--card.transfer.lock-mode=PESSIMISTIC",
+                        "--spring.datasource.hikari.maximum-pool-size=" + WRITERS);
+        cardService = context.getBean(CardService.class);
+        CardRepository cardRepository = context.getBean(CardRepository.class);
+
+        user = new User();
+        user.setUsername("benchmark-" + System.nanoTime());
+        user.setPassword("password");
+        user.setRole(Role.USER);
+        context.getBean(UserRepository.class).save(user);
+
+        for (int i = 0; i <= WRITERS; i++) {
+            cardService.createCard(user.getUsername(), 100000000L);
+        }
+        List<Card> cards = cardRepository.findAllByUserId(user.getId(), Pageable.unpaged(Sort.by("id"))).getContent();
+        cards.forEach(card -> cardService.activateCard(card.getId()));
+
+        Card hotCard = cards.get(0);
+        hotCardNumber = hotCard.getCardNumber();
+        cardService.setBalanceStripes(hotCard.getId(), stripes);
+        cards.subList(1, cards.size()).forEach(card -> senderCardIds.add(card.getId()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        private Long cardId;
+
+        @Setup(Level.Trial)
+        public void setUp(StripedBalanceBenchmark benchmark) {
+            cardId = benchmark.senderCardIds.remove();
+        }
+    }
+
+    @Benchmark
+    public void creditHotCard(Writer writer) {
+        cardService.transfer(writer.cardId, hotCardNumber, 1L, user.getId());
+    }
+}
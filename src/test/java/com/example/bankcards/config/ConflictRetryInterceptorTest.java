@@ -0,0 +1,128 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.exception.CardUpdateConflictException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.aop.support.DefaultPointcutAdvisor;
+import org.springframework.aop.support.annotation.AnnotationMatchingPointcut;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConflictRetryInterceptorTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private FlakyCards target;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        target = new FlakyCards();
+    }
+
+    @AfterEach
+    void tearDown() {
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    @Test
+    void invoke_ShouldRetryUntilSuccess_WhenConflictsAreTransient() {
+        target.conflicts = 2;
+
+        assertEquals("updated", proxy(3, 0.2, 100).update());
+
+        assertEquals(3, target.calls);
+        assertEquals(1, count("card.mutation.calls"));
+        assertEquals(2, count("card.mutation.conflicts"));
+        assertEquals(2, count("card.mutation.retries"));
+    }
+
+    @Test
+    void invoke_ShouldGiveUp_AfterMaxAttempts() {
+        target.conflicts = Integer.MAX_VALUE;
+        FlakyCards cards = proxy(3, 0.2, 100);
+
+        CardUpdateConflictException e = assertThrows(CardUpdateConflictException.class, cards::update);
+
+        assertInstanceOf(OptimisticLockingFailureException.class, e.getCause());
+        assertEquals(3, target.calls);
+        assertEquals(1, meterRegistry.get("card.mutation.retries.exhausted").tag("reason", "attempts").counter().count());
+    }
+
+    @Test
+    void invoke_ShouldStopRetrying_WhenBudgetIsSpent() {
+        target.conflicts = Integer.MAX_VALUE;
+        FlakyCards cards = proxy(10, 0, 1);
+
+        assertThrows(CardUpdateConflictException.class, cards::update);
+
+        assertEquals(2, target.calls);
+        assertEquals(1, meterRegistry.get("card.mutation.retries.exhausted").tag("reason", "budget").counter().count());
+    }
+
+    @Test
+    void invoke_ShouldNotRetry_WhenJoiningOuterTransaction() {
+        target.conflicts = 1;
+        FlakyCards cards = proxy(3, 0.2, 100);
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+
+        assertThrows(CardUpdateConflictException.class, cards::update);
+
+        assertEquals(1, target.calls);
+        assertEquals(1, count("card.mutation.conflicts"));
+        assertEquals(0, count("card.mutation.retries"));
+    }
+
+    @Test
+    void invoke_ShouldPassOtherExceptionsThrough() {
+        target.failure = new IllegalStateException("not a conflict");
+
+        assertThrows(IllegalStateException.class, proxy(3, 0.2, 100)::update);
+
+        assertEquals(1, target.calls);
+        assertEquals(0, count("card.mutation.conflicts"));
+    }
+
+    private double count(String meter) {
+        return meterRegistry.get(meter).tag("method", "FlakyCards.update").counter().count();
+    }
+
+    private FlakyCards proxy(int maxAttempts, double budgetRatio, int budgetMax) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory(Map.of("meterRegistry", meterRegistry));
+        ConflictRetryInterceptor interceptor = new ConflictRetryInterceptor(
+                beanFactory.getBeanProvider(MeterRegistry.class), maxAttempts, Duration.ZERO, Duration.ZERO,
+                budgetRatio, budgetMax);
+        ProxyFactory proxyFactory = new ProxyFactory(target);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvisor(new DefaultPointcutAdvisor(
+                AnnotationMatchingPointcut.forMethodAnnotation(RetryOnConflict.class), interceptor));
+        return (FlakyCards) proxyFactory.getProxy();
+    }
+
+    static class FlakyCards {
+        int conflicts;
+        int calls;
+        RuntimeException failure;
+
+        @RetryOnConflict
+        public String update() {
+            calls++;
+            if (failure != null) {
+                throw failure;
+            }
+            if (calls <= conflicts) {
+                throw new OptimisticLockingFailureException("Card was updated concurrently");
+            }
+            return "updated";
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.security.AuthenticatedUser;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReplicaRoutingDataSourceTest {
+
+    @Mock
+    private DataSource primary;
+
+    @Mock
+    private DataSource first;
+
+    @Mock
+    private DataSource second;
+
+    @Mock
+    private Connection primaryConnection;
+
+    @Mock
+    private Connection firstConnection;
+
+    @Mock
+    private Connection secondConnection;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ReplicaRoutingDataSource dataSource;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        dataSource = new ReplicaRoutingDataSource(primary, List.of(first, second), meterRegistry,
+                new RecentWriters(Duration.ofMinutes(1)), Duration.ofSeconds(1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void getConnection_ShouldAlternateBetweenReplicas() throws SQLException {
+        when(first.getConnection()).thenReturn(firstConnection);
+        when(second.getConnection()).thenReturn(secondConnection);
+
+        assertSame(firstConnection, dataSource.getConnection());
+        assertSame(secondConnection, dataSource.getConnection());
+        assertSame(firstConnection, dataSource.getConnection());
+        verifyNoInteractions(primary);
+    }
+
+    @Test
+    void getConnection_ShouldSkipReplica_ThatFailedToConnect() throws SQLException {
+        when(first.getConnection()).thenThrow(new SQLException("down"));
+        when(second.getConnection()).thenReturn(secondConnection);
+
+        assertSame(secondConnection, dataSource.getConnection());
+        assertSame(secondConnection, dataSource.getConnection());
+        verify(first, times(1)).getConnection();
+        assertEquals(1.0, meterRegistry.get("card.datasource.replicas.healthy").gauge().value());
+    }
+
+    @Test
+    void getConnection_ShouldFallBackToPrimary_WhenNoReplicaIsHealthy() throws SQLException {
+        when(first.getConnection()).thenReturn(firstConnection);
+        when(second.getConnection()).thenThrow(new SQLException("down"));
+        when(firstConnection.isValid(anyInt())).thenReturn(false);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+
+        dataSource.checkReplicas();
+
+        assertSame(primaryConnection, dataSource.getConnection());
+        assertEquals(1.0, meterRegistry.get("card.datasource.reads").tag("target", "primary").counter().count());
+    }
+
+    @Test
+    void checkReplicas_ShouldBringReplicaBack_WhenItPassesAgain() throws SQLException {
+        when(first.getConnection()).thenReturn(firstConnection);
+        when(second.getConnection()).thenReturn(secondConnection);
+        when(firstConnection.isValid(anyInt())).thenReturn(false, true);
+        when(secondConnection.isValid(anyInt())).thenReturn(false, true);
+
+        dataSource.checkReplicas();
+        assertEquals(0.0, meterRegistry.get("card.datasource.replicas.healthy").gauge().value());
+        dataSource.checkReplicas();
+
+        assertEquals(2.0, meterRegistry.get("card.datasource.replicas.healthy").gauge().value());
+    }
+
+    @Test
+    void getConnection_ShouldReadFromPrimary_AfterUsersWriteCommits() throws SQLException {
+        authenticate(1L);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(first.getConnection()).thenReturn(firstConnection);
+        when(second.getConnection()).thenReturn(secondConnection);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            dataSource.writes().getConnection();
+            assertSame(firstConnection, dataSource.getConnection());
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertSame(primaryConnection, dataSource.getConnection());
+        authenticate(2L);
+        assertSame(secondConnection, dataSource.getConnection());
+    }
+
+    @Test
+    void getConnection_ShouldKeepReadingFromReplicas_WhenWriteRollsBack() throws SQLException {
+        authenticate(1L);
+        when(primary.getConnection()).thenReturn(primaryConnection);
+        when(first.getConnection()).thenReturn(firstConnection);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            dataSource.writes().getConnection();
+            TransactionSynchronizationManager.getSynchronizations().forEach(synchronization ->
+                    synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        assertSame(firstConnection, dataSource.getConnection());
+    }
+
+    private static void authenticate(Long userId) {
+        AuthenticatedUser user = new AuthenticatedUser(userId, "user-" + userId, Role.USER);
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated(user, null, user.getAuthorities()));
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.bankcards.config;
+
+import com.example.bankcards.dto.AsyncTransferDTO;
+import com.example.bankcards.dto.AuthenticationDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.entity.enums.TransferStatus;
+import com.example.bankcards.exception.AsyncTransferNotFoundException;
+import com.example.bankcards.exception.UserNotFoundException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import com.example.bankcards.security.AuthenticatedUser;
+import com.example.bankcards.security.JwtUtil;
+import com.example.bankcards.service.AsyncTransferService;
+import com.example.bankcards.service.AuthService;
+import com.example.bankcards.service.CardService;
+import com.example.bankcards.service.RefreshTokenService;
+import com.example.bankcards.service.UserService;
+import liquibase.integration.spring.SpringLiquibase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two local H2 databases stand in for the primary and a replica; the replica is migrated separately and holds a
+ * user the primary does not, which shows where a read went. The setup of each test writes without a user in the
+ * security context, so only the write under test can send the user's reads to the primary.
+ */
+@SpringBootTest(properties = {
+        "card.datasource.replicas=" + ReplicaRoutingTest.REPLICA_URL,
+        "card.transfer.pipeline.enabled=true"
+})
+@ActiveProfiles("test")
+class ReplicaRoutingTest {
+    static final String REPLICA_URL = "jdbc:h2:mem:bank_rest_replica;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE;"
+            + "DEFAULT_NULL_ORDERING=HIGH;DB_CLOSE_DELAY=-1";
+    private static final String REPLICA_ONLY = "replica-only";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private AsyncTransferService asyncTransferService;
+
+    @Autowired
+    private AuthService authService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeAll
+    static void migrateReplica() throws Exception {
+        DriverManagerDataSource replica = new DriverManagerDataSource(REPLICA_URL, "sa", "");
+        SpringLiquibase liquibase = new SpringLiquibase();
+        liquibase.setDataSource(replica);
+        liquibase.setChangeLog("classpath:db/migration/db.changelog-master.yml");
+        liquibase.setResourceLoader(new DefaultResourceLoader());
+        liquibase.afterPropertiesSet();
+        new JdbcTemplate(replica).update("merge into users (username, password, role) key (username) values (?, ?, ?)",
+                REPLICA_ONLY, "hash", Role.USER.name());
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void readOnlyTransaction_ShouldReadFromReplica_AndReadWriteTransactionFromPrimary() {
+        assertTrue(findReplicaOnlyUser(true));
+        assertFalse(findReplicaOnlyUser(false));
+    }
+
+    @Test
+    void findByUsername_ShouldLoadUsersFromPrimary() {
+        assertThrows(UserNotFoundException.class, () -> userService.findByUsername(REPLICA_ONLY));
+    }
+
+    /**
+     * The replica still has the user with the role they had before, under the same id.
+     */
+    @Test
+    void refresh_ShouldIssueTheRoleFromPrimary() {
+        User user = onPrimary(this::createUser);
+        new JdbcTemplate(new DriverManagerDataSource(REPLICA_URL, "sa", "")).update(
+                "insert into users (id, username, password, role) values (?, ?, ?, ?)",
+                user.getId(), user.getUsername(), "hash", Role.ADMIN.name());
+
+        String accessToken = authService.refresh(refreshTokenService.issue(user.getId())).getAccessToken();
+
+        assertEquals(Role.USER.name(), jwtUtil.validateToken(accessToken).get(JwtUtil.ROLE_CLAIM, String.class));
+    }
+
+    @Test
+    void readOnlyTransaction_ShouldReadFromPrimary_AfterTheUsersWriteCommits() {
+        User writer = onPrimary(this::createUser);
+        authenticate(writer);
+        onPrimary(this::createUser);
+
+        assertFalse(findReplicaOnlyUser(true));
+
+        SecurityContextHolder.clearContext();
+        assertTrue(findReplicaOnlyUser(true));
+    }
+
+    @Test
+    void readOnlyTransaction_ShouldReadFromPrimary_AfterThePipelinedTransferOfTheUserCommits() {
+        User user = onPrimary(this::createUser);
+        List<Card> cards = createCards(user);
+
+        cardService.transfer(cards.get(0).getId(), cards.get(1).getCardNumber(), 100L, user.getId());
+
+        authenticate(user);
+        assertFalse(findReplicaOnlyUser(true));
+    }
+
+    @Test
+    void readOnlyTransaction_ShouldReadFromPrimary_AfterTheAsynchronousTransferOfTheUserCompletes()
+            throws InterruptedException {
+        User user = onPrimary(this::createUser);
+        List<Card> cards = createCards(user);
+
+        String transferId = asyncTransferService.submit(cards.get(0).getId(), cards.get(1).getCardNumber(), 100L,
+                user.getId()).getId();
+        assertEquals(TransferStatus.COMPLETED, awaitFinished(transferId, user.getId()).getStatus());
+
+        authenticate(user);
+        assertFalse(findReplicaOnlyUser(true));
+    }
+
+    @Test
+    void readOnlyTransaction_ShouldReadFromPrimary_ForANewlyRegisteredUser() {
+        AuthenticationDTO registration = new AuthenticationDTO();
+        registration.setUsername("routing-" + System.nanoTime());
+        registration.setPassword("password");
+
+        authService.register(registration);
+
+        authenticate(onPrimary(() -> userRepository.findByUsername(registration.getUsername()).orElseThrow()));
+        assertFalse(findReplicaOnlyUser(true));
+    }
+
+    private User createUser() {
+        User user = new User();
+        user.setUsername("routing-" + System.nanoTime());
+        user.setPassword("hash");
+        user.setRole(Role.USER);
+        return userRepository.save(user);
+    }
+
+    private List<Card> createCards(User user) {
+        cardService.createCard(user.getUsername(), 10000L);
+        cardService.createCard(user.getUsername(), 10000L);
+        List<Card> cards = onPrimary(() ->
+                cardRepository.findAllByUserId(user.getId(), Pageable.unpaged()).getContent());
+        cards.forEach(card -> cardService.activateCard(card.getId()));
+        return cards;
+    }
+
+    /**
+     * Polls the cache the transfer lands in once its outcome has committed; until then it is read from the replica,
+     * which does not have it.
+     */
+    private AsyncTransferDTO awaitFinished(String transferId, Long userId) throws InterruptedException {
+        for (int i = 0; i < 100; i++) {
+            try {
+                AsyncTransferDTO transfer = asyncTransferService.getTransfer(transferId, userId);
+                if (transfer.getStatus() != TransferStatus.PENDING) {
+                    return transfer;
+                }
+            } catch (AsyncTransferNotFoundException e) {
+                // not finished yet
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("Transfer " + transferId + " did not finish");
+    }
+
+    private <T> T onPrimary(Supplier<T> work) {
+        return new TransactionTemplate(transactionManager).execute(status -> work.get());
+    }
+
+    private static void authenticate(User user) {
+        AuthenticatedUser principal = new AuthenticatedUser(user.getId(), user.getUsername(), user.getRole());
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated(principal, null, principal.getAuthorities()));
+    }
+
+    private boolean findReplicaOnlyUser(boolean readOnly) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.setReadOnly(readOnly);
+        return Boolean.TRUE.equals(transaction.execute(status ->
+                userRepository.findByUsername(REPLICA_ONLY).isPresent()));
+    }
+}
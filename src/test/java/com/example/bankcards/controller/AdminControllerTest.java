@@ -1,24 +1,36 @@
 package com.example.bankcards.controller;
 
 import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.ExpirationRunDTO;
 import com.example.bankcards.dto.UserDTO;
+import com.example.bankcards.dto.UserImportProgressDTO;
 import com.example.bankcards.entity.enums.Role;
 import com.example.bankcards.entity.enums.Status;
 import com.example.bankcards.security.JwtUtil;
+import com.example.bankcards.service.CardExpirationJob;
 import com.example.bankcards.service.CardService;
+import com.example.bankcards.service.IdempotencyService;
+import com.example.bankcards.service.TokenRevocationService;
+import com.example.bankcards.service.UserImportService;
 import com.example.bankcards.service.UserService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureWebMvc;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.HttpStatus;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
-import java.math.BigDecimal;
 import java.util.List;
+import java.util.function.Consumer;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -34,15 +46,27 @@ class AdminControllerTest {
     @MockitoBean
     private CardService cardService;
 
+    @MockitoBean
+    private CardExpirationJob cardExpirationJob;
+
     @MockitoBean
     private UserService userService;
 
+    @MockitoBean
+    private IdempotencyService idempotencyService;
+
+    @MockitoBean
+    private UserImportService userImportService;
+
     @MockitoBean
     private JwtUtil jwtUtil;
 
+    @MockitoBean
+    private TokenRevocationService tokenRevocationService;
+
     @Test
     void createCard_ShouldReturnCreated_WhenValidRequest() throws Exception {
-        doNothing().when(cardService).createCard(anyString(), any(BigDecimal.class));
+        doNothing().when(cardService).createCard(anyString(), anyLong());
 
         mockMvc.perform(post("/api/v1/admin/create")
                         .param("username", "testuser")
@@ -50,6 +74,21 @@ class AdminControllerTest {
                 .andExpect(status().isCreated());
     }
 
+    @Test
+    void createCard_ShouldReplayResult_WhenIdempotencyKeyGiven() throws Exception {
+        when(idempotencyService.execute(eq("create-card:admin"), eq("key-1"), eq("testuser:100000"), any()))
+                .thenReturn(HttpStatus.CREATED);
+
+        mockMvc.perform(post("/api/v1/admin/create")
+                        .principal(() -> "admin")
+                        .header("Idempotency-Key", "key-1")
+                        .param("username", "testuser")
+                        .param("balance", "1000.00"))
+                .andExpect(status().isCreated());
+
+        verify(cardService, never()).createCard(anyString(), anyLong());
+    }
+
     @Test
     void getCards_ShouldReturnCardsList() throws Exception {
         UserDTO userDTO = new UserDTO();
@@ -61,16 +100,84 @@ class AdminControllerTest {
         cardDTO.setMaskedCardNumber("**** **** **** 1234");
         cardDTO.setUser(userDTO);
         cardDTO.setStatus(Status.ACTIVE);
-        cardDTO.setBalance(new BigDecimal("1000.00"));
+        cardDTO.setBalance(100000L);
 
         List<CardDTO> cards = List.of(cardDTO);
-        when(cardService.getCards()).thenReturn(cards);
+        when(cardService.getCards(0L, 100)).thenReturn(cards);
 
         mockMvc.perform(get("/api/v1/admin"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$[0].id").value(1))
                 .andExpect(jsonPath("$[0].maskedCardNumber").value("**** **** **** 1234"))
-                .andExpect(jsonPath("$[0].user.username").value("testuser"));
+                .andExpect(jsonPath("$[0].user.username").value("testuser"))
+                .andExpect(header().doesNotExist("Link"));
+    }
+
+    @Test
+    void getCards_ShouldLinkNextPage_WhenPageIsFull() throws Exception {
+        CardDTO first = new CardDTO();
+        first.setId(11L);
+        CardDTO second = new CardDTO();
+        second.setId(12L);
+        when(cardService.getCards(10L, 2)).thenReturn(List.of(first, second));
+
+        mockMvc.perform(get("/api/v1/admin").param("after", "10").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(2))
+                .andExpect(header().string("Link", "</api/v1/admin?after=12&limit=2>; rel=\"next\""));
+    }
+
+    @Test
+    void getCards_ShouldReturnNotModified_WithoutReadingPage_WhenETagMatches() throws Exception {
+        when(cardService.getCardsETag(10L, 2)).thenReturn("\"2.17\"");
+
+        mockMvc.perform(get("/api/v1/admin").param("after", "10").param("limit", "2")
+                        .header("If-None-Match", "\"2.17\""))
+                .andExpect(status().isNotModified());
+
+        verify(cardService, never()).getCards(anyLong(), anyInt());
+    }
+
+    @Test
+    void getCard_ShouldReturnNotModified_WithoutReadingCard_WhenETagMatches() throws Exception {
+        when(cardService.getCardETag(1L)).thenReturn("\"1.1\"");
+
+        mockMvc.perform(get("/api/v1/admin/1").header("If-None-Match", "\"1.1\""))
+                .andExpect(status().isNotModified());
+
+        verify(cardService, never()).getCard(anyLong());
+    }
+
+    @Test
+    void getCards_ShouldRejectLimitAboveMaximum() throws Exception {
+        mockMvc.perform(get("/api/v1/admin").param("limit", "1001"))
+                .andExpect(status().isBadRequest());
+
+        verify(cardService, never()).getCards(anyLong(), anyInt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void streamCards_ShouldWriteOneLinePerCard_WhenNdjsonIsAccepted() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<CardDTO> consumer = invocation.getArgument(1);
+            for (long id = 1; id <= 3; id++) {
+                CardDTO card = new CardDTO();
+                card.setId(id);
+                card.setStatus(Status.ACTIVE);
+                consumer.accept(card);
+            }
+            return null;
+        }).when(cardService).streamCards(eq(0L), any());
+
+        String body = mockMvc.perform(get("/api/v1/admin").accept("application/x-ndjson"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andReturn().getResponse().getContentAsString();
+
+        String[] lines = body.split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[2].startsWith("{\"id\":3,"));
     }
 
     @Test
@@ -89,6 +196,14 @@ class AdminControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    void setBalanceStripes_ShouldReturnOk() throws Exception {
+        mockMvc.perform(put("/api/v1/admin/1/stripes").param("count", "8"))
+                .andExpect(status().isOk());
+
+        verify(cardService).setBalanceStripes(1L, 8);
+    }
+
     @Test
     void deleteCard_ShouldReturnOk() throws Exception {
         doNothing().when(cardService).deleteCard(anyLong());
@@ -106,10 +221,55 @@ class AdminControllerTest {
     }
 
     @Test
-    void updateExpirationTime_ShouldReturnOk() throws Exception {
-        doNothing().when(cardService).updateExpirationTime();
+    void updateExpirationTime_ShouldRunExpirationJob_AndReportIt() throws Exception {
+        when(cardExpirationJob.run()).thenReturn(new ExpirationRunDTO(3000, 3, 1500));
 
         mockMvc.perform(put("/api/v1/admin/update-expiration"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.expired").value(3000))
+                .andExpect(jsonPath("$.chunks").value(3))
+                .andExpect(jsonPath("$.rowsPerSecond").value(2000));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void importUsers_ShouldStreamProgressAsNdjson() throws Exception {
+        when(userImportService.importUsers(any(), eq(UserImportService.Format.CSV), any())).thenAnswer(invocation -> {
+            Consumer<UserImportProgressDTO> progress = invocation.getArgument(2);
+            progress.accept(new UserImportProgressDTO(1000, 990, 10, 0, false));
+            UserImportProgressDTO done = new UserImportProgressDTO(1500, 1480, 12, 8, true);
+            progress.accept(done);
+            return done;
+        });
+
+        mockMvc.perform(post("/api/v1/admin/users/import")
+                        .contentType("text/csv")
+                        .content("username,password\nalice,secret1\n"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType("application/x-ndjson"))
+                .andExpect(content().string(
+                        "{\"processed\":1000,\"imported\":990,\"duplicates\":10,\"invalid\":0,\"completed\":false}\n"
+                                + "{\"processed\":1500,\"imported\":1480,\"duplicates\":12,\"invalid\":8,\"completed\":true}\n"));
+    }
+
+    @Test
+    void importUsers_ShouldReadNdjson_WhenContentTypeIsNdjson() throws Exception {
+        when(userImportService.importUsers(any(), eq(UserImportService.Format.NDJSON), any()))
+                .thenReturn(new UserImportProgressDTO(0, 0, 0, 0, true));
+
+        mockMvc.perform(post("/api/v1/admin/users/import")
+                        .contentType("application/x-ndjson")
+                        .content("{\"username\":\"alice\",\"password\":\"secret1\"}\n"))
                 .andExpect(status().isOk());
+
+        verify(userImportService).importUsers(any(), eq(UserImportService.Format.NDJSON), any());
+    }
+
+    @Test
+    void importUsers_ShouldRejectUnsupportedContentType() throws Exception {
+        mockMvc.perform(post("/api/v1/admin/users/import")
+                        .contentType("application/json")
+                        .content("[]"))
+                .andExpect(status().isUnsupportedMediaType());
     }
-}
\ No newline at end of file
+}
@@ -1,7 +1,11 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.TokenDTO;
+import com.example.bankcards.exception.InvalidRefreshTokenException;
+import com.example.bankcards.exception.PasswordHashingUnavailableException;
 import com.example.bankcards.security.JwtUtil;
 import com.example.bankcards.service.AuthService;
+import com.example.bankcards.service.TokenRevocationService;
 import com.example.bankcards.service.UserService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,7 +14,10 @@ import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.time.Duration;
+
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -34,16 +41,19 @@ class AuthControllerTest {
     @MockitoBean
     private JwtUtil jwtUtil;
 
+    @MockitoBean
+    private TokenRevocationService tokenRevocationService;
+
     @Test
     void register_ShouldReturnOk_WhenValidRequest() throws Exception {
-        String token = "jwt-token";
-        when(authService.register(any())).thenReturn(token);
+        when(authService.register(any())).thenReturn(new TokenDTO("jwt-token", "refresh-token", 900));
 
         mockMvc.perform(post("/api/v1/auth/register")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content("{\"username\":\"testuser\",\"password\":\"testpass123\"}"))
                 .andExpect(status().isOk())
-                .andExpect(content().string(token));
+                .andExpect(jsonPath("$.accessToken").value("jwt-token"))
+                .andExpect(jsonPath("$.refreshToken").value("refresh-token"));
     }
 
     @Test
@@ -56,14 +66,60 @@ class AuthControllerTest {
 
     @Test
     void login_ShouldReturnOk_WhenValidCredentials() throws Exception {
-        String token = "jwt-token";
-        when(authService.login(any())).thenReturn(token);
+        when(authService.login(any())).thenReturn(new TokenDTO("jwt-token", "refresh-token", 900));
 
         mockMvc.perform(post("/api/v1/auth/login")
                         .contentType(MediaType.APPLICATION_JSON)
                         .content("{\"username\":\"testuser\",\"password\":\"testpass123\"}"))
                 .andExpect(status().isOk())
-                .andExpect(content().string(token));
+                .andExpect(jsonPath("$.accessToken").value("jwt-token"))
+                .andExpect(jsonPath("$.refreshToken").value("refresh-token"))
+                .andExpect(jsonPath("$.tokenType").value("Bearer"))
+                .andExpect(jsonPath("$.expiresIn").value(900));
+    }
+
+    @Test
+    void refresh_ShouldReturnNewTokens_WhenRefreshTokenIsValid() throws Exception {
+        when(authService.refresh("refresh-token")).thenReturn(new TokenDTO("new-jwt", "new-refresh", 900));
+
+        mockMvc.perform(post("/api/v1/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"refreshToken\":\"refresh-token\"}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accessToken").value("new-jwt"))
+                .andExpect(jsonPath("$.refreshToken").value("new-refresh"));
+    }
+
+    @Test
+    void refresh_ShouldReturnUnauthorized_WhenRefreshTokenIsInvalid() throws Exception {
+        when(authService.refresh("used")).thenThrow(new InvalidRefreshTokenException());
+
+        mockMvc.perform(post("/api/v1/auth/refresh")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"refreshToken\":\"used\"}"))
+                .andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void logout_ShouldRevokeAccessAndRefreshTokens() throws Exception {
+        mockMvc.perform(post("/api/v1/auth/logout")
+                        .header("Authorization", "Bearer jwt-token")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"refreshToken\":\"refresh-token\"}"))
+                .andExpect(status().isOk());
+
+        verify(authService).logout("jwt-token", "refresh-token");
+    }
+
+    @Test
+    void login_ShouldReturnServiceUnavailableWithRetryAfter_WhenPasswordHashingIsSaturated() throws Exception {
+        when(authService.login(any())).thenThrow(new PasswordHashingUnavailableException(Duration.ofSeconds(3)));
+
+        mockMvc.perform(post("/api/v1/auth/login")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"username\":\"testuser\",\"password\":\"testpass123\"}"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "3"));
     }
 
     @Test
@@ -1,23 +1,37 @@
 package com.example.bankcards.controller;
 
+import com.example.bankcards.dto.AsyncTransferDTO;
 import com.example.bankcards.dto.CardDTO;
-import com.example.bankcards.entity.User;
+import com.example.bankcards.dto.CardSliceDTO;
+import com.example.bankcards.dto.TransferResultDTO;
 import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.entity.enums.TransferStatus;
+import com.example.bankcards.exception.AsyncTransferNotFoundException;
+import com.example.bankcards.exception.InvalidCursorException;
+import com.example.bankcards.security.AuthenticatedUser;
 import com.example.bankcards.security.JwtUtil;
+import com.example.bankcards.service.AsyncTransferService;
 import com.example.bankcards.service.CardService;
+import com.example.bankcards.service.IdempotencyService;
+import com.example.bankcards.service.TokenRevocationService;
+import com.example.bankcards.service.TransferBatchService;
 import com.example.bankcards.service.UserService;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.data.domain.*;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 
-import java.math.BigDecimal;
 import java.util.List;
 
 import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -28,6 +42,7 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
                 org.springframework.boot.autoconfigure.security.servlet.SecurityFilterAutoConfiguration.class
         })
 class CardControllerTest {
+    private static final AuthenticatedUser USER = new AuthenticatedUser(7L, "testuser", Role.USER);
 
     @Autowired
     private MockMvc mockMvc;
@@ -38,28 +53,35 @@ class CardControllerTest {
     @MockitoBean
     private UserService userService;
 
+    @MockitoBean
+    private TransferBatchService transferBatchService;
+
+    @MockitoBean
+    private IdempotencyService idempotencyService;
+
+    @MockitoBean
+    private AsyncTransferService asyncTransferService;
+
     @MockitoBean
     private JwtUtil jwtUtil;
 
+    @MockitoBean
+    private TokenRevocationService tokenRevocationService;
+
     @Test
     @WithMockUser
     void getCards_ShouldReturnPagedCards() throws Exception {
-        User user = new User();
-        user.setUsername("testuser");
-        user.setRole(Role.USER);
-
         CardDTO cardDTO = new CardDTO();
         cardDTO.setId(1L);
         cardDTO.setMaskedCardNumber("**** **** **** 1234");
-        cardDTO.setBalance(new BigDecimal("1500.00"));
+        cardDTO.setBalance(150000L);
 
         Page<CardDTO> cardPage = new PageImpl<>(List.of(cardDTO));
 
-        when(userService.findByUsername("testuser")).thenReturn(user);
-        when(cardService.getCards(eq(user), isNull(), any(Pageable.class))).thenReturn(cardPage);
+        when(cardService.getCards(eq(USER.id()), isNull(), any(Pageable.class))).thenReturn(cardPage);
 
         mockMvc.perform(get("/api/v1/cards")
-                        .principal(() -> "testuser")
+                        .principal(USER)
                         .param("page", "0")
                         .param("size", "10"))
                 .andExpect(status().isOk())
@@ -67,26 +89,24 @@ class CardControllerTest {
                 .andExpect(jsonPath("$.content[0].id").value(1))
                 .andExpect(jsonPath("$.content[0].maskedCardNumber").value("**** **** **** 1234"))
                 .andExpect(jsonPath("$.content[0].balance").value(1500.0));
+
+        verifyNoInteractions(userService);
     }
 
     @Test
     @WithMockUser
     void getCards_ShouldReturnPagedCardsWithSearch() throws Exception {
-        User user = new User();
-        user.setUsername("testuser");
-
         CardDTO cardDTO = new CardDTO();
         cardDTO.setId(1L);
         cardDTO.setMaskedCardNumber("**** **** **** 1234");
-        cardDTO.setBalance(new BigDecimal("1000.00"));
+        cardDTO.setBalance(100000L);
 
         Page<CardDTO> cardPage = new PageImpl<>(List.of(cardDTO));
 
-        when(userService.findByUsername("testuser")).thenReturn(user);
-        when(cardService.getCards(eq(user), eq("1234"), any(Pageable.class))).thenReturn(cardPage);
+        when(cardService.getCards(eq(USER.id()), eq("1234"), any(Pageable.class))).thenReturn(cardPage);
 
         mockMvc.perform(get("/api/v1/cards")
-                        .principal(() -> "testuser")
+                        .principal(USER)
                         .param("search", "1234")
                         .param("page", "0")
                         .param("size", "10"))
@@ -95,61 +115,225 @@ class CardControllerTest {
                 .andExpect(jsonPath("$.content[0].maskedCardNumber").value("**** **** **** 1234"));
     }
 
+    @Test
+    @WithMockUser
+    void getCards_ShouldReturnSlice_WhenCursorGiven() throws Exception {
+        CardDTO cardDTO = new CardDTO();
+        cardDTO.setId(1L);
+        cardDTO.setBalance(100000L);
+
+        when(cardService.getCards(USER.id(), null, "balance", "", 1))
+                .thenReturn(new CardSliceDTO(List.of(cardDTO), "next-token"));
+
+        mockMvc.perform(get("/api/v1/cards")
+                        .principal(USER)
+                        .param("cursor", "")
+                        .param("size", "1")
+                        .param("sortBy", "balance"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].id").value(1))
+                .andExpect(jsonPath("$.hasNext").value(true))
+                .andExpect(jsonPath("$.nextCursor").value("next-token"))
+                .andExpect(jsonPath("$.totalElements").doesNotExist());
+    }
+
+    @Test
+    @WithMockUser
+    void getCards_ShouldReturnBadRequest_WhenCursorIsInvalid() throws Exception {
+        when(cardService.getCards(USER.id(), null, "id", "garbage", 10))
+                .thenThrow(new InvalidCursorException("Cursor is malformed"));
+
+        mockMvc.perform(get("/api/v1/cards")
+                        .principal(USER)
+                        .param("cursor", "garbage"))
+                .andExpect(status().isBadRequest());
+    }
+
     @Test
     @WithMockUser
     void getBalance_ShouldReturnBalance() throws Exception {
-        User user = new User();
-        user.setUsername("testuser");
+        when(cardService.getBalance(1L, USER.id())).thenReturn(150000L);
+
+        mockMvc.perform(get("/api/v1/cards/1/balance")
+                        .principal(USER))
+                .andExpect(status().isOk())
+                .andExpect(content().string("1500.00"));
+    }
 
-        when(userService.findByUsername("testuser")).thenReturn(user);
-        when(cardService.getBalance(1L, user)).thenReturn(new BigDecimal("1500.00"));
+    @Test
+    @WithMockUser
+    void getBalance_ShouldReturnNotModified_WhenETagMatches() throws Exception {
+        when(cardService.getBalance(1L, USER.id())).thenReturn(150000L);
+        String eTag = mockMvc.perform(get("/api/v1/cards/1/balance")
+                        .principal(USER))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader("ETag");
 
         mockMvc.perform(get("/api/v1/cards/1/balance")
-                        .principal(() -> "testuser"))
+                        .header("If-None-Match", eTag)
+                        .principal(USER))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+
+    @Test
+    @WithMockUser
+    void getCards_ShouldReturnNotModified_WithoutReadingCards_WhenETagMatches() throws Exception {
+        when(cardService.getCardsETag(USER.id())).thenReturn("\"3.6\"");
+
+        mockMvc.perform(get("/api/v1/cards")
+                        .header("If-None-Match", "\"3.6\"")
+                        .principal(USER))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", "\"3.6\""));
+
+        verify(cardService, never()).getCards(anyLong(), any(), any(Pageable.class));
+    }
+
+    @Test
+    @WithMockUser
+    void getCards_ShouldReturnCardsWithETag_WhenETagIsStale() throws Exception {
+        when(cardService.getCardsETag(USER.id())).thenReturn("\"3.7\"");
+        when(cardService.getCards(eq(USER.id()), isNull(), any(Pageable.class))).thenReturn(Page.empty());
+
+        mockMvc.perform(get("/api/v1/cards")
+                        .header("If-None-Match", "\"3.6\"")
+                        .principal(USER))
                 .andExpect(status().isOk())
-                .andExpect(content().string("1500.0"));
+                .andExpect(header().string("ETag", "\"3.7\""));
     }
 
     @Test
     @WithMockUser
     void blockCard_ShouldReturnOk() throws Exception {
-        User user = new User();
-        user.setUsername("testuser");
-
-        when(userService.findByUsername("testuser")).thenReturn(user);
 
         mockMvc.perform(put("/api/v1/cards/1/block")
-                        .principal(() -> "testuser"))
+                        .principal(USER))
                 .andExpect(status().isOk());
     }
 
     @Test
     @WithMockUser
     void transfer_ShouldReturnOk() throws Exception {
-        User user = new User();
-        user.setUsername("testuser");
 
-        when(userService.findByUsername("testuser")).thenReturn(user);
+        mockMvc.perform(put("/api/v1/cards/1/transfer/1234567890123456")
+                        .principal(USER)
+                        .param("amount", "100.0"))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    @WithMockUser
+    void transfer_ShouldPassAmountInMinorUnits() throws Exception {
+
+        mockMvc.perform(put("/api/v1/cards/1/transfer/1234567890123456")
+                        .principal(USER)
+                        .param("amount", "0.10"))
+                .andExpect(status().isOk());
+
+        verify(cardService).transfer(1L, "1234567890123456", 10L, USER.id());
+    }
+
+    @Test
+    @WithMockUser
+    void transferAsync_ShouldReturnAcceptedWithTransferId() throws Exception {
+        AsyncTransferDTO transfer = new AsyncTransferDTO();
+        transfer.setId("3f1c2f3e-1111-2222-3333-444455556666");
+        transfer.setStatus(TransferStatus.PENDING);
+
+        when(asyncTransferService.submit(1L, "1234567890123456", 10000L, USER.id())).thenReturn(transfer);
+
+        mockMvc.perform(put("/api/v1/cards/1/transfer/1234567890123456/async")
+                        .principal(USER)
+                        .param("amount", "100.00"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "/api/v1/cards/transfers/3f1c2f3e-1111-2222-3333-444455556666"))
+                .andExpect(jsonPath("$.id").value("3f1c2f3e-1111-2222-3333-444455556666"))
+                .andExpect(jsonPath("$.status").value("PENDING"));
+    }
+
+    @Test
+    @WithMockUser
+    void getTransfer_ShouldReturnTransferStatus() throws Exception {
+        AsyncTransferDTO transfer = new AsyncTransferDTO();
+        transfer.setId("3f1c2f3e-1111-2222-3333-444455556666");
+        transfer.setStatus(TransferStatus.FAILED);
+        transfer.setError("Insufficient balance for transfer");
+
+        when(asyncTransferService.getTransfer("3f1c2f3e-1111-2222-3333-444455556666", USER.id())).thenReturn(transfer);
+
+        mockMvc.perform(get("/api/v1/cards/transfers/3f1c2f3e-1111-2222-3333-444455556666")
+                        .principal(USER))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("FAILED"))
+                .andExpect(jsonPath("$.error").value("Insufficient balance for transfer"));
+    }
+
+    @Test
+    @WithMockUser
+    void getTransfer_ShouldReturnNotFound_WhenTransferIsUnknown() throws Exception {
+        when(asyncTransferService.getTransfer("missing", USER.id())).thenThrow(new AsyncTransferNotFoundException("missing"));
+
+        mockMvc.perform(get("/api/v1/cards/transfers/missing")
+                        .principal(USER))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    @WithMockUser
+    void transfer_ShouldReturnBadRequest_WhenAmountHasMoreThanTwoDecimals() throws Exception {
+        mockMvc.perform(put("/api/v1/cards/1/transfer/1234567890123456")
+                        .principal(USER)
+                        .param("amount", "0.001"))
+                .andExpect(status().isBadRequest());
+
+        verifyNoInteractions(cardService);
+    }
+
+    @Test
+    @WithMockUser
+    void transfer_ShouldGoThroughIdempotencyService_WhenIdempotencyKeyGiven() throws Exception {
+        when(idempotencyService.execute(eq("transfer:" + USER.id()), eq("key-1"), eq("1:1234567890123456:10000"), any()))
+                .thenReturn(HttpStatus.OK);
 
         mockMvc.perform(put("/api/v1/cards/1/transfer/1234567890123456")
-                        .principal(() -> "testuser")
+                        .principal(USER)
+                        .header("Idempotency-Key", "key-1")
                         .param("amount", "100.0"))
                 .andExpect(status().isOk());
+
+        verify(cardService, never()).transfer(anyLong(), anyString(), anyLong(), anyLong());
     }
 
     @Test
     @WithMockUser
-    void getCards_ShouldReturnEmptyPage_WhenNoCards() throws Exception {
-        User user = new User();
-        user.setUsername("testuser");
+    void transferBatch_ShouldReturnPerItemResults() throws Exception {
+        when(transferBatchService.transfer(anyList(), eq(USER.id()))).thenReturn(List.of(
+                TransferResultDTO.applied(0),
+                TransferResultDTO.rejected(1, "Insufficient balance for transfer")));
 
+        mockMvc.perform(post("/api/v1/cards/transfers/batch")
+                        .principal(USER)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                [{"cardId": 1, "recipientCardNumber": "1234567890123456", "amount": 10.00},
+                                 {"cardId": 1, "recipientCardNumber": "1234567890123456", "amount": 5000.00}]
+                                """))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].applied").value(true))
+                .andExpect(jsonPath("$[1].applied").value(false))
+                .andExpect(jsonPath("$[1].error").value("Insufficient balance for transfer"));
+    }
+
+    @Test
+    @WithMockUser
+    void getCards_ShouldReturnEmptyPage_WhenNoCards() throws Exception {
         Page<CardDTO> emptyPage = new PageImpl<>(List.of());
 
-        when(userService.findByUsername("testuser")).thenReturn(user);
-        when(cardService.getCards(eq(user), isNull(), any(Pageable.class))).thenReturn(emptyPage);
+        when(cardService.getCards(eq(USER.id()), isNull(), any(Pageable.class))).thenReturn(emptyPage);
 
         mockMvc.perform(get("/api/v1/cards")
-                        .principal(() -> "testuser"))
+                        .principal(USER))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.content").isEmpty());
     }
@@ -0,0 +1,74 @@
+package com.example.bankcards.mapper;
+
+import com.example.bankcards.dto.AuthenticationDTO;
+import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.entity.enums.Status;
+import org.junit.jupiter.api.Test;
+import org.modelmapper.ModelMapper;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardMapperTest {
+    private final UserMapper userMapper = new UserMapper();
+    private final CardMapper cardMapper = new CardMapper(userMapper);
+
+    @Test
+    void toDTO_ShouldMapTheSameFieldsAsModelMapper() {
+        Card card = card();
+
+        CardDTO expected = new ModelMapper().map(card, CardDTO.class);
+        CardDTO actual = cardMapper.toDTO(card);
+
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getMaskedCardNumber(), actual.getMaskedCardNumber());
+        assertEquals(expected.getValidityPeriod(), actual.getValidityPeriod());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getBalance(), actual.getBalance());
+        assertEquals(expected.getUser().getUsername(), actual.getUser().getUsername());
+        assertEquals(expected.getUser().getRole(), actual.getUser().getRole());
+    }
+
+    @Test
+    void toDTO_ShouldLeaveUserEmpty_WhenCardHasNoOwner() {
+        Card card = card();
+        card.setUser(null);
+
+        assertNull(cardMapper.toDTO(card).getUser());
+    }
+
+    @Test
+    void toUser_ShouldCopyCredentials_AndLeaveRoleUnset() {
+        AuthenticationDTO authDTO = new AuthenticationDTO();
+        authDTO.setUsername("testuser");
+        authDTO.setPassword("testpass123");
+
+        User user = userMapper.toUser(authDTO);
+
+        assertEquals("testuser", user.getUsername());
+        assertEquals("testpass123", user.getPassword());
+        assertNull(user.getId());
+        assertNull(user.getRole());
+    }
+
+    private static Card card() {
+        User user = new User();
+        user.setId(7L);
+        user.setUsername("testuser");
+        user.setRole(Role.USER);
+
+        Card card = new Card();
+        card.setId(1L);
+        card.setCardNumber("1234567812345678");
+        card.setMaskedCardNumber("**** **** **** 5678");
+        card.setUser(user);
+        card.setValidityPeriod(LocalDateTime.of(2030, 1, 1, 0, 0));
+        card.setStatus(Status.ACTIVE);
+        card.setBalance(1000L);
+        return card;
+    }
+}
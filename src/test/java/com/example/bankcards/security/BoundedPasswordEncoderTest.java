@@ -0,0 +1,91 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.exception.PasswordHashingUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedPasswordEncoderTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private BoundedPasswordEncoder encoder;
+
+    @AfterEach
+    void tearDown() {
+        encoder.shutdown();
+    }
+
+    @Test
+    void encodeAndMatches_ShouldRunOnHashingThreads_AndRecordMetrics() {
+        encoder = new BoundedPasswordEncoder(meterRegistry, 4, 1, 4, Duration.ofSeconds(1));
+
+        String hash = encoder.encode("secret");
+
+        assertTrue(encoder.matches("secret", hash));
+        assertFalse(encoder.matches("wrong", hash));
+        assertEquals(1, meterRegistry.get("password.hashing.time").tag("operation", "encode").timer().count());
+        assertEquals(2, meterRegistry.get("password.hashing.queue.wait").tag("operation", "matches").timer().count());
+    }
+
+    @Test
+    void encode_ShouldFailFastWithRetryAfter_WhenQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        encoder = new BoundedPasswordEncoder(blocking(started, release), meterRegistry, 1, 1, Duration.ofSeconds(2));
+
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> encoder.encode("first"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> encoder.encode("second"));
+        while (meterRegistry.get("password.hashing.queue.depth").gauge().value() < 1) {
+            Thread.onSpinWait();
+        }
+
+        PasswordHashingUnavailableException exception =
+                assertThrows(PasswordHashingUnavailableException.class, () -> encoder.encode("third"));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, exception.getStatusCode());
+        assertEquals("2", exception.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(1, meterRegistry.get("password.hashing.rejected").counter().count());
+
+        release.countDown();
+        assertEquals("hash:first", running.get(5, TimeUnit.SECONDS));
+        assertEquals("hash:second", queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void upgradeEncoding_ShouldReportHashesWithLowerCost() {
+        encoder = new BoundedPasswordEncoder(meterRegistry, 5, 1, 4, Duration.ofSeconds(1));
+
+        assertTrue(encoder.upgradeEncoding(new BCryptPasswordEncoder(4).encode("secret")));
+        assertFalse(encoder.upgradeEncoding(encoder.encode("secret")));
+    }
+
+    private static PasswordEncoder blocking(CountDownLatch started, CountDownLatch release) {
+        return new PasswordEncoder() {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return "hash:" + rawPassword;
+            }
+
+            @Override
+            public boolean matches(CharSequence rawPassword, String encodedPassword) {
+                return encode(rawPassword).equals(encodedPassword);
+            }
+        };
+    }
+}
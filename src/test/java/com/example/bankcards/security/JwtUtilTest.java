@@ -0,0 +1,99 @@
+package com.example.bankcards.security;
+
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.exception.JwtException;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwtUtilTest {
+    private static final String SECRET = "uqwre783874awueyruiwr787f453y243870sd0dew3";
+
+    private SimpleMeterRegistry meterRegistry;
+    private JwtUtil jwtUtil;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        jwtUtil = new JwtUtil(meterRegistry, SECRET, 3600, 100);
+        user = new User();
+        user.setId(7L);
+        user.setUsername("testuser");
+        user.setRole(Role.ADMIN);
+    }
+
+    @Test
+    void generateAccessToken_ShouldCarryUserIdAndRole() {
+        Claims claims = jwtUtil.validateToken(jwtUtil.generateAccessToken(user));
+
+        assertEquals("testuser", claims.getSubject());
+        assertEquals(7L, claims.get(JwtUtil.USER_ID_CLAIM, Long.class));
+        assertEquals("ADMIN", claims.get(JwtUtil.ROLE_CLAIM, String.class));
+    }
+
+    @Test
+    void generateAccessToken_ShouldGiveEveryTokenItsOwnId() {
+        Claims first = jwtUtil.validateToken(jwtUtil.generateAccessToken(user));
+        Claims second = jwtUtil.validateToken(jwtUtil.generateAccessToken(user));
+
+        assertNotNull(first.getId());
+        assertNotEquals(first.getId(), second.getId());
+    }
+
+    @Test
+    void validateToken_ShouldReturnClaims_AndParseRepeatedTokenOnce() {
+        String token = jwtUtil.generateAccessToken(user);
+
+        Claims first = jwtUtil.validateToken(token);
+        Claims second = jwtUtil.validateToken(token);
+
+        assertEquals("testuser", first.getSubject());
+        assertSame(first, second);
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "verified-tokens").tag("result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void validateToken_ShouldThrow_WhenSignatureIsTampered() {
+        String token = jwtUtil.generateAccessToken(user);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+
+        assertThrows(JwtException.class, () -> jwtUtil.validateToken(tampered));
+    }
+
+    @Test
+    void validateToken_ShouldThrow_WhenTokenIsExpired() {
+        String expired = Jwts.builder()
+                .subject("testuser")
+                .expiration(new Date(System.currentTimeMillis() - 1000))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), Jwts.SIG.HS256)
+                .compact();
+
+        JwtException exception = assertThrows(JwtException.class, () -> jwtUtil.validateToken(expired));
+        assertTrue(exception.getMessage().startsWith("JWT token is expired"));
+    }
+
+    @Test
+    void validateToken_ShouldStopAnsweringFromCache_OnceTokenExpires() throws InterruptedException {
+        String token = Jwts.builder()
+                .subject("testuser")
+                .expiration(new Date(System.currentTimeMillis() + 1500))
+                .signWith(Keys.hmacShaKeyFor(SECRET.getBytes(StandardCharsets.UTF_8)), Jwts.SIG.HS256)
+                .compact();
+        jwtUtil.validateToken(token);
+
+        Thread.sleep(1600);
+
+        assertThrows(JwtException.class, () -> jwtUtil.validateToken(token));
+    }
+}
@@ -0,0 +1,208 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.RecentWriters;
+import com.example.bankcards.dto.AsyncTransferDTO;
+import com.example.bankcards.entity.AsyncTransfer;
+import com.example.bankcards.entity.enums.TransferStatus;
+import com.example.bankcards.exception.AsyncTransferLimitExceededException;
+import com.example.bankcards.exception.AsyncTransferNotFoundException;
+import com.example.bankcards.exception.InsufficientBalanceException;
+import com.example.bankcards.repository.AsyncTransferRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AsyncTransferServiceTest {
+
+    @Mock
+    private CardService cardService;
+
+    @Mock
+    private AsyncTransferRepository asyncTransferRepository;
+
+    @Mock
+    private RecentWriters recentWriters;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private static final Long USER_ID = 1L;
+
+    private AsyncTransferService asyncTransferService;
+
+    @BeforeEach
+    void setUp() {
+        asyncTransferService = new AsyncTransferService(cardService, asyncTransferRepository, recentWriters,
+                transactionManager, new SimpleMeterRegistry(), 1, Duration.ofHours(1), 100, Duration.ofMinutes(5));
+    }
+
+    @AfterEach
+    void tearDown() {
+        asyncTransferService.shutdown();
+    }
+
+    @Test
+    void submit_ShouldRecordPendingTransfer_AndCompleteItInBackground() throws Exception {
+        storeTransfers();
+        when(asyncTransferRepository.complete(anyString(), any(), any(), any())).thenReturn(1);
+
+        AsyncTransferDTO accepted = asyncTransferService.submit(1L, "1234567890123456", 10000L, USER_ID);
+
+        assertEquals(TransferStatus.PENDING, accepted.getStatus());
+        verify(asyncTransferRepository).save(argThat(transfer -> transfer.getId().equals(accepted.getId())
+                && transfer.getAmount() == 10000L && transfer.getUserId().equals(1L)));
+
+        AsyncTransferDTO completed = awaitFinished(accepted.getId());
+        assertEquals(TransferStatus.COMPLETED, completed.getStatus());
+        assertNotNull(completed.getCompletedAt());
+        verify(cardService).transfer(1L, "1234567890123456", 10000L, USER_ID);
+        verify(asyncTransferRepository).complete(eq(accepted.getId()), eq(TransferStatus.COMPLETED), isNull(), any());
+        verify(recentWriters).record(USER_ID);
+    }
+
+    @Test
+    void submit_ShouldRecordFailure_WhenTransferFails() throws Exception {
+        storeTransfers();
+        when(asyncTransferRepository.complete(anyString(), any(), any(), any())).thenReturn(1);
+        doThrow(new InsufficientBalanceException("Insufficient balance for transfer"))
+                .when(cardService).transfer(anyLong(), anyString(), anyLong(), any());
+
+        AsyncTransferDTO accepted = asyncTransferService.submit(1L, "1234567890123456", 10000L, USER_ID);
+
+        AsyncTransferDTO failed = awaitFinished(accepted.getId());
+        assertEquals(TransferStatus.FAILED, failed.getStatus());
+        assertEquals("Insufficient balance for transfer", failed.getError());
+        verify(asyncTransferRepository).complete(eq(accepted.getId()), eq(TransferStatus.FAILED),
+                eq("Insufficient balance for transfer"), any());
+        verify(recentWriters).record(USER_ID);
+    }
+
+    @Test
+    void submit_ShouldReject_WhenInFlightLimitIsReached() throws Exception {
+        storeTransfers();
+        when(asyncTransferRepository.complete(anyString(), any(), any(), any())).thenReturn(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> release.await(5, TimeUnit.SECONDS))
+                .when(cardService).transfer(anyLong(), anyString(), anyLong(), any());
+
+        AsyncTransferDTO running = asyncTransferService.submit(1L, "1234567890123456", 10000L, USER_ID);
+
+        assertThrows(AsyncTransferLimitExceededException.class,
+                () -> asyncTransferService.submit(1L, "1234567890123456", 10000L, USER_ID));
+        release.countDown();
+        awaitFinished(running.getId());
+    }
+
+    @Test
+    void getTransfer_ShouldReadFromDatabase_WhenNotCached() {
+        AsyncTransfer transfer = new AsyncTransfer();
+        transfer.setId("stored");
+        transfer.setUserId(1L);
+        transfer.setStatus(TransferStatus.COMPLETED);
+        transfer.setExpiresAt(LocalDateTime.now().plusMinutes(5));
+        when(asyncTransferRepository.findById("stored")).thenReturn(Optional.of(transfer));
+
+        assertEquals(TransferStatus.COMPLETED, asyncTransferService.getTransfer("stored", USER_ID).getStatus());
+        asyncTransferService.getTransfer("stored", USER_ID);
+
+        verify(asyncTransferRepository, times(1)).findById("stored");
+    }
+
+    @Test
+    void submit_ShouldRollBackTransfer_WhenRecordIsNoLongerPending() throws Exception {
+        AsyncTransfer stored = storeTransfers();
+        when(asyncTransferRepository.complete(anyString(), any(), any(), any())).thenAnswer(invocation -> {
+            stored.setStatus(TransferStatus.FAILED);
+            return 0;
+        });
+
+        AsyncTransferDTO accepted = asyncTransferService.submit(1L, "1234567890123456", 10000L, USER_ID);
+
+        assertEquals(TransferStatus.FAILED, awaitFinished(accepted.getId()).getStatus());
+        verify(transactionManager, timeout(5000).times(2)).rollback(any());
+        verify(transactionManager, never()).commit(any());
+    }
+
+    @Test
+    void getTransfer_ShouldNotCachePendingTransfer() {
+        AsyncTransfer transfer = new AsyncTransfer();
+        transfer.setId("pending");
+        transfer.setUserId(1L);
+        transfer.setStatus(TransferStatus.PENDING);
+        transfer.setExpiresAt(LocalDateTime.now().plusMinutes(5));
+        when(asyncTransferRepository.findById("pending")).thenReturn(Optional.of(transfer));
+
+        assertEquals(TransferStatus.PENDING, asyncTransferService.getTransfer("pending", USER_ID).getStatus());
+        transfer.setStatus(TransferStatus.COMPLETED);
+
+        assertEquals(TransferStatus.COMPLETED, asyncTransferService.getTransfer("pending", USER_ID).getStatus());
+        verify(asyncTransferRepository, times(2)).findById("pending");
+    }
+
+    @Test
+    void failAbandoned_ShouldFailTransfersPendingLongerThanStaleAfter() {
+        LocalDateTime before = LocalDateTime.now();
+
+        asyncTransferService.failAbandoned();
+
+        verify(asyncTransferRepository).failPendingCreatedBefore(
+                argThat(cutoff -> !cutoff.isBefore(before.minusMinutes(5)) && cutoff.isBefore(before.minusMinutes(4))),
+                anyString(), any());
+    }
+
+    @Test
+    void getTransfer_ShouldThrowNotFound_WhenTransferBelongsToAnotherUser() {
+        AsyncTransfer transfer = new AsyncTransfer();
+        transfer.setId("foreign");
+        transfer.setUserId(2L);
+        transfer.setStatus(TransferStatus.COMPLETED);
+        transfer.setExpiresAt(LocalDateTime.now().plusMinutes(5));
+        when(asyncTransferRepository.findById("foreign")).thenReturn(Optional.of(transfer));
+
+        assertThrows(AsyncTransferNotFoundException.class, () -> asyncTransferService.getTransfer("foreign", USER_ID));
+    }
+
+    /**
+     * Makes the repository answer {@code findById} with the last transfer saved, as the database would.
+     */
+    private AsyncTransfer storeTransfers() {
+        AsyncTransfer stored = new AsyncTransfer();
+        when(asyncTransferRepository.save(any(AsyncTransfer.class))).thenAnswer(invocation -> {
+            AsyncTransfer transfer = invocation.getArgument(0);
+            stored.setId(transfer.getId());
+            stored.setUserId(transfer.getUserId());
+            stored.setStatus(transfer.getStatus());
+            stored.setCreatedAt(transfer.getCreatedAt());
+            stored.setExpiresAt(transfer.getExpiresAt());
+            return transfer;
+        });
+        lenient().when(asyncTransferRepository.findById(anyString())).thenAnswer(invocation -> Optional.of(stored));
+        return stored;
+    }
+
+    private AsyncTransferDTO awaitFinished(String transferId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        AsyncTransferDTO transfer;
+        while ((transfer = asyncTransferService.getTransfer(transferId, USER_ID)).getStatus() == TransferStatus.PENDING) {
+            assertTrue(System.nanoTime() < deadline, "transfer did not finish in time");
+            Thread.sleep(10);
+        }
+        return transfer;
+    }
+}
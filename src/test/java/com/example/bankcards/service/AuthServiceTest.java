@@ -1,22 +1,36 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.config.RecentWriters;
 import com.example.bankcards.dto.AuthenticationDTO;
+import com.example.bankcards.dto.TokenDTO;
 import com.example.bankcards.entity.User;
 import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.exception.InvalidRefreshTokenException;
+import com.example.bankcards.exception.JwtException;
 import com.example.bankcards.exception.UserAlreadyExistsException;
+import com.example.bankcards.mapper.UserMapper;
 import com.example.bankcards.repository.UserRepository;
 import com.example.bankcards.security.JwtUtil;
+import com.example.bankcards.security.UserDetailsService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.modelmapper.ModelMapper;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -37,8 +51,23 @@ class AuthServiceTest {
     @Mock
     private AuthenticationManager authenticationManager;
 
+    @Spy
+    private UserMapper userMapper = new UserMapper();
+
+    @Mock
+    private UserCache userCache;
+
+    @Mock
+    private RefreshTokenService refreshTokenService;
+
     @Mock
-    private ModelMapper modelMapper;
+    private TokenRevocationService tokenRevocationService;
+
+    @Mock
+    private RecentWriters recentWriters;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
 
     @InjectMocks
     private AuthService authService;
@@ -49,24 +78,27 @@ class AuthServiceTest {
         authDTO.setUsername("testuser");
         authDTO.setPassword("testpass123");
 
-        User user = new User();
-        user.setUsername("testuser");
-        user.setPassword("testpass123");
-
         User savedUser = new User();
         savedUser.setUsername("testuser");
         savedUser.setRole(Role.USER);
 
-        when(modelMapper.map(authDTO, User.class)).thenReturn(user);
-        when(userRepository.existsByUsername("testuser")).thenReturn(false);
+        when(userCache.find("testuser")).thenReturn(Optional.empty());
         when(passwordEncoder.encode("testpass123")).thenReturn("encodedPassword");
-        when(userRepository.save(any(User.class))).thenReturn(savedUser);
-        when(jwtUtil.generateAccessToken("testuser")).thenReturn("jwt-token");
-
-        String result = authService.register(authDTO);
-
-        assertEquals("jwt-token", result);
-        verify(userRepository).save(any(User.class));
+        when(userRepository.save(any(User.class))).thenAnswer(invocation -> {
+            invocation.<User>getArgument(0).setId(7L);
+            return savedUser;
+        });
+        when(jwtUtil.generateAccessToken(any(User.class))).thenReturn("jwt-token");
+        when(refreshTokenService.issue(7L)).thenReturn("refresh-token");
+
+        TokenDTO result = authService.register(authDTO);
+
+        assertEquals("jwt-token", result.getAccessToken());
+        assertEquals("refresh-token", result.getRefreshToken());
+        verify(userRepository).save(argThat(user -> user.getUsername().equals("testuser")
+                && user.getPassword().equals("encodedPassword") && user.getRole() == Role.USER));
+        verify(userCache).invalidate("testuser");
+        verify(recentWriters).record(7L);
     }
 
     @Test
@@ -75,11 +107,8 @@ class AuthServiceTest {
         authDTO.setUsername("existinguser");
         authDTO.setPassword("testpass123");
 
-        User user = new User();
-        user.setUsername("existinguser");
-
-        when(modelMapper.map(authDTO, User.class)).thenReturn(user);
-        when(userRepository.existsByUsername("existinguser")).thenReturn(true);
+        when(userCache.find("existinguser"))
+                .thenReturn(Optional.of(new UserCache.CachedUser(2L, "existinguser", "hash", Role.USER)));
 
         assertThrows(UserAlreadyExistsException.class, () -> authService.register(authDTO));
     }
@@ -90,14 +119,73 @@ class AuthServiceTest {
         authDTO.setUsername("testuser");
         authDTO.setPassword("testpass123");
 
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("testuser");
+        user.setRole(Role.USER);
+
         Authentication auth = mock(Authentication.class);
+        when(auth.getPrincipal()).thenReturn(new UserDetailsService(user));
         when(authenticationManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
                 .thenReturn(auth);
-        when(jwtUtil.generateAccessToken("testuser")).thenReturn("jwt-token");
+        when(jwtUtil.generateAccessToken(user)).thenReturn("jwt-token");
+        when(jwtUtil.getExpirationTime()).thenReturn(900);
+        when(refreshTokenService.issue(1L)).thenReturn("refresh-token");
+
+        TokenDTO result = authService.login(authDTO);
+
+        assertEquals("jwt-token", result.getAccessToken());
+        assertEquals("refresh-token", result.getRefreshToken());
+        assertEquals(900, result.getExpiresIn());
+    }
+
+    @Test
+    void refresh_ShouldIssueTokensWithCurrentRole() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("testuser");
+        user.setRole(Role.ADMIN);
+
+        when(refreshTokenService.consume("refresh-token")).thenReturn(1L);
+        when(userRepository.findById(1L)).thenReturn(Optional.of(user));
+        when(jwtUtil.generateAccessToken(user)).thenReturn("admin-jwt");
+        when(refreshTokenService.issue(1L)).thenReturn("next-refresh-token");
+
+        TokenDTO result = authService.refresh("refresh-token");
+
+        assertEquals("admin-jwt", result.getAccessToken());
+        assertEquals("next-refresh-token", result.getRefreshToken());
+        verify(transactionManager).getTransaction(argThat(definition -> !definition.isReadOnly()));
+    }
+
+    @Test
+    void refresh_ShouldThrowException_WhenRefreshTokenIsUsed() {
+        when(refreshTokenService.consume("used")).thenThrow(new InvalidRefreshTokenException());
+
+        assertThrows(InvalidRefreshTokenException.class, () -> authService.refresh("used"));
+        verifyNoInteractions(jwtUtil);
+    }
+
+    @Test
+    void logout_ShouldRevokeAccessTokenUntilItExpires_AndConsumeRefreshToken() {
+        Date expiration = new Date((System.currentTimeMillis() / 1000 + 60) * 1000);
+        Claims claims = Jwts.claims().id("token-id").expiration(expiration).build();
+        when(jwtUtil.validateToken("jwt-token")).thenReturn(claims);
+
+        authService.logout("jwt-token", "refresh-token");
+
+        verify(refreshTokenService).consume("refresh-token");
+        verify(tokenRevocationService).revoke("token-id",
+                LocalDateTime.ofInstant(expiration.toInstant(), ZoneId.systemDefault()));
+    }
+
+    @Test
+    void logout_ShouldIgnoreInvalidAccessToken() {
+        when(jwtUtil.validateToken("expired")).thenThrow(new JwtException("JWT token is expired"));
 
-        String result = authService.login(authDTO);
+        authService.logout("expired", null);
 
-        assertEquals("jwt-token", result);
+        verifyNoInteractions(tokenRevocationService, refreshTokenService);
     }
 
     @Test
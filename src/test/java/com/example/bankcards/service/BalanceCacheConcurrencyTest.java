@@ -0,0 +1,87 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+        "spring.datasource.hikari.maximum-pool-size=" + BalanceCacheConcurrencyTest.POOL_SIZE,
+        "spring.datasource.hikari.connection-timeout=2000"
+})
+class BalanceCacheConcurrencyTest {
+
+    static final int POOL_SIZE = 2;
+    private static final int READERS = 4 * POOL_SIZE;
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @MockitoSpyBean
+    private BalanceCache balanceCache;
+
+    /**
+     * Every reader waits for all the others before its cache miss is loaded, so the misses overlap. A reader that
+     * held a connection while waiting would leave the rest unable to get one.
+     */
+    @Test
+    void getBalance_ShouldNotExhaustThePool_WhenMoreMissesThanConnectionsRunConcurrently() throws Exception {
+        User user = new User();
+        user.setUsername("balance-misses-" + System.nanoTime());
+        user.setPassword("password");
+        user.setRole(Role.USER);
+        userRepository.save(user);
+        for (int i = 0; i < READERS; i++) {
+            cardService.createCard(user.getUsername(), 1000L + i);
+        }
+        List<Card> cards = cardRepository.findAllByUserId(user.getId(), Pageable.unpaged()).getContent();
+        cards.forEach(card -> balanceCache.invalidate(card.getId()));
+
+        CyclicBarrier allMissing = new CyclicBarrier(READERS);
+        doAnswer(invocation -> {
+            allMissing.await(10, TimeUnit.SECONDS);
+            return invocation.callRealMethod();
+        }).when(balanceCache).find(any());
+
+        ExecutorService executor = Executors.newFixedThreadPool(READERS);
+        List<Future<Long>> balances = new ArrayList<>();
+        for (Card card : cards) {
+            balances.add(executor.submit(() -> cardService.getBalance(card.getId(), user.getId())));
+        }
+        List<Long> read = new ArrayList<>();
+        for (Future<Long> balance : balances) {
+            read.add(balance.get(1, TimeUnit.MINUTES));
+        }
+        executor.shutdown();
+
+        assertEquals(cards.stream().map(Card::getBalance).toList(), read);
+    }
+}
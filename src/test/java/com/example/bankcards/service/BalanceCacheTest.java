@@ -0,0 +1,134 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferEngine;
+import com.example.bankcards.repository.CardRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BalanceCacheTest {
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private LedgerService ledgerService;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void find_ShouldQueryRepositoryOnce_UntilCardIsInvalidated() {
+        BalanceCache cache = cache();
+        when(cardRepository.findBalanceViewById(1L))
+                .thenReturn(Optional.of(view(10000L)))
+                .thenReturn(Optional.of(view(9000L)));
+
+        cache.find(1L);
+        assertEquals(10000L, cache.find(1L).orElseThrow().balance());
+        verify(cardRepository, times(1)).findBalanceViewById(1L);
+
+        cache.invalidate(1L);
+
+        assertEquals(9000L, cache.find(1L).orElseThrow().balance());
+        verify(cardRepository, times(2)).findBalanceViewById(1L);
+    }
+
+    @Test
+    void invalidate_ShouldKeepBalance_WhenTransactionRollsBack() {
+        BalanceCache cache = cache();
+        when(cardRepository.findBalanceViewById(1L)).thenReturn(Optional.of(view(10000L)));
+        cache.find(1L);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.invalidate(1L);
+            cache.find(1L);
+            verify(cardRepository, times(1)).findBalanceViewById(1L);
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(synchronization ->
+                    synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        cache.find(1L);
+        verify(cardRepository, times(1)).findBalanceViewById(1L);
+    }
+
+    @Test
+    void invalidateCardNumber_ShouldEvictCardLoadedById() {
+        BalanceCache cache = cache();
+        when(cardRepository.findBalanceViewById(1L)).thenReturn(Optional.of(view(10000L)));
+        cache.find(1L);
+
+        cache.invalidateCardNumber("1234567890123456");
+        cache.find(1L);
+
+        verify(cardRepository, times(2)).findBalanceViewById(1L);
+    }
+
+    @Test
+    void put_ShouldServeCreatedCardWithoutQuery() {
+        BalanceCache cache = cache();
+
+        cache.put(1L, 1L, "1234567890123456", 10000L);
+
+        assertEquals(10000L, cache.find(1L).orElseThrow().balance());
+        verifyNoInteractions(cardRepository);
+    }
+
+    @Test
+    void find_ShouldIncludeBalanceSlots_WhenCardIsStriped() {
+        BalanceCache cache = cache();
+        when(cardRepository.findBalanceViewById(1L)).thenReturn(Optional.of(
+                new CardRepository.BalanceView(1L, "1234567890123456", 10000L, 2500L)));
+
+        assertEquals(12500L, cache.find(1L).orElseThrow().balance());
+    }
+
+    @Test
+    void find_ShouldIncludeUnappliedLedgerEntries_WhenLedgerEngine() {
+        BalanceCache cache = cache();
+        ReflectionTestUtils.setField(cache, "transferEngine", TransferEngine.LEDGER);
+        when(cardRepository.findBalanceViewById(1L)).thenReturn(Optional.of(view(100000L)));
+        when(ledgerService.getBalance(1L)).thenReturn(90000L);
+
+        assertEquals(90000L, cache.find(1L).orElseThrow().balance());
+    }
+
+    @Test
+    void find_ShouldNotCacheUnknownCard() {
+        BalanceCache cache = cache();
+        when(cardRepository.findBalanceViewById(1L))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(view(10000L)));
+
+        assertTrue(cache.find(1L).isEmpty());
+        assertTrue(cache.find(1L).isPresent());
+    }
+
+    private BalanceCache cache() {
+        BalanceCache cache = new BalanceCache(cardRepository, ledgerService, transactionManager,
+                new SimpleMeterRegistry(), Duration.ofMinutes(10), 100);
+        ReflectionTestUtils.setField(cache, "transferEngine", TransferEngine.ENTITY);
+        return cache;
+    }
+
+    private static CardRepository.BalanceView view(long balance) {
+        return new CardRepository.BalanceView(1L, "1234567890123456", balance, null);
+    }
+}
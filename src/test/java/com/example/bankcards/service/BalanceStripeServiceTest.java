@@ -0,0 +1,102 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.CardBalanceSlot;
+import com.example.bankcards.entity.enums.Status;
+import com.example.bankcards.exception.InvalidBalanceStripesException;
+import com.example.bankcards.repository.CardBalanceSlotRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class BalanceStripeServiceTest {
+
+    @Mock
+    private CardBalanceSlotRepository cardBalanceSlotRepository;
+
+    @InjectMocks
+    private BalanceStripeService balanceStripeService;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(balanceStripeService, "maxStripes", 16);
+    }
+
+    @Test
+    void fold_ShouldMoveSlotBalancesIntoCardBalance() {
+        Card card = card(4, 1000L);
+        CardBalanceSlot first = slot(0, 500L);
+        CardBalanceSlot second = slot(1, 750L);
+        when(cardBalanceSlotRepository.findByCardIdForUpdate(1L)).thenReturn(List.of(first, second));
+
+        assertTrue(balanceStripeService.fold(card));
+
+        assertEquals(2250L, card.getBalance());
+        assertEquals(0L, first.getBalance());
+        assertEquals(0L, second.getBalance());
+    }
+
+    @Test
+    void fold_ShouldNotTouchSlots_WhenCardIsNotStriped() {
+        assertFalse(balanceStripeService.fold(card(0, 1000L)));
+
+        verifyNoInteractions(cardBalanceSlotRepository);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void restripe_ShouldFoldOldSlotsAndCreateNewOnes() {
+        Card card = card(2, 1000L);
+        when(cardBalanceSlotRepository.findByCardIdForUpdate(1L)).thenReturn(List.of(slot(0, 100L), slot(1, 200L)));
+
+        balanceStripeService.restripe(card, 3);
+
+        ArgumentCaptor<List<CardBalanceSlot>> captor = ArgumentCaptor.forClass(List.class);
+        verify(cardBalanceSlotRepository).deleteByCardId(1L);
+        verify(cardBalanceSlotRepository).saveAll(captor.capture());
+        assertEquals(List.of(0, 1, 2), captor.getValue().stream().map(CardBalanceSlot::getSlot).toList());
+        assertEquals(1300L, card.getBalance());
+        assertEquals(3, card.getBalanceStripes());
+    }
+
+    @Test
+    void restripe_ShouldReject_WhenStripeCountOutOfRange() {
+        assertThrows(InvalidBalanceStripesException.class, () -> balanceStripeService.restripe(card(0, 100L), 17));
+        assertThrows(InvalidBalanceStripesException.class, () -> balanceStripeService.restripe(card(0, 100L), -1));
+        verifyNoInteractions(cardBalanceSlotRepository);
+    }
+
+    @Test
+    void credit_ShouldCreditASlotOfTheActiveCard() {
+        when(cardBalanceSlotRepository.credit(eq("1234567890123456"), eq(1L), eq(Status.ACTIVE), anyInt(), eq(300L)))
+                .thenReturn(1);
+
+        assertEquals(1, balanceStripeService.credit("1234567890123456", 1L, 300L));
+    }
+
+    private Card card(int stripes, long balance) {
+        Card card = new Card();
+        card.setId(1L);
+        card.setBalance(balance);
+        card.setBalanceStripes(stripes);
+        return card;
+    }
+
+    private CardBalanceSlot slot(int slot, long balance) {
+        CardBalanceSlot cardBalanceSlot = new CardBalanceSlot(1L, slot);
+        cardBalanceSlot.setBalance(balance);
+        return cardBalanceSlot;
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.ExpirationRunDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.JobCheckpoint;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.entity.enums.Status;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.JobCheckpointRepository;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {"card.expiration.chunk-size=2", "card.expiration.initial-delay=3600000"})
+@ActiveProfiles("test")
+class CardExpirationJobTest {
+
+    @Autowired
+    private CardExpirationJob cardExpirationJob;
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JobCheckpointRepository jobCheckpointRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        checkpoint(0, null);
+    }
+
+    @Test
+    void run_ShouldExpireCardsPastTheirValidityPeriod_ChunkByChunk() {
+        List<Card> cards = cardsOfNewUser(5);
+        expireValidity(cards.get(0), cards.get(2), cards.get(4));
+
+        ExpirationRunDTO run = cardExpirationJob.run();
+
+        assertEquals(List.of(Status.EXPIRED, Status.PENDING, Status.EXPIRED, Status.PENDING, Status.EXPIRED),
+                statuses(cards));
+        assertEquals(3, run.getExpired());
+        assertEquals((cardRepository.findMaxId() + 1) / 2, run.getChunks());
+        JobCheckpoint checkpoint = jobCheckpointRepository.findById(CardExpirationJob.NAME).orElseThrow();
+        assertEquals(0, checkpoint.getLastId());
+        assertNotNull(checkpoint.getCompletedAt());
+    }
+
+    @Test
+    void run_ShouldResumeFromCheckpoint_AndCoverTheRestOnTheNextPass() {
+        List<Card> cards = cardsOfNewUser(4);
+        expireValidity(cards.toArray(Card[]::new));
+        checkpoint(cards.get(1).getId(), null);
+
+        cardExpirationJob.run();
+
+        assertEquals(List.of(Status.PENDING, Status.PENDING, Status.EXPIRED, Status.EXPIRED), statuses(cards));
+
+        cardExpirationJob.run();
+
+        assertEquals(List.of(Status.EXPIRED, Status.EXPIRED, Status.EXPIRED, Status.EXPIRED), statuses(cards));
+    }
+
+    @Test
+    void run_ShouldStop_WhenAnotherInstanceCompletedALaterPass() {
+        List<Card> cards = cardsOfNewUser(1);
+        expireValidity(cards.getFirst());
+        checkpoint(0, LocalDateTime.now().plusMinutes(1));
+
+        ExpirationRunDTO run = cardExpirationJob.run();
+
+        assertEquals(0, run.getExpired());
+        assertEquals(1, run.getChunks());
+        assertEquals(List.of(Status.PENDING), statuses(cards));
+    }
+
+    @Test
+    void run_ShouldMakeStaleCopiesOfExpiredCardsFailOnSave() {
+        List<Card> cards = cardsOfNewUser(1);
+        expireValidity(cards.getFirst());
+        Card stale = cardRepository.findById(cards.getFirst().getId()).orElseThrow();
+
+        cardExpirationJob.run();
+        stale.setStatus(Status.ACTIVE);
+
+        assertThrows(ObjectOptimisticLockingFailureException.class, () -> cardRepository.save(stale));
+    }
+
+    private List<Card> cardsOfNewUser(int count) {
+        User user = new User();
+        user.setUsername("expiration-" + System.nanoTime());
+        user.setPassword("password");
+        user.setRole(Role.USER);
+        userRepository.save(user);
+        for (int i = 0; i < count; i++) {
+            cardService.createCard(user.getUsername(), 1000L);
+        }
+        return cardRepository.findAllByUserId(user.getId(), Pageable.unpaged()).getContent().stream()
+                .sorted((a, b) -> Long.compare(a.getId(), b.getId()))
+                .toList();
+    }
+
+    private void expireValidity(Card... cards) {
+        for (Card card : cards) {
+            jdbcTemplate.update("update cards set validity_period = ? where id = ?",
+                    LocalDateTime.now().minusDays(1), card.getId());
+        }
+    }
+
+    private void checkpoint(long lastId, LocalDateTime completedAt) {
+        JobCheckpoint checkpoint = jobCheckpointRepository.findById(CardExpirationJob.NAME).orElseThrow();
+        checkpoint.setLastId(lastId);
+        checkpoint.setCompletedAt(completedAt);
+        jobCheckpointRepository.save(checkpoint);
+    }
+
+    private List<Status> statuses(List<Card> cards) {
+        return cards.stream()
+                .map(card -> cardRepository.findById(card.getId()).orElseThrow().getStatus())
+                .toList();
+    }
+}
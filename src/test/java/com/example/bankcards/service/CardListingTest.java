@@ -0,0 +1,122 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.dto.CardSliceDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.exception.InvalidCursorException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+class CardListingTest {
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private BalanceStripeService balanceStripeService;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void getCards_ShouldWalkAllCardsPageByPage_AndStreamTheSameCards() {
+        User user = new User();
+        user.setUsername("listing-" + System.nanoTime());
+        user.setPassword("password");
+        user.setRole(Role.USER);
+        userRepository.save(user);
+        for (int i = 0; i < 5; i++) {
+            cardService.createCard(user.getUsername(), 1000L * (i + 1));
+        }
+        List<Card> cards = cardRepository.findAllByUserId(user.getId(), Pageable.unpaged()).getContent();
+        Card striped = cards.get(2);
+        cardService.activateCard(striped.getId());
+        cardService.setBalanceStripes(striped.getId(), 2);
+        balanceStripeService.credit(striped.getCardNumber(), user.getId(), 500L);
+        long before = cards.getFirst().getId() - 1;
+
+        List<CardDTO> paged = new ArrayList<>();
+        long after = before;
+        List<CardDTO> page;
+        while (!(page = cardService.getCards(after, 2)).isEmpty()) {
+            assertTrue(page.size() <= 2);
+            paged.addAll(page);
+            after = page.getLast().getId();
+        }
+        List<CardDTO> streamed = new ArrayList<>();
+        cardService.streamCards(before, streamed::add);
+
+        assertEquals(cards.stream().map(Card::getId).toList(), paged.stream().map(CardDTO::getId).toList());
+        assertEquals(paged.stream().map(CardDTO::getId).toList(), streamed.stream().map(CardDTO::getId).toList());
+        CardDTO stripedCard = paged.get(2);
+        assertEquals(3500L, stripedCard.getBalance());
+        assertEquals(user.getUsername(), stripedCard.getUser().getUsername());
+        assertEquals(Role.USER, stripedCard.getUser().getRole());
+        assertEquals(cards.get(2).getMaskedCardNumber(), stripedCard.getMaskedCardNumber());
+    }
+
+    @Test
+    void getCards_ShouldWalkUserCardsByCursor_InSortOrderWithTiesBrokenById() {
+        User user = new User();
+        user.setUsername("cursor-" + System.nanoTime());
+        user.setPassword("password");
+        user.setRole(Role.USER);
+        userRepository.save(user);
+        long[] balances = {3000L, 1000L, 2000L, 1000L, 3000L, 1000L, 500L};
+        for (long balance : balances) {
+            cardService.createCard(user.getUsername(), balance);
+        }
+        List<Card> expected = cardRepository.findAllByUserId(user.getId(),
+                PageRequest.of(0, balances.length, Sort.by("balance", "id"))).getContent();
+
+        List<CardDTO> walked = new ArrayList<>();
+        String cursor = "";
+        int slices = 0;
+        do {
+            CardSliceDTO slice = cardService.getCards(user.getId(), null, "balance", cursor, 2);
+            assertTrue(slice.getSize() <= 2);
+            walked.addAll(slice.getContent());
+            cursor = slice.getNextCursor();
+            slices++;
+        } while (cursor != null);
+
+        assertEquals(expected.stream().map(Card::getId).toList(), walked.stream().map(CardDTO::getId).toList());
+        assertEquals(4, slices);
+    }
+
+    @Test
+    void getCards_ShouldRejectCursor_IssuedForAnotherSort() {
+        User user = new User();
+        user.setUsername("cursor-" + System.nanoTime());
+        user.setPassword("password");
+        user.setRole(Role.USER);
+        userRepository.save(user);
+        cardService.createCard(user.getUsername(), 1000L);
+        cardService.createCard(user.getUsername(), 2000L);
+
+        String cursor = cardService.getCards(user.getId(), null, "balance", "", 1).getNextCursor();
+
+        assertThrows(InvalidCursorException.class, () -> cardService.getCards(user.getId(), null, "id", cursor, 1));
+        assertThrows(InvalidCursorException.class, () -> cardService.getCards(user.getId(), null, "balance", "%%", 1));
+        assertThrows(InvalidCursorException.class, () -> cardService.getCards(user.getId(), null, "cardNumber", "", 1));
+    }
+}
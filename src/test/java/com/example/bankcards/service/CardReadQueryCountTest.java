@@ -0,0 +1,122 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = StatementRecorder.PROPERTY)
+@ActiveProfiles("test")
+class CardReadQueryCountTest {
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Test
+    void getCards_ShouldRunTheSameStatements_ForAnyPageSize() {
+        User user = userWithCards(12);
+
+        long small = statements(() -> cardService.getCards(user.getId(), null, PageRequest.of(0, 2, Sort.by("id"))));
+        long large = statements(() -> cardService.getCards(user.getId(), null, PageRequest.of(0, 10, Sort.by("id"))));
+        long search = statements(() -> cardService.getCards(user.getId(), "1", PageRequest.of(0, 10, Sort.by("id"))));
+
+        assertEquals(2, small);
+        assertEquals(2, large);
+        assertTrue(search <= 2);
+    }
+
+    @Test
+    void getCards_ShouldRunOneStatement_PerCursorSlice() {
+        User user = userWithCards(12);
+
+        assertEquals(1, statements(() -> cardService.getCards(user.getId(), null, "id", "", 2)));
+        assertEquals(1, statements(() -> cardService.getCards(user.getId(), null, "balance", "", 10)));
+    }
+
+    @Test
+    void adminListing_ShouldRunOneStatement_ForCardsOfManyUsers() {
+        List<User> users = List.of(userWithCards(2), userWithCards(2), userWithCards(2));
+        long before = cardService.getCards(users.getFirst().getId(), null, PageRequest.of(0, 1, Sort.by("id")))
+                .getContent().getFirst().getId() - 1;
+
+        List<CardDTO> page = cardService.getCards(before, 6);
+        long statements = statements(() -> cardService.getCards(before, 6));
+
+        assertEquals(1, statements);
+        assertEquals(3, page.stream().map(card -> card.getUser().getUsername()).distinct().count());
+    }
+
+    @Test
+    void getCard_ShouldRunOneStatement_AndIncludeOwner() {
+        User user = userWithCards(1);
+        Long cardId = cardService.getCards(user.getId(), null, PageRequest.of(0, 1)).getContent().getFirst().getId();
+
+        CardDTO[] card = new CardDTO[1];
+        assertEquals(1, statements(() -> card[0] = cardService.getCard(cardId)));
+        assertEquals(user.getUsername(), card[0].getUser().getUsername());
+    }
+
+    @Test
+    void cardsETag_ShouldRunOneStatement_AndChangeWithEveryCardTheListShows() {
+        User user = userWithCards(3);
+        List<CardDTO> cards = cardService.getCards(user.getId(), null, PageRequest.of(0, 3, Sort.by("id")))
+                .getContent();
+        Long first = cards.getFirst().getId();
+        long before = first - 1;
+
+        String[] tag = new String[1];
+        assertEquals(1, statements(() -> tag[0] = cardService.getCardsETag(user.getId())));
+        assertEquals(1, statements(() -> cardService.getCardsETag(before, 3)));
+        assertEquals(1, statements(() -> cardService.getCardETag(first)));
+        assertEquals(tag[0], cardService.getCardsETag(user.getId()));
+
+        String listing = cardService.getCardsETag(before, 3);
+        String card = cardService.getCardETag(first);
+        cardService.blockCard(first, user.getId());
+        assertNotEquals(tag[0], tag[0] = cardService.getCardsETag(user.getId()));
+        assertNotEquals(listing, cardService.getCardsETag(before, 3));
+        assertNotEquals(card, cardService.getCardETag(first));
+
+        userService.makeAdmin(user.getUsername());
+        assertNotEquals(tag[0], tag[0] = cardService.getCardsETag(user.getId()));
+
+        cardService.deleteCard(cards.getLast().getId());
+        cardService.createCard(user.getUsername(), 0L);
+        assertNotEquals(tag[0], cardService.getCardsETag(user.getId()));
+    }
+
+    private long statements(Supplier<?> read) {
+        StatementRecorder.clear();
+        read.get();
+        return StatementRecorder.statements().size();
+    }
+
+    private User userWithCards(int cards) {
+        User user = new User();
+        user.setUsername("queries-" + System.nanoTime());
+        user.setPassword("password");
+        user.setRole(Role.USER);
+        userRepository.save(user);
+        for (int i = 0; i < cards; i++) {
+            cardService.createCard(user.getUsername(), 1000L * (i % 3));
+        }
+        return user;
+    }
+}
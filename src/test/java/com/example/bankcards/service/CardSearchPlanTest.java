@@ -0,0 +1,125 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.CardDTO;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Runs every search strategy over {@value #USERS} users with {@value #CARDS_PER_USER} cards each and checks both
+ * the matched cards and, through {@code EXPLAIN} of the statement Hibernate actually ran, the index that served it.
+ */
+@SpringBootTest(properties = StatementRecorder.PROPERTY)
+@ActiveProfiles("test")
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CardSearchPlanTest {
+    private static final int USERS = 20;
+    private static final int CARDS_PER_USER = 1000;
+    private static final String[] BINS = {"400000", "510000", "220000"};
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final List<String> cardNumbers = new ArrayList<>();
+    private Long userId;
+
+    @BeforeAll
+    void seed() {
+        String prefix = "search-" + System.nanoTime() + "-";
+        Timestamp validityPeriod = Timestamp.valueOf(LocalDateTime.now().plusYears(2));
+        for (int u = 0; u < USERS; u++) {
+            User user = new User();
+            user.setUsername(prefix + u);
+            user.setPassword("password");
+            user.setRole(Role.USER);
+            userRepository.save(user);
+            List<Object[]> rows = new ArrayList<>(CARDS_PER_USER);
+            for (int i = 0; i < CARDS_PER_USER; i++) {
+                String number = BINS[i % BINS.length] + String.format("%04d%06d", u, i);
+                rows.add(new Object[]{number, "**** **** **** " + number.substring(12), number.substring(12),
+                        user.getId(), validityPeriod});
+                if (u == USERS / 2) {
+                    cardNumbers.add(number);
+                }
+            }
+            if (u == USERS / 2) {
+                userId = user.getId();
+            }
+            jdbcTemplate.batchUpdate("insert into cards (card_number, masked_card_number, last_four, user_id, " +
+                    "validity_period, status, balance) values (?, ?, ?, ?, ?, 'ACTIVE', 0)", rows);
+        }
+        jdbcTemplate.execute("analyze");
+    }
+
+    @Test
+    void lastFour_ShouldUseTheLastFourIndex() {
+        String plan = search("**** 0123", number -> number.endsWith("0123"));
+
+        assertTrue(plan.contains("idx_cards_user_id_last_four"), plan);
+    }
+
+    @Test
+    void prefix_ShouldRangeScanTheCardNumberIndex() {
+        String plan = search("5100 00*", number -> number.startsWith("510000"));
+
+        assertTrue(plan.contains("idx_cards_user_id_card_number"), plan);
+    }
+
+    @Test
+    void exact_ShouldLookUpTheCardNumber() {
+        String number = cardNumbers.get(321);
+
+        String plan = search(number, number::equals);
+
+        assertTrue(plan.matches("(?s).*/\\*[^*]*card_number = .*"), plan);
+    }
+
+    @Test
+    void contains_ShouldMatchDigitsAnywhereInTheNumber() {
+        search("000345", number -> number.contains("000345"));
+    }
+
+    @Test
+    void bareFourDigits_ShouldMatchThemAnywhereInTheNumber() {
+        search("0003", number -> number.contains("0003"));
+    }
+
+    private String search(String term, Predicate<String> matches) {
+        StatementRecorder.clear();
+        List<String> found = cardService.getCards(userId, term, Pageable.unpaged(Sort.by("id"))).getContent()
+                .stream().map(CardDTO::getMaskedCardNumber).toList();
+        List<String> statements = StatementRecorder.statements();
+
+        List<String> expected = cardNumbers.stream().filter(matches)
+                .map(number -> "**** **** **** " + number.substring(12)).toList();
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, found);
+        assertEquals(1, statements.size());
+        CardSearch cardSearch = CardSearch.parse(term);
+        String value = cardSearch.strategy() == CardSearch.Strategy.LAST_FOUR ? cardSearch.digits() : cardSearch.pattern();
+        return jdbcTemplate.queryForObject("explain " + statements.getFirst(), String.class, userId, value);
+    }
+}
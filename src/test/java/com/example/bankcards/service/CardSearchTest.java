@@ -0,0 +1,59 @@
+package com.example.bankcards.service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CardSearchTest {
+
+    @Test
+    void parse_ShouldPickExact_ForAFullCardNumber() {
+        CardSearch search = CardSearch.parse("4000 1234 5678 9010");
+
+        assertEquals(CardSearch.Strategy.EXACT, search.strategy());
+        assertEquals("4000123456789010", search.pattern());
+    }
+
+    @Test
+    void parse_ShouldPickLastFour_ForMaskedFourDigits() {
+        assertEquals(new CardSearch(CardSearch.Strategy.LAST_FOUR, "9010"), CardSearch.parse("**** **** **** 9010"));
+        assertEquals(new CardSearch(CardSearch.Strategy.LAST_FOUR, "9010"), CardSearch.parse("*9010"));
+    }
+
+    @Test
+    void parse_ShouldPickContains_ForBareFourDigits() {
+        assertEquals(new CardSearch(CardSearch.Strategy.CONTAINS, "9010"), CardSearch.parse("9010"));
+        assertEquals(new CardSearch(CardSearch.Strategy.CONTAINS, "9010"), CardSearch.parse("90-10"));
+    }
+
+    @Test
+    void parse_ShouldPickPrefix_ForDigitsFollowedByAsterisk() {
+        CardSearch search = CardSearch.parse("400012*");
+
+        assertEquals(CardSearch.Strategy.PREFIX, search.strategy());
+        assertEquals("400012%", search.pattern());
+        assertEquals(CardSearch.Strategy.PREFIX, CardSearch.parse("4000*").strategy());
+    }
+
+    @Test
+    void parse_ShouldPickContains_ForOtherDigits() {
+        CardSearch search = CardSearch.parse(" 56789 ");
+
+        assertEquals(CardSearch.Strategy.CONTAINS, search.strategy());
+        assertEquals("%56789%", search.pattern());
+    }
+
+    @Test
+    void parse_ShouldPickNone_WhenTermCannotMatchACardNumber() {
+        assertEquals(CardSearch.Strategy.NONE, CardSearch.parse("abc").strategy());
+        assertEquals(CardSearch.Strategy.NONE, CardSearch.parse("12%").strategy());
+        assertEquals(CardSearch.Strategy.NONE, CardSearch.parse("****").strategy());
+        assertEquals(CardSearch.Strategy.NONE, CardSearch.parse("12345678901234567").strategy());
+    }
+
+    @Test
+    void parse_ShouldReturnNull_WhenTermIsBlank() {
+        assertNull(CardSearch.parse(null));
+        assertNull(CardSearch.parse("  "));
+    }
+}
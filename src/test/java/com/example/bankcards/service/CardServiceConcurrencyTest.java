@@ -0,0 +1,115 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.exception.TransferLockTimeoutException;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = "card.transfer.lock-mode=PESSIMISTIC")
+class CardServiceConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int TRANSFERS_PER_THREAD = 50;
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void transfer_ShouldKeepBalancesConsistent_WhenSamePairIsTransferredConcurrently() throws Exception {
+        User user = new User();
+        user.setUsername("concurrent-" + System.nanoTime());
+        user.setPassword("password");
+        user.setRole(Role.USER);
+        userRepository.save(user);
+
+        cardService.createCard(user.getUsername(), 100000L);
+        cardService.createCard(user.getUsername(), 100000L);
+        List<Card> cards = cardRepository.findAllByUserId(user.getId(), Pageable.unpaged()).getContent();
+        Card first = cards.get(0);
+        Card second = cards.get(1);
+        cardService.activateCard(first.getId());
+        cardService.activateCard(second.getId());
+        prepareCards(first, second, user);
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            boolean forward = i % 2 == 0;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < TRANSFERS_PER_THREAD; j++) {
+                    if (forward) {
+                        transferWithRetry(first.getId(), second.getCardNumber(), 300L, user.getId());
+                    } else {
+                        transferWithRetry(second.getId(), first.getCardNumber(), 200L, user.getId());
+                    }
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        int transfersPerDirection = THREADS / 2 * TRANSFERS_PER_THREAD;
+        long firstBalance = balanceOf(first.getId());
+        long secondBalance = balanceOf(second.getId());
+
+        assertEquals(200000L, firstBalance + secondBalance);
+        assertEquals(100 * (1000 - 3 * transfersPerDirection + 2 * transfersPerDirection), firstBalance);
+        assertEquals(100 * (1000 + 3 * transfersPerDirection - 2 * transfersPerDirection), secondBalance);
+    }
+
+    protected void prepareCards(Card first, Card second, User user) {
+    }
+
+    protected long balanceOf(Long cardId) {
+        return cardRepository.findById(cardId).orElseThrow().getBalance();
+    }
+
+    protected void transferWithRetry(Long cardId, String recipientCardNumber, long amount, Long userId) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        while (true) {
+            try {
+                transaction.executeWithoutResult(status -> cardService.transfer(cardId, recipientCardNumber, amount, userId));
+                return;
+            } catch (TransferLockTimeoutException e) {
+                // the transfer was rolled back, so it is safe to run it again
+            }
+        }
+    }
+}
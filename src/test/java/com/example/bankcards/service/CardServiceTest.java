@@ -1,5 +1,8 @@
 package com.example.bankcards.service;
 
+import com.example.bankcards.config.RecentWriters;
+import com.example.bankcards.config.TransferEngine;
+import com.example.bankcards.config.TransferLockMode;
 import com.example.bankcards.dto.CardDTO;
 import com.example.bankcards.entity.Card;
 import com.example.bankcards.entity.User;
@@ -9,22 +12,29 @@ import com.example.bankcards.exception.CardNotActivatedException;
 import com.example.bankcards.exception.CardNotFoundException;
 import com.example.bankcards.exception.CardNotReadyToBlockedException;
 import com.example.bankcards.exception.InsufficientBalanceException;
+import com.example.bankcards.exception.TransferLockTimeoutException;
+import com.example.bankcards.mapper.CardMapper;
 import com.example.bankcards.repository.CardRepository;
 import com.example.bankcards.repository.UserRepository;
 import com.example.bankcards.util.CardNumberGenerator;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.modelmapper.ModelMapper;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
 
-import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -42,11 +52,35 @@ class CardServiceTest {
     @Mock
     private UserRepository userRepository;
 
+    @Mock
+    private UserCache userCache;
+
+    @Mock
+    private BalanceCache balanceCache;
+
     @Mock
     private CardNumberGenerator cardNumberGenerator;
 
     @Mock
-    private ModelMapper modelMapper;
+    private CardMapper cardMapper;
+
+    @Mock
+    private LedgerService ledgerService;
+
+    @Mock
+    private BalanceStripeService balanceStripeService;
+
+    @Mock
+    private TransferPipeline transferPipeline;
+
+    @Mock
+    private TransferLockTimeout transferLockTimeout;
+
+    @Mock
+    private RecentWriters recentWriters;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
 
     @InjectMocks
     private CardService cardService;
@@ -54,101 +88,104 @@ class CardServiceTest {
     @Test
     void createCard_ShouldCreateCard_WhenValidInput() {
         User user = new User();
+        user.setId(1L);
         user.setUsername("testuser");
         user.setRole(Role.USER);
 
-        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(user));
+        when(userCache.find("testuser")).thenReturn(Optional.of(UserCache.CachedUser.of(user)));
+        when(userRepository.getReferenceById(1L)).thenReturn(user);
         when(cardNumberGenerator.generateCardNumber()).thenReturn("1234567890123456");
         when(cardNumberGenerator.maskedCardNumber("1234567890123456")).thenReturn("**** **** **** 3456");
 
-        cardService.createCard("testuser", new BigDecimal("1000.00"));
+        cardService.createCard("testuser", 100000L);
 
         verify(cardRepository).save(any(Card.class));
     }
 
     @Test
     void createCard_ShouldThrowException_WhenUserNotFound() {
-        when(userRepository.findByUsername("nonexistent")).thenReturn(Optional.empty());
+        when(userCache.find("nonexistent")).thenReturn(Optional.empty());
 
         assertThrows(UsernameNotFoundException.class,
-                () -> cardService.createCard("nonexistent", new BigDecimal("1000.00")));
+                () -> cardService.createCard("nonexistent", 100000L));
     }
 
     @Test
-    void getCards_ShouldReturnAllCards() {
-        Card card = new Card();
-        card.setId(1L);
-
+    void getCards_ShouldReturnPageAfterCursor() {
         CardDTO cardDTO = new CardDTO();
-        cardDTO.setId(1L);
+        cardDTO.setId(11L);
 
-        when(cardRepository.findAll()).thenReturn(List.of(card));
-        when(modelMapper.map(card, CardDTO.class)).thenReturn(cardDTO);
+        when(cardRepository.findListingAfter(10L, Limit.of(5))).thenReturn(List.of(cardDTO));
 
-        List<CardDTO> result = cardService.getCards();
+        List<CardDTO> result = cardService.getCards(10L, 5);
 
         assertEquals(1, result.size());
-        assertEquals(1L, result.getFirst().getId());
+        assertEquals(11L, result.getFirst().getId());
+        verify(cardRepository, never()).findAll();
     }
 
     @Test
     void getCards_ShouldReturnPagedCards_WhenUserHasCards() {
-        User user = new User();
-        user.setUsername("testuser");
-
-        Card card = new Card();
-        card.setId(1L);
-        card.setUser(user);
-        card.setBalance(new BigDecimal("1000.00"));
-        card.setStatus(Status.ACTIVE);
-
         CardDTO cardDTO = new CardDTO();
         cardDTO.setId(1L);
 
-        Page<Card> cardPage = new PageImpl<>(List.of(card));
+        Page<CardDTO> cardPage = new PageImpl<>(List.of(cardDTO));
         Pageable pageable = PageRequest.of(0, 10);
 
-        when(cardRepository.findAllByUser(user, pageable)).thenReturn(cardPage);
-        when(modelMapper.map(card, CardDTO.class)).thenReturn(cardDTO);
+        when(cardRepository.findViewsByUserId(1L, pageable)).thenReturn(cardPage);
 
-        Page<CardDTO> result = cardService.getCards(user, null, pageable);
+        Page<CardDTO> result = cardService.getCards(1L, null, pageable);
 
         assertEquals(1, result.getContent().size());
         assertEquals(1L, result.getContent().getFirst().getId());
+        verifyNoInteractions(cardMapper);
     }
 
     @Test
-    void getCards_ShouldReturnFilteredCards_WhenSearchProvided() {
-        User user = new User();
-        Card card = new Card();
-        card.setId(1L);
-
+    void getCards_ShouldMatchLastFour_WhenSearchIsMaskedFourDigits() {
         CardDTO cardDTO = new CardDTO();
         cardDTO.setId(1L);
 
-        Page<Card> cardPage = new PageImpl<>(List.of(card));
+        Page<CardDTO> cardPage = new PageImpl<>(List.of(cardDTO));
         Pageable pageable = PageRequest.of(0, 10);
 
-        when(cardRepository.findAllByUserAndCardNumberContainingIgnoreCase(user, "1234", pageable))
-                .thenReturn(cardPage);
-        when(modelMapper.map(card, CardDTO.class)).thenReturn(cardDTO);
+        when(cardRepository.findViewsByUserIdAndLastFour(1L, "1234", pageable)).thenReturn(cardPage);
 
-        Page<CardDTO> result = cardService.getCards(user, "1234", pageable);
+        Page<CardDTO> result = cardService.getCards(1L, "**** 1234", pageable);
 
         assertEquals(1, result.getContent().size());
-        verify(cardRepository).findAllByUserAndCardNumberContainingIgnoreCase(user, "1234", pageable);
+        verify(cardRepository).findViewsByUserIdAndLastFour(1L, "1234", pageable);
     }
 
     @Test
-    void getCard_ShouldReturnCard_WhenCardExists() {
-        Card card = new Card();
-        card.setId(1L);
+    void getCards_ShouldMatchNumberPattern_WhenSearchIsPrefixOrOtherDigits() {
+        Pageable pageable = PageRequest.of(0, 10);
+        when(cardRepository.findViewsByUserIdAndCardNumberLike(eq(1L), anyString(), eq(pageable)))
+                .thenReturn(Page.empty(pageable));
+
+        cardService.getCards(1L, "4000 12*", pageable);
+        cardService.getCards(1L, "345678", pageable);
+        cardService.getCards(1L, "4000-1234-5678-9010", pageable);
+
+        verify(cardRepository).findViewsByUserIdAndCardNumberLike(1L, "400012%", pageable);
+        verify(cardRepository).findViewsByUserIdAndCardNumberLike(1L, "%345678%", pageable);
+        verify(cardRepository).findViewsByUserIdAndCardNumberLike(1L, "4000123456789010", pageable);
+    }
 
+    @Test
+    void getCards_ShouldNotQuery_WhenSearchCannotMatchACardNumber() {
+        Page<CardDTO> result = cardService.getCards(1L, "abc", PageRequest.of(0, 10));
+
+        assertTrue(result.isEmpty());
+        verifyNoInteractions(cardRepository);
+    }
+
+    @Test
+    void getCard_ShouldReturnCard_WhenCardExists() {
         CardDTO cardDTO = new CardDTO();
         cardDTO.setId(1L);
 
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
-        when(modelMapper.map(card, CardDTO.class)).thenReturn(cardDTO);
+        when(cardRepository.findViewById(1L)).thenReturn(Optional.of(cardDTO));
 
         CardDTO result = cardService.getCard(1L);
 
@@ -157,7 +194,7 @@ class CardServiceTest {
 
     @Test
     void getCard_ShouldThrowException_WhenCardNotFound() {
-        when(cardRepository.findById(1L)).thenReturn(Optional.empty());
+        when(cardRepository.findViewById(1L)).thenReturn(Optional.empty());
 
         assertThrows(CardNotFoundException.class, () -> cardService.getCard(1L));
     }
@@ -190,6 +227,7 @@ class CardServiceTest {
     @Test
     void blockCard_ShouldBlockCard_WhenCardExists() {
         User user = new User();
+        user.setId(1L);
         Card card = new Card();
         card.setId(1L);
         card.setUser(user);
@@ -197,7 +235,7 @@ class CardServiceTest {
 
         when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
 
-        cardService.blockCard(1L, user);
+        cardService.blockCard(1L, user.getId());
 
         assertEquals(Status.PENDING_TO_BLOCKING, card.getStatus());
         verify(cardRepository).save(card);
@@ -206,7 +244,9 @@ class CardServiceTest {
     @Test
     void blockCard_ShouldThrowException_WhenCardNotBelongsToUser() {
         User user = new User();
+        user.setId(1L);
         User anotherUser = new User();
+        anotherUser.setId(2L);
 
         Card card = new Card();
         card.setId(1L);
@@ -214,7 +254,7 @@ class CardServiceTest {
 
         when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
 
-        assertThrows(CardNotFoundException.class, () -> cardService.blockCard(1L, user));
+        assertThrows(CardNotFoundException.class, () -> cardService.blockCard(1L, user.getId()));
     }
 
     @Test
@@ -246,61 +286,197 @@ class CardServiceTest {
     @Test
     void transfer_ShouldTransferMoney_WhenValidTransfer() {
         User user = new User();
+        user.setId(1L);
         user.setUsername("testuser");
 
         Card senderCard = new Card();
         senderCard.setId(1L);
         senderCard.setUser(user);
-        senderCard.setBalance(new BigDecimal("1000.00"));
+        senderCard.setBalance(100000L);
         senderCard.setStatus(Status.ACTIVE);
 
         Card recipientCard = new Card();
         recipientCard.setId(2L);
         recipientCard.setUser(user);
-        recipientCard.setBalance(new BigDecimal("500.00"));
+        recipientCard.setBalance(50000L);
         recipientCard.setStatus(Status.ACTIVE);
         recipientCard.setCardNumber("1234567890123456");
 
         when(cardRepository.findById(1L)).thenReturn(Optional.of(senderCard));
         when(cardRepository.findByCardNumber("1234567890123456")).thenReturn(Optional.of(recipientCard));
 
-        cardService.transfer(1L, "1234567890123456", 100.0, user);
+        cardService.transfer(1L, "1234567890123456", 10000L, user.getId());
 
-        assertEquals(new BigDecimal("900.00"), senderCard.getBalance());
-        assertEquals(new BigDecimal("600.00"), recipientCard.getBalance());
+        assertEquals(90000L, senderCard.getBalance());
+        assertEquals(60000L, recipientCard.getBalance());
         verify(cardRepository, times(2)).save(any(Card.class));
+        verify(balanceCache).invalidate(1L);
+        verify(balanceCache).invalidateCardNumber("1234567890123456");
+        verify(recentWriters).record(1L);
+    }
+
+    @Test
+    void transfer_ShouldHandTransferToPipeline_WhenPipelineIsEnabled() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("testuser");
+
+        Card senderCard = new Card();
+        senderCard.setId(1L);
+        senderCard.setUser(user);
+        senderCard.setBalance(100000L);
+        senderCard.setStatus(Status.ACTIVE);
+
+        Card recipientCard = new Card();
+        recipientCard.setId(2L);
+        recipientCard.setUser(user);
+        recipientCard.setBalance(50000L);
+        recipientCard.setStatus(Status.ACTIVE);
+        recipientCard.setCardNumber("1234567890123456");
+
+        when(transferPipeline.isEnabled()).thenReturn(true);
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(senderCard));
+        when(cardRepository.findByCardNumber("1234567890123456")).thenReturn(Optional.of(recipientCard));
+
+        cardService.transfer(1L, "1234567890123456", 10000L, user.getId());
+
+        ArgumentCaptor<Runnable> transfer = ArgumentCaptor.forClass(Runnable.class);
+        verify(transferPipeline).execute(eq(1L), eq("1234567890123456"), transfer.capture());
+        verifyNoInteractions(cardRepository, transactionManager, recentWriters);
+
+        transfer.getValue().run();
+
+        assertEquals(90000L, senderCard.getBalance());
+        assertEquals(60000L, recipientCard.getBalance());
+        verify(recentWriters).record(1L);
+    }
+
+    @Test
+    void transfer_ShouldFoldSenderSlotsAndCreditRecipientSlot_WhenCardsAreStriped() {
+        User user = new User();
+        user.setId(1L);
+
+        Card senderCard = new Card();
+        senderCard.setId(1L);
+        senderCard.setUser(user);
+        senderCard.setBalance(5000L);
+        senderCard.setBalanceStripes(4);
+        senderCard.setStatus(Status.ACTIVE);
+        ReflectionTestUtils.setField(senderCard, "stripedBalance", 15000L);
+
+        Card recipientCard = new Card();
+        recipientCard.setId(2L);
+        recipientCard.setUser(user);
+        recipientCard.setCardNumber("1234567890123456");
+        recipientCard.setBalance(50000L);
+        recipientCard.setBalanceStripes(4);
+        recipientCard.setStatus(Status.ACTIVE);
+
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(senderCard));
+        when(cardRepository.findByCardNumber("1234567890123456")).thenReturn(Optional.of(recipientCard));
+        when(balanceStripeService.fold(senderCard)).thenAnswer(invocation -> {
+            senderCard.setBalance(senderCard.getBalance() + 15000L);
+            return true;
+        });
+        when(balanceStripeService.credit("1234567890123456", user.getId(), 10000L)).thenReturn(1);
+
+        cardService.transfer(1L, "1234567890123456", 10000L, user.getId());
+
+        assertEquals(10000L, senderCard.getBalance());
+        assertEquals(50000L, recipientCard.getBalance());
+    }
+
+    @Test
+    void transfer_ShouldLockSenderOnly_WhenRecipientIsStripedWithPessimisticLocking() {
+        ReflectionTestUtils.setField(cardService, "lockMode", TransferLockMode.PESSIMISTIC);
+        User user = new User();
+        user.setId(1L);
+
+        Card senderCard = new Card();
+        senderCard.setId(5L);
+        senderCard.setUser(user);
+        senderCard.setBalance(100000L);
+        senderCard.setStatus(Status.ACTIVE);
+
+        Card recipientCard = new Card();
+        recipientCard.setId(2L);
+        recipientCard.setUser(user);
+        recipientCard.setCardNumber("1234567890123456");
+        recipientCard.setBalance(50000L);
+        recipientCard.setBalanceStripes(4);
+        recipientCard.setStatus(Status.ACTIVE);
+
+        when(cardRepository.findRefByCardNumber("1234567890123456")).thenReturn(Optional.of(new CardRepository.CardRef(2L, 4)));
+        when(cardRepository.findByIdForUpdate(5L)).thenReturn(Optional.of(senderCard));
+        when(cardRepository.findById(2L)).thenReturn(Optional.of(recipientCard));
+        when(balanceStripeService.credit("1234567890123456", user.getId(), 10000L)).thenReturn(1);
+
+        cardService.transfer(5L, "1234567890123456", 10000L, user.getId());
+
+        verify(cardRepository, never()).findByIdForUpdate(2L);
+        assertEquals(90000L, senderCard.getBalance());
+        assertEquals(50000L, recipientCard.getBalance());
+    }
+
+    @Test
+    void transfer_ShouldReportConflict_WhenStripedRecipientChangedSinceItWasRead() {
+        User user = new User();
+        user.setId(1L);
+
+        Card senderCard = new Card();
+        senderCard.setId(1L);
+        senderCard.setUser(user);
+        senderCard.setBalance(100000L);
+        senderCard.setStatus(Status.ACTIVE);
+
+        Card recipientCard = new Card();
+        recipientCard.setId(2L);
+        recipientCard.setUser(user);
+        recipientCard.setCardNumber("1234567890123456");
+        recipientCard.setBalanceStripes(4);
+        recipientCard.setStatus(Status.ACTIVE);
+
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(senderCard));
+        when(cardRepository.findByCardNumber("1234567890123456")).thenReturn(Optional.of(recipientCard));
+        when(balanceStripeService.credit("1234567890123456", user.getId(), 10000L)).thenReturn(0);
+
+        assertThrows(ObjectOptimisticLockingFailureException.class,
+                () -> cardService.transfer(1L, "1234567890123456", 10000L, user.getId()));
+        verify(cardRepository, never()).save(any(Card.class));
     }
 
     @Test
     void transfer_ShouldThrowException_WhenInsufficientBalance() {
         User user = new User();
+        user.setId(1L);
         user.setUsername("testuser");
 
         Card senderCard = new Card();
         senderCard.setId(1L);
         senderCard.setUser(user);
-        senderCard.setBalance(new BigDecimal("50.00"));
+        senderCard.setBalance(5000L);
         senderCard.setStatus(Status.ACTIVE);
 
         Card recipientCard = new Card();
         recipientCard.setId(2L);
         recipientCard.setUser(user);
-        recipientCard.setBalance(new BigDecimal("500.00"));
+        recipientCard.setBalance(50000L);
         recipientCard.setStatus(Status.ACTIVE);
 
         when(cardRepository.findById(1L)).thenReturn(Optional.of(senderCard));
         when(cardRepository.findByCardNumber("1234567890123456")).thenReturn(Optional.of(recipientCard));
 
         assertThrows(InsufficientBalanceException.class,
-                () -> cardService.transfer(1L, "1234567890123456", 100.0, user));
+                () -> cardService.transfer(1L, "1234567890123456", 10000L, user.getId()));
     }
 
     @Test
     void transfer_ShouldThrowException_WhenNegativeAmount() {
         User user = new User();
+        user.setId(1L);
         Card senderCard = new Card();
         senderCard.setUser(user);
-        senderCard.setBalance(new BigDecimal("1000.00"));
+        senderCard.setBalance(100000L);
 
         Card recipientCard = new Card();
         recipientCard.setUser(user);
@@ -309,15 +485,16 @@ class CardServiceTest {
         when(cardRepository.findByCardNumber("1234567890123456")).thenReturn(Optional.of(recipientCard));
 
         assertThrows(InsufficientBalanceException.class,
-                () -> cardService.transfer(1L, "1234567890123456", -100.0, user));
+                () -> cardService.transfer(1L, "1234567890123456", -10000L, user.getId()));
     }
 
     @Test
     void transfer_ShouldThrowException_WhenCardsNotActive() {
         User user = new User();
+        user.setId(1L);
         Card senderCard = new Card();
         senderCard.setUser(user);
-        senderCard.setBalance(new BigDecimal("1000.00"));
+        senderCard.setBalance(100000L);
         senderCard.setStatus(Status.BLOCKED);
 
         Card recipientCard = new Card();
@@ -328,55 +505,241 @@ class CardServiceTest {
         when(cardRepository.findByCardNumber("1234567890123456")).thenReturn(Optional.of(recipientCard));
 
         assertThrows(CardNotActivatedException.class,
-                () -> cardService.transfer(1L, "1234567890123456", 100.0, user));
+                () -> cardService.transfer(1L, "1234567890123456", 10000L, user.getId()));
     }
 
     @Test
-    void getBalance_ShouldReturnBalance_WhenCardBelongsToUser() {
+    void transfer_ShouldLockCardsInIdOrder_WhenPessimisticLocking() {
+        ReflectionTestUtils.setField(cardService, "lockMode", TransferLockMode.PESSIMISTIC);
         User user = new User();
-        Card card = new Card();
-        card.setId(1L);
-        card.setUser(user);
-        card.setBalance(new BigDecimal("1000.00"));
+        user.setId(1L);
 
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
+        Card senderCard = new Card();
+        senderCard.setId(5L);
+        senderCard.setUser(user);
+        senderCard.setBalance(100000L);
+        senderCard.setStatus(Status.ACTIVE);
+
+        Card recipientCard = new Card();
+        recipientCard.setId(2L);
+        recipientCard.setUser(user);
+        recipientCard.setBalance(50000L);
+        recipientCard.setStatus(Status.ACTIVE);
+
+        when(cardRepository.findRefByCardNumber("1234567890123456")).thenReturn(Optional.of(new CardRepository.CardRef(2L, 0)));
+        when(cardRepository.findByIdForUpdate(2L)).thenReturn(Optional.of(recipientCard));
+        when(cardRepository.findByIdForUpdate(5L)).thenReturn(Optional.of(senderCard));
 
-        BigDecimal balance = cardService.getBalance(1L, user);
+        cardService.transfer(5L, "1234567890123456", 10000L, user.getId());
 
-        assertEquals(new BigDecimal("1000.00"), balance);
+        InOrder inOrder = inOrder(cardRepository);
+        inOrder.verify(cardRepository).findByIdForUpdate(2L);
+        inOrder.verify(cardRepository).findByIdForUpdate(5L);
+        assertEquals(90000L, senderCard.getBalance());
+        assertEquals(60000L, recipientCard.getBalance());
+        verify(cardRepository, never()).findById(anyLong());
     }
 
     @Test
-    void getBalance_ShouldThrowException_WhenCardNotBelongsToUser() {
+    void transfer_ShouldThrowRetryableException_WhenLockWaitTimesOut() {
+        ReflectionTestUtils.setField(cardService, "lockMode", TransferLockMode.PESSIMISTIC);
+
+        when(cardRepository.findRefByCardNumber("1234567890123456")).thenReturn(Optional.of(new CardRepository.CardRef(2L, 0)));
+        when(cardRepository.findByIdForUpdate(1L)).thenThrow(new CannotAcquireLockException("lock timeout"));
+
+        assertThrows(TransferLockTimeoutException.class,
+                () -> cardService.transfer(1L, "1234567890123456", 10000L, 1L));
+        verify(cardRepository, never()).save(any(Card.class));
+    }
+
+    @Test
+    void transfer_ShouldThrowException_WhenRecipientNotFoundWithPessimisticLocking() {
+        ReflectionTestUtils.setField(cardService, "lockMode", TransferLockMode.PESSIMISTIC);
+
+        when(cardRepository.findRefByCardNumber("1234567890123456")).thenReturn(Optional.empty());
+
+        assertThrows(CardNotFoundException.class,
+                () -> cardService.transfer(1L, "1234567890123456", 10000L, 1L));
+        verify(cardRepository, never()).findByIdForUpdate(anyLong());
+    }
+
+    @Test
+    void transfer_ShouldUseGuardedUpdatesOnly_WhenConditionalUpdateEngine() {
+        ReflectionTestUtils.setField(cardService, "transferEngine", TransferEngine.CONDITIONAL_UPDATE);
         User user = new User();
-        user.setUsername("testuser");
+        user.setId(1L);
 
-        User anotherUser = new User();
-        anotherUser.setUsername("anotheruser");
+        when(cardRepository.debit(1L, user.getId(), Status.ACTIVE, 10000L)).thenReturn(1);
+        when(cardRepository.credit("1234567890123456", user.getId(), Status.ACTIVE, 10000L)).thenReturn(1);
 
-        Card card = new Card();
-        card.setId(1L);
-        card.setUser(anotherUser);
-        card.setBalance(new BigDecimal("1000.00"));
+        cardService.transfer(1L, "1234567890123456", 10000L, user.getId());
 
-        when(cardRepository.findById(1L)).thenReturn(Optional.of(card));
+        verify(cardRepository, never()).findById(anyLong());
+        verify(cardRepository, never()).findByCardNumber(anyString());
+        verify(cardRepository, never()).save(any(Card.class));
+    }
+
+    @Test
+    void transfer_ShouldReportInsufficientBalance_WhenConditionalDebitMatchesNothing() {
+        ReflectionTestUtils.setField(cardService, "transferEngine", TransferEngine.CONDITIONAL_UPDATE);
+        User user = new User();
+        user.setId(1L);
+
+        Card senderCard = new Card();
+        senderCard.setUser(user);
+        senderCard.setBalance(5000L);
+        senderCard.setStatus(Status.ACTIVE);
+
+        when(cardRepository.debit(1L, user.getId(), Status.ACTIVE, 10000L)).thenReturn(0);
+        when(cardRepository.findById(1L)).thenReturn(Optional.of(senderCard));
+
+        assertThrows(InsufficientBalanceException.class,
+                () -> cardService.transfer(1L, "1234567890123456", 10000L, user.getId()));
+        verify(cardRepository, never()).credit(anyString(), anyLong(), any(Status.class), anyLong());
+    }
+
+    @Test
+    void transfer_ShouldReportInactiveRecipient_WhenConditionalCreditMatchesNothing() {
+        ReflectionTestUtils.setField(cardService, "transferEngine", TransferEngine.CONDITIONAL_UPDATE);
+        User user = new User();
+        user.setId(1L);
+
+        Card recipientCard = new Card();
+        recipientCard.setUser(user);
+        recipientCard.setStatus(Status.BLOCKED);
+
+        when(cardRepository.debit(1L, user.getId(), Status.ACTIVE, 10000L)).thenReturn(1);
+        when(cardRepository.credit("1234567890123456", user.getId(), Status.ACTIVE, 10000L)).thenReturn(0);
+        when(cardRepository.findByCardNumber("1234567890123456")).thenReturn(Optional.of(recipientCard));
+
+        assertThrows(CardNotActivatedException.class,
+                () -> cardService.transfer(1L, "1234567890123456", 10000L, user.getId()));
+    }
+
+    @Test
+    void transfer_ShouldCreditSlot_WhenConditionalCreditTargetsStripedCard() {
+        ReflectionTestUtils.setField(cardService, "transferEngine", TransferEngine.CONDITIONAL_UPDATE);
+        User user = new User();
+        user.setId(1L);
+        long amount = 10000L;
+
+        when(cardRepository.debit(1L, user.getId(), Status.ACTIVE, amount)).thenReturn(1);
+        when(cardRepository.credit("1234567890123456", user.getId(), Status.ACTIVE, amount)).thenReturn(0);
+        when(balanceStripeService.credit("1234567890123456", user.getId(), amount)).thenReturn(1);
+
+        cardService.transfer(1L, "1234567890123456", 10000L, user.getId());
+
+        verify(cardRepository, never()).findByCardNumber(anyString());
+    }
+
+    @Test
+    void transfer_ShouldFoldSlotsAndRetryDebit_WhenConditionalDebitMatchesNothing() {
+        ReflectionTestUtils.setField(cardService, "transferEngine", TransferEngine.CONDITIONAL_UPDATE);
+        User user = new User();
+        user.setId(1L);
+        long amount = 10000L;
+        Card senderCard = new Card();
+        senderCard.setBalanceStripes(4);
+
+        when(cardRepository.debit(1L, user.getId(), Status.ACTIVE, amount)).thenReturn(0, 1);
+        when(cardRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(senderCard));
+        when(balanceStripeService.fold(senderCard)).thenReturn(true);
+        when(cardRepository.credit("1234567890123456", user.getId(), Status.ACTIVE, amount)).thenReturn(1);
+
+        cardService.transfer(1L, "1234567890123456", 10000L, user.getId());
+
+        verify(cardRepository, times(2)).debit(1L, user.getId(), Status.ACTIVE, amount);
+        verify(cardRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void transfer_ShouldRejectNonPositiveAmount_WhenConditionalUpdateEngine() {
+        ReflectionTestUtils.setField(cardService, "transferEngine", TransferEngine.CONDITIONAL_UPDATE);
+
+        assertThrows(InsufficientBalanceException.class,
+                () -> cardService.transfer(1L, "1234567890123456", 0L, 1L));
+        verifyNoInteractions(cardRepository);
+    }
+
+    @Test
+    void transfer_ShouldAppendToLedgerAndLockSenderOnly_WhenLedgerEngine() {
+        ReflectionTestUtils.setField(cardService, "transferEngine", TransferEngine.LEDGER);
+        User user = new User();
+        user.setId(1L);
+
+        Card senderCard = new Card();
+        senderCard.setId(1L);
+        senderCard.setUser(user);
+        senderCard.setBalance(5000L);
+        senderCard.setStatus(Status.ACTIVE);
+
+        Card recipientCard = new Card();
+        recipientCard.setId(2L);
+        recipientCard.setUser(user);
+        recipientCard.setBalance(0L);
+        recipientCard.setStatus(Status.ACTIVE);
+
+        when(cardRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(senderCard));
+        when(cardRepository.findByCardNumber("1234567890123456")).thenReturn(Optional.of(recipientCard));
+        when(ledgerService.getUnappliedAmount(1L)).thenReturn(7000L);
+
+        cardService.transfer(1L, "1234567890123456", 10000L, user.getId());
+
+        verify(ledgerService).append(1L, 2L, 10000L);
+        assertEquals(5000L, senderCard.getBalance());
+        assertEquals(0L, recipientCard.getBalance());
+        verify(cardRepository, never()).save(any(Card.class));
+    }
+
+    @Test
+    void transfer_ShouldCountUnappliedDebits_WhenLedgerEngine() {
+        ReflectionTestUtils.setField(cardService, "transferEngine", TransferEngine.LEDGER);
+        User user = new User();
+        user.setId(1L);
+
+        Card senderCard = new Card();
+        senderCard.setId(1L);
+        senderCard.setUser(user);
+        senderCard.setBalance(15000L);
+        senderCard.setStatus(Status.ACTIVE);
+
+        Card recipientCard = new Card();
+        recipientCard.setId(2L);
+        recipientCard.setUser(user);
+        recipientCard.setStatus(Status.ACTIVE);
 
-        assertThrows(CardNotFoundException.class, () -> cardService.getBalance(1L, user));
+        when(cardRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(senderCard));
+        when(cardRepository.findByCardNumber("1234567890123456")).thenReturn(Optional.of(recipientCard));
+        when(ledgerService.getUnappliedAmount(1L)).thenReturn(-10000L);
+
+        assertThrows(InsufficientBalanceException.class,
+                () -> cardService.transfer(1L, "1234567890123456", 10000L, user.getId()));
+        verify(ledgerService, never()).append(anyLong(), anyLong(), anyLong());
     }
 
     @Test
-    void updateExpirationTime_ShouldExpireCards_WhenCardsExpired() {
-        Card expiredCard = new Card();
-        expiredCard.setId(1L);
-        expiredCard.setStatus(Status.ACTIVE);
-        expiredCard.setValidityPeriod(LocalDateTime.now().minusDays(1));
+    void getBalance_ShouldReturnCachedBalance_WhenCardBelongsToUser() {
+        when(balanceCache.find(1L)).thenReturn(Optional.of(
+                new BalanceCache.CachedBalance(1L, "1234567890123456", 100000L, System.nanoTime())));
 
-        when(cardRepository.findByValidityPeriodBeforeAndStatusNot(any(LocalDateTime.class), eq(Status.EXPIRED)))
-                .thenReturn(List.of(expiredCard));
+        long balance = cardService.getBalance(1L, 1L);
 
-        cardService.updateExpirationTime();
+        assertEquals(100000L, balance);
+        verifyNoInteractions(cardRepository);
+    }
+
+    @Test
+    void getBalance_ShouldThrowException_WhenCardNotBelongsToUser() {
+        when(balanceCache.find(1L)).thenReturn(Optional.of(
+                new BalanceCache.CachedBalance(2L, "1234567890123456", 100000L, System.nanoTime())));
+
+        assertThrows(CardNotFoundException.class, () -> cardService.getBalance(1L, 1L));
+    }
+
+    @Test
+    void getBalance_ShouldThrowException_WhenCardNotFound() {
+        when(balanceCache.find(1L)).thenReturn(Optional.empty());
 
-        assertEquals(Status.EXPIRED, expiredCard.getStatus());
-        verify(cardRepository).saveAll(List.of(expiredCard));
+        assertThrows(CardNotFoundException.class, () -> cardService.getBalance(1L, 1L));
     }
 }
\ No newline at end of file
@@ -0,0 +1,7 @@
+package com.example.bankcards.service;
+
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = "card.transfer.engine=CONDITIONAL_UPDATE")
+class ConditionalUpdateTransferConcurrencyTest extends CardServiceConcurrencyTest {
+}
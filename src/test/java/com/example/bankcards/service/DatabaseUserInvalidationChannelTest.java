@@ -0,0 +1,78 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.UserInvalidation;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.repository.UserInvalidationRepository;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "card.user-cache.channel=database")
+@ActiveProfiles("test")
+class DatabaseUserInvalidationChannelTest {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserCache userCache;
+
+    @Autowired
+    private DatabaseUserInvalidationChannel channel;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private UserInvalidationRepository userInvalidationRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    void makeAdmin_ShouldRecordInvalidation_ForOtherInstances() {
+        String username = createUser();
+
+        userService.makeAdmin(username);
+
+        assertTrue(userInvalidationRepository.findByCreatedAtAfterOrderById(LocalDateTime.now().minusMinutes(1))
+                .stream().anyMatch(invalidation -> invalidation.getUsername().equals(username)));
+    }
+
+    /**
+     * The role is changed and the invalidation recorded behind this instance's back, as another instance would.
+     */
+    @Test
+    void poll_ShouldEvictUser_InvalidatedByAnotherInstance() {
+        String username = createUser();
+        assertEquals(Role.USER, userCache.find(username).orElseThrow().role());
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            User user = userRepository.findByUsername(username).orElseThrow();
+            user.setRole(Role.ADMIN);
+            userInvalidationRepository.save(new UserInvalidation(username, LocalDateTime.now()));
+        });
+        assertEquals(Role.USER, userCache.find(username).orElseThrow().role());
+
+        channel.poll();
+
+        assertEquals(Role.ADMIN, userCache.find(username).orElseThrow().role());
+    }
+
+    private String createUser() {
+        User user = new User();
+        user.setUsername("invalidated-" + System.nanoTime());
+        user.setPassword("hash");
+        user.setRole(Role.USER);
+        return userRepository.save(user).getUsername();
+    }
+}
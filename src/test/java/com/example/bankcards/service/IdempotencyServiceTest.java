@@ -0,0 +1,115 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.IdempotencyKey;
+import com.example.bankcards.exception.IdempotencyKeyReuseException;
+import com.example.bankcards.repository.IdempotencyKeyRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyKeyRepository idempotencyKeyRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private IdempotencyService idempotencyService;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        idempotencyService = new IdempotencyService(idempotencyKeyRepository, meterRegistry, Duration.ofHours(1), 100);
+    }
+
+    @Test
+    void execute_ShouldRunOperationOnce_WhenSameKeyIsRepeated() {
+        AtomicInteger executions = new AtomicInteger();
+        when(idempotencyKeyRepository.insertIfAbsent(eq("transfer:user"), eq("key-1"), anyString(),
+                any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(1);
+
+        HttpStatus first = idempotencyService.execute("transfer:user", "key-1", "1:2:10.0", () -> {
+            executions.incrementAndGet();
+            return HttpStatus.OK;
+        });
+        HttpStatus second = idempotencyService.execute("transfer:user", "key-1", "1:2:10.0", () -> {
+            executions.incrementAndGet();
+            return HttpStatus.OK;
+        });
+
+        assertEquals(HttpStatus.OK, first);
+        assertEquals(HttpStatus.OK, second);
+        assertEquals(1, executions.get());
+        verify(idempotencyKeyRepository).complete("transfer:user", "key-1", 200);
+        verify(idempotencyKeyRepository, times(1)).insertIfAbsent(anyString(), anyString(), anyString(),
+                any(LocalDateTime.class), any(LocalDateTime.class));
+        assertEquals(1.0, meterRegistry.get("idempotency.requests").tag("result", "cache_hit").counter().count());
+        assertEquals(1.0, meterRegistry.get("idempotency.requests").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void execute_ShouldReplayStoredResult_WhenKeyIsAlreadyInDatabase() {
+        IdempotencyKey stored = new IdempotencyKey();
+        stored.setRequestHash("3b7a3f3b0e2f9bcf1c7a4ea8eb7f8b0a39a6f1b7bd0d8c9b6d1ab0b5e0d0b9d6");
+        stored.setResponseStatus(201);
+        stored.setExpiresAt(LocalDateTime.now().plusHours(1));
+
+        when(idempotencyKeyRepository.insertIfAbsent(anyString(), anyString(), anyString(),
+                any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(0);
+        when(idempotencyKeyRepository.findByScopeAndKey("create-card:admin", "key-2")).thenReturn(Optional.of(stored));
+
+        assertThrows(IdempotencyKeyReuseException.class,
+                () -> idempotencyService.execute("create-card:admin", "key-2", "other request", () -> {
+                    fail("operation must not run for a known key");
+                    return HttpStatus.CREATED;
+                }));
+        assertEquals(1.0, meterRegistry.get("idempotency.requests").tag("result", "database_hit").counter().count());
+    }
+
+    @Test
+    void execute_ShouldReplaceExpiredKey_WhenKeyIsExpiredInDatabase() {
+        IdempotencyKey expired = new IdempotencyKey();
+        expired.setExpiresAt(LocalDateTime.now().minusMinutes(1));
+
+        when(idempotencyKeyRepository.insertIfAbsent(anyString(), anyString(), anyString(),
+                any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(0, 1);
+        when(idempotencyKeyRepository.findByScopeAndKey("transfer:user", "key-3")).thenReturn(Optional.of(expired));
+
+        HttpStatus status = idempotencyService.execute("transfer:user", "key-3", "1:2:10.0", () -> HttpStatus.OK);
+
+        assertEquals(HttpStatus.OK, status);
+        verify(idempotencyKeyRepository).delete(expired);
+        verify(idempotencyKeyRepository).complete("transfer:user", "key-3", 200);
+    }
+
+    @Test
+    void execute_ShouldNotRememberKey_WhenOperationFails() {
+        when(idempotencyKeyRepository.insertIfAbsent(anyString(), anyString(), anyString(),
+                any(LocalDateTime.class), any(LocalDateTime.class))).thenReturn(1);
+
+        assertThrows(IllegalStateException.class, () -> idempotencyService.execute("transfer:user", "key-4", "r", () -> {
+            throw new IllegalStateException("transfer failed");
+        }));
+        verify(idempotencyKeyRepository, never()).complete(anyString(), anyString(), anyInt());
+    }
+
+    @Test
+    void execute_ShouldJustRunOperation_WhenNoKeyGiven() {
+        assertEquals(HttpStatus.OK, idempotencyService.execute("transfer:user", null, "r", () -> HttpStatus.OK));
+        verifyNoInteractions(idempotencyKeyRepository);
+    }
+}
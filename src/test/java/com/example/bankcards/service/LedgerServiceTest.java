@@ -0,0 +1,88 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.LedgerEntry;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.LedgerEntryRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class LedgerServiceTest {
+
+    @Mock
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private BalanceStripeService balanceStripeService;
+
+    @InjectMocks
+    private LedgerService ledgerService;
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void append_ShouldWriteBalancedDebitAndCreditEntries() {
+        ledgerService.append(1L, 2L, 2500L);
+
+        ArgumentCaptor<List<LedgerEntry>> captor = ArgumentCaptor.forClass(List.class);
+        verify(ledgerEntryRepository).saveAll(captor.capture());
+        List<LedgerEntry> entries = captor.getValue();
+
+        assertEquals(2, entries.size());
+        assertEquals(1L, entries.get(0).getCardId());
+        assertEquals(-2500L, entries.get(0).getAmount());
+        assertEquals(2L, entries.get(1).getCardId());
+        assertEquals(2500L, entries.get(1).getAmount());
+        assertEquals(entries.get(0).getTransferId(), entries.get(1).getTransferId());
+        assertFalse(entries.get(0).isApplied());
+    }
+
+    @Test
+    void materialize_ShouldFoldUnappliedEntriesIntoBalances() {
+        Card first = new Card();
+        first.setId(1L);
+        first.setBalance(10000L);
+        Card second = new Card();
+        second.setId(2L);
+        second.setBalance(0L);
+
+        UUID transferId = UUID.randomUUID();
+        LedgerEntry debit = new LedgerEntry(transferId, 1L, -3000L);
+        LedgerEntry credit = new LedgerEntry(transferId, 2L, 3000L);
+        LedgerEntry secondCredit = new LedgerEntry(UUID.randomUUID(), 2L, 500L);
+
+        when(cardRepository.findWithUnappliedLedgerForUpdate(any(Pageable.class))).thenReturn(List.of(first, second));
+        when(ledgerEntryRepository.findByCardIdInAndAppliedFalse(anyCollection()))
+                .thenReturn(List.of(debit, credit, secondCredit));
+
+        int folded = ledgerService.materialize(10);
+
+        assertEquals(2, folded);
+        assertEquals(7000L, first.getBalance());
+        assertEquals(3500L, second.getBalance());
+        assertTrue(debit.isApplied() && credit.isApplied() && secondCredit.isApplied());
+    }
+
+    @Test
+    void materialize_ShouldDoNothing_WhenNoCardHasUnappliedEntries() {
+        when(cardRepository.findWithUnappliedLedgerForUpdate(any(Pageable.class))).thenReturn(List.of());
+
+        assertEquals(0, ledgerService.materialize(10));
+        verifyNoInteractions(ledgerEntryRepository);
+    }
+}
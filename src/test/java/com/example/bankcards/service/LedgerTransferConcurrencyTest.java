@@ -0,0 +1,34 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.repository.LedgerEntryRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@TestPropertySource(properties = "card.transfer.engine=LEDGER")
+class LedgerTransferConcurrencyTest extends CardServiceConcurrencyTest {
+
+    @Autowired
+    private LedgerService ledgerService;
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Override
+    protected long balanceOf(Long cardId) {
+        long ledgerBalance = ledgerService.getBalance(cardId);
+
+        while (ledgerService.materialize(100) > 0) {
+            // fold everything that is still pending
+        }
+        long materialized = super.balanceOf(cardId);
+
+        assertEquals(ledgerBalance, materialized);
+        assertTrue(ledgerEntryRepository.findByCardIdInAndAppliedFalse(List.of(cardId)).isEmpty());
+        return materialized;
+    }
+}
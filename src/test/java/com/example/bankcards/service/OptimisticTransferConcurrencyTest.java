@@ -0,0 +1,50 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.CardNotFoundException;
+import com.example.bankcards.exception.CardUpdateConflictException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Transfers without row locks: concurrent writers are caught by the card version, and the losers are re-run
+ * by the conflict retry interceptor.
+ */
+@TestPropertySource(properties = {
+        "card.transfer.lock-mode=NONE",
+        "card.retry.max-attempts=10"
+})
+class OptimisticTransferConcurrencyTest extends CardServiceConcurrencyTest {
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Test
+    void activateCard_ShouldGoThroughRetryInterceptor() {
+        assertThrows(CardNotFoundException.class, () -> cardService.activateCard(-1L));
+
+        assertTrue(meterRegistry.get("card.mutation.calls").tag("method", "CardService.activateCard").counter()
+                .count() >= 1);
+    }
+
+    /**
+     * Calls the service outside of any transaction, so that the retry interceptor may re-run it.
+     */
+    @Override
+    protected void transferWithRetry(Long cardId, String recipientCardNumber, long amount, Long userId) {
+        while (true) {
+            try {
+                cardService.transfer(cardId, recipientCardNumber, amount, userId);
+                return;
+            } catch (CardUpdateConflictException e) {
+                // retries were exhausted, the transfer was rolled back and can be run again
+            }
+        }
+    }
+}
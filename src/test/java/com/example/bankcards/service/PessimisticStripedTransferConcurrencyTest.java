@@ -0,0 +1,11 @@
+package com.example.bankcards.service;
+
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * The striped scenario on the default engine: senders are locked, striped recipients are credited on a slot
+ * without a lock on their row.
+ */
+@TestPropertySource(properties = "card.transfer.engine=ENTITY")
+class PessimisticStripedTransferConcurrencyTest extends StripedTransferConcurrencyTest {
+}
@@ -0,0 +1,93 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.repository.CardRepository;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Two pairs of cards, each pair with one card on either shard, transferred back and forth: every writer takes
+ * cards whose other side belongs to the other writer, in the opposite direction.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = {
+        "card.transfer.lock-mode=PESSIMISTIC",
+        "card.transfer.pipeline.enabled=true",
+        "card.transfer.pipeline.shards=2",
+        "card.transfer.pipeline.batch-size=16"
+})
+class PipelinedCrossShardTransferConcurrencyTest {
+
+    private static final int CALLERS = 64;
+    private static final int TRANSFERS_PER_CALLER = 10;
+    private static final long BALANCE = 100000L;
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void transfer_ShouldApplyEveryTransfer_WhenBatchesOnDifferentShardsShareCards() throws Exception {
+        User user = new User();
+        user.setUsername("cross-shard-" + System.nanoTime());
+        user.setPassword("password");
+        user.setRole(Role.USER);
+        userRepository.save(user);
+        for (int i = 0; i < 6; i++) {
+            cardService.createCard(user.getUsername(), BALANCE);
+        }
+        List<Card> cards = cardRepository.findAllByUserId(user.getId(), Pageable.unpaged()).getContent();
+        cards.forEach(card -> cardService.activateCard(card.getId()));
+        List<Card> even = cards.stream().filter(card -> card.getId() % 2 == 0).toList();
+        List<Card> odd = cards.stream().filter(card -> card.getId() % 2 != 0).toList();
+        List<Card[]> directions = List.of(
+                new Card[]{even.get(0), odd.get(0)}, new Card[]{even.get(1), odd.get(1)},
+                new Card[]{odd.get(1), even.get(1)}, new Card[]{odd.get(0), even.get(0)});
+
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            Card[] direction = directions.get(i % directions.size());
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (int j = 0; j < TRANSFERS_PER_CALLER; j++) {
+                    cardService.transfer(direction[0].getId(), direction[1].getCardNumber(), 100L, user.getId());
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get(2, TimeUnit.MINUTES);
+        }
+        executor.shutdown();
+
+        for (Card card : cards) {
+            assertEquals(BALANCE, cardRepository.findById(card.getId()).orElseThrow().getBalance());
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.TransferLockTimeoutException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+@TestPropertySource(properties = {
+        "card.transfer.pipeline.enabled=true",
+        "card.transfer.pipeline.shards=2",
+        "card.transfer.pipeline.batch-size=16"
+})
+class PipelinedTransferConcurrencyTest extends CardServiceConcurrencyTest {
+
+    @Autowired
+    private CardService cardService;
+
+    /**
+     * Calls the service outside of any transaction, as the controller does, so the transfers go through the pipeline.
+     */
+    @Override
+    protected void transferWithRetry(Long cardId, String recipientCardNumber, long amount, Long userId) {
+        while (true) {
+            try {
+                cardService.transfer(cardId, recipientCardNumber, amount, userId);
+                return;
+            } catch (TransferLockTimeoutException e) {
+                // the transfer was rolled back, so it is safe to run it again
+            }
+        }
+    }
+}
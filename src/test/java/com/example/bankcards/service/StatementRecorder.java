@@ -0,0 +1,31 @@
+package com.example.bankcards.service;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records the SQL Hibernate prepares on the current thread, so that scheduled jobs running meanwhile are not
+ * recorded. Enable it with {@link #PROPERTY}.
+ */
+public class StatementRecorder implements StatementInspector {
+    static final String PROPERTY = "spring.jpa.properties.hibernate.session_factory.statement_inspector="
+            + "com.example.bankcards.service.StatementRecorder";
+
+    private static final ThreadLocal<List<String>> STATEMENTS = ThreadLocal.withInitial(ArrayList::new);
+
+    @Override
+    public String inspect(String sql) {
+        STATEMENTS.get().add(sql);
+        return sql;
+    }
+
+    static void clear() {
+        STATEMENTS.get().clear();
+    }
+
+    static List<String> statements() {
+        return List.copyOf(STATEMENTS.get());
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.repository.CardRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestPropertySource;
+
+
+@TestPropertySource(properties = "card.transfer.engine=CONDITIONAL_UPDATE")
+class StripedTransferConcurrencyTest extends CardServiceConcurrencyTest {
+
+    @Autowired
+    private CardService cardService;
+
+    @Autowired
+    private CardRepository cardRepository;
+
+    /**
+     * Stripes both cards and parks most of their money in the slots, so the concurrent debits have to fold
+     * the slots back into the balance rows while credits keep landing on them.
+     */
+    @Override
+    protected void prepareCards(Card first, Card second, User user) {
+        cardService.setBalanceStripes(first.getId(), 4);
+        cardService.setBalanceStripes(second.getId(), 4);
+        transferWithRetry(first.getId(), second.getCardNumber(), 90000L, user.getId());
+        transferWithRetry(second.getId(), first.getCardNumber(), 90000L, user.getId());
+    }
+
+    @Override
+    protected long balanceOf(Long cardId) {
+        return cardRepository.findById(cardId).orElseThrow().getTotalBalance();
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.RevokedToken;
+import com.example.bankcards.repository.RevokedTokenRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TokenRevocationServiceTest {
+
+    @Mock
+    private RevokedTokenRepository revokedTokenRepository;
+
+    private TokenRevocationService tokenRevocationService;
+
+    @BeforeEach
+    void setUp() {
+        tokenRevocationService = new TokenRevocationService(revokedTokenRepository, new SimpleMeterRegistry(),
+                1000, 0.01, Duration.ofSeconds(5));
+    }
+
+    @Test
+    void isRevoked_ShouldNotQueryDatabase_ForTokenThatWasNotRevoked() {
+        assertFalse(tokenRevocationService.isRevoked("not-revoked"));
+        assertFalse(tokenRevocationService.isRevoked(null));
+
+        verifyNoInteractions(revokedTokenRepository);
+    }
+
+    @Test
+    void revoke_ShouldStoreTokenId_AndConfirmItOnCheck() {
+        LocalDateTime expiresAt = LocalDateTime.now().plusMinutes(15);
+
+        tokenRevocationService.revoke("revoked", expiresAt);
+        when(revokedTokenRepository.existsByTokenId("revoked")).thenReturn(true);
+
+        assertTrue(tokenRevocationService.isRevoked("revoked"));
+        verify(revokedTokenRepository).save(argThat(token ->
+                token.getTokenId().equals("revoked") && token.getExpiresAt().equals(expiresAt)));
+    }
+
+    @Test
+    void poll_ShouldPickUpTokensRevokedByOtherInstances() {
+        when(revokedTokenRepository.findTokenIdsRevokedAfter(any())).thenReturn(List.of("revoked-elsewhere"));
+        when(revokedTokenRepository.existsByTokenId("revoked-elsewhere")).thenReturn(true);
+
+        tokenRevocationService.poll();
+
+        assertTrue(tokenRevocationService.isRevoked("revoked-elsewhere"));
+    }
+
+    @Test
+    void deleteExpired_ShouldRebuildFilterFromUnexpiredTokens() {
+        tokenRevocationService.revoke("expired", LocalDateTime.now().minusMinutes(1));
+        clearInvocations(revokedTokenRepository);
+        when(revokedTokenRepository.findUnexpiredTokenIds(any())).thenReturn(List.of("still-valid"));
+
+        tokenRevocationService.deleteExpired();
+
+        verify(revokedTokenRepository).deleteExpired(any());
+        when(revokedTokenRepository.existsByTokenId("still-valid")).thenReturn(true);
+        assertTrue(tokenRevocationService.isRevoked("still-valid"));
+        assertFalse(tokenRevocationService.isRevoked("expired"));
+        verify(revokedTokenRepository, never()).existsByTokenId("expired");
+    }
+}
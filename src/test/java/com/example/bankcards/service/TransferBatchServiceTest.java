@@ -0,0 +1,177 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.config.TransferEngine;
+import com.example.bankcards.dto.TransferDTO;
+import com.example.bankcards.dto.TransferResultDTO;
+import com.example.bankcards.entity.Card;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Status;
+import com.example.bankcards.exception.TransferBatchTooLargeException;
+import com.example.bankcards.repository.CardRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferBatchServiceTest {
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private LedgerService ledgerService;
+
+    @Mock
+    private BalanceStripeService balanceStripeService;
+
+    @Mock
+    private BalanceCache balanceCache;
+
+    @Mock
+    private TransferLockTimeout transferLockTimeout;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private TransferBatchService transferBatchService;
+
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(transferBatchService, "chunkSize", 2);
+        ReflectionTestUtils.setField(transferBatchService, "maxSize", 10);
+        user = new User();
+        user.setId(1L);
+    }
+
+    @Test
+    void transfer_ShouldApplyValidTransfersAndRejectInvalidOnes() {
+        Card first = card(1L, "1111222233334444", user, 10000L, Status.ACTIVE);
+        Card second = card(2L, "5555666677778888", user, 0L, Status.ACTIVE);
+
+        when(cardRepository.findAllForUpdate(anyCollection(), anyCollection())).thenReturn(List.of(first, second));
+
+        List<TransferResultDTO> results = transferBatchService.transfer(List.of(
+                new TransferDTO(1L, "5555666677778888", 6000L),
+                new TransferDTO(1L, "5555666677778888", 6000L)), user.getId());
+
+        assertTrue(results.get(0).isApplied());
+        assertFalse(results.get(1).isApplied());
+        assertEquals("Insufficient balance for transfer", results.get(1).getError());
+        assertEquals(4000L, first.getBalance());
+        assertEquals(6000L, second.getBalance());
+    }
+
+    @Test
+    void transfer_ShouldUseCreditsFromEarlierTransfersInSameChunk() {
+        Card first = card(1L, "1111222233334444", user, 10000L, Status.ACTIVE);
+        Card second = card(2L, "5555666677778888", user, 0L, Status.ACTIVE);
+
+        when(cardRepository.findAllForUpdate(anyCollection(), anyCollection())).thenReturn(List.of(first, second));
+
+        List<TransferResultDTO> results = transferBatchService.transfer(List.of(
+                new TransferDTO(1L, "5555666677778888", 10000L),
+                new TransferDTO(2L, "1111222233334444", 3000L)), user.getId());
+
+        assertTrue(results.stream().allMatch(TransferResultDTO::isApplied));
+        assertEquals(3000L, first.getBalance());
+        assertEquals(7000L, second.getBalance());
+    }
+
+    @Test
+    void transfer_ShouldRejectTransfer_WhenCardIsNotOwnedOrNotActive() {
+        User anotherUser = new User();
+        anotherUser.setId(2L);
+        Card own = card(1L, "1111222233334444", user, 10000L, Status.ACTIVE);
+        Card foreign = card(2L, "5555666677778888", anotherUser, 0L, Status.ACTIVE);
+        Card blocked = card(3L, "9999000011112222", user, 0L, Status.BLOCKED);
+
+        when(cardRepository.findAllForUpdate(anyCollection(), anyCollection()))
+                .thenReturn(List.of(own, foreign))
+                .thenReturn(List.of(own, blocked));
+
+        List<TransferResultDTO> results = transferBatchService.transfer(List.of(
+                new TransferDTO(1L, "5555666677778888", 1000L),
+                new TransferDTO(1L, "0000000000000000", 1000L),
+                new TransferDTO(1L, "9999000011112222", 1000L)), user.getId());
+
+        assertEquals("None of the cards belong to you", results.get(0).getError());
+        assertEquals("Card not found with number: 0000000000000000", results.get(1).getError());
+        assertEquals("One or both cards are not active", results.get(2).getError());
+        assertEquals(2, results.get(2).getIndex());
+        assertEquals(10000L, own.getBalance());
+    }
+
+    @Test
+    void transfer_ShouldRejectWholeChunkAndContinue_WhenLockCannotBeAcquired() {
+        Card first = card(1L, "1111222233334444", user, 10000L, Status.ACTIVE);
+        Card second = card(2L, "5555666677778888", user, 0L, Status.ACTIVE);
+
+        when(cardRepository.findAllForUpdate(anyCollection(), anyCollection()))
+                .thenThrow(new CannotAcquireLockException("lock timeout"))
+                .thenReturn(List.of(first, second));
+
+        List<TransferResultDTO> results = transferBatchService.transfer(List.of(
+                new TransferDTO(1L, "5555666677778888", 100L),
+                new TransferDTO(1L, "5555666677778888", 100L),
+                new TransferDTO(1L, "5555666677778888", 100L)), user.getId());
+
+        assertFalse(results.get(0).isApplied());
+        assertFalse(results.get(1).isApplied());
+        assertTrue(results.get(2).isApplied());
+        verify(cardRepository, times(2)).findAllForUpdate(anyCollection(), anyCollection());
+    }
+
+    @Test
+    void transfer_ShouldAppendToLedgerAndCountUnappliedTail_WhenLedgerEngine() {
+        ReflectionTestUtils.setField(transferBatchService, "transferEngine", TransferEngine.LEDGER);
+        Card first = card(1L, "1111222233334444", user, 10000L, Status.ACTIVE);
+        Card second = card(2L, "5555666677778888", user, 0L, Status.ACTIVE);
+
+        when(cardRepository.findAllForUpdate(anyCollection(), anyCollection())).thenReturn(List.of(first, second));
+        when(ledgerService.getUnappliedAmounts(anyCollection())).thenReturn(Map.of(1L, -5000L));
+
+        List<TransferResultDTO> results = transferBatchService.transfer(List.of(
+                new TransferDTO(1L, "5555666677778888", 4000L),
+                new TransferDTO(1L, "5555666677778888", 4000L)), user.getId());
+
+        assertTrue(results.get(0).isApplied());
+        assertEquals("Insufficient balance for transfer", results.get(1).getError());
+        verify(ledgerService).append(1L, 2L, 4000L);
+        assertEquals(10000L, first.getBalance());
+    }
+
+    @Test
+    void transfer_ShouldThrowException_WhenBatchIsTooLarge() {
+        List<TransferDTO> transfers = Collections.nCopies(11, new TransferDTO(1L, "1", 100L));
+
+        assertThrows(TransferBatchTooLargeException.class, () -> transferBatchService.transfer(transfers, user.getId()));
+        verifyNoInteractions(cardRepository);
+    }
+
+    private Card card(Long id, String cardNumber, User owner, long balance, Status status) {
+        Card card = new Card();
+        card.setId(id);
+        card.setCardNumber(cardNumber);
+        card.setUser(owner);
+        card.setBalance(balance);
+        card.setStatus(status);
+        return card;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.bankcards.service;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferLockTimeoutTest {
+    private static final String STATEMENT = "SET LOCAL lock_timeout = '2s'";
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private Query query;
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+
+    @Test
+    void apply_ShouldSendStatementOncePerTransaction() {
+        when(entityManager.createNativeQuery(STATEMENT)).thenReturn(query);
+        TransferLockTimeout lockTimeout = new TransferLockTimeout(entityManager, STATEMENT);
+
+        beginTransaction();
+        lockTimeout.apply();
+        lockTimeout.apply();
+        completeTransaction();
+
+        beginTransaction();
+        lockTimeout.apply();
+        completeTransaction();
+
+        verify(query, times(2)).executeUpdate();
+    }
+
+    @Test
+    void apply_ShouldDoNothing_OutsideOfTransaction() {
+        new TransferLockTimeout(entityManager, STATEMENT).apply();
+
+        verifyNoInteractions(entityManager);
+    }
+
+    @Test
+    void apply_ShouldDoNothing_WhenNoStatementIsConfigured() {
+        beginTransaction();
+        new TransferLockTimeout(entityManager, "").apply();
+
+        verifyNoInteractions(entityManager);
+    }
+
+    private static void beginTransaction() {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+    }
+
+    private static void completeTransaction() {
+        TransactionSynchronizationManager.getSynchronizations().forEach(synchronization ->
+                synchronization.afterCompletion(TransactionSynchronization.STATUS_COMMITTED));
+        TransactionSynchronizationManager.clearSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(false);
+    }
+}
@@ -0,0 +1,234 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.exception.InsufficientBalanceException;
+import com.example.bankcards.exception.TransferLockTimeoutException;
+import com.example.bankcards.exception.TransferPipelineUnavailableException;
+import com.example.bankcards.repository.CardRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+
+import java.sql.Savepoint;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TransferPipelineTest {
+    private static final String RECIPIENT = "1234567890123456";
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private Session session;
+
+    @Mock
+    private CardRepository cardRepository;
+
+    @Mock
+    private TransferLockTimeout transferLockTimeout;
+
+    private SimpleMeterRegistry meterRegistry;
+    private TransferPipeline transferPipeline;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        transferPipeline.shutdown();
+    }
+
+    @Test
+    void submit_ShouldCommitBatchOnce_AndFailOnlyTheFailedTransfer() throws Exception {
+        TransactionStatus status = mock(TransactionStatus.class);
+        when(transactionManager.getTransaction(any())).thenReturn(status);
+        mockSavepoints();
+        transferPipeline = pipeline(true, 3, 1000);
+
+        CompletableFuture<Void> first = transferPipeline.submit(1L, RECIPIENT, () -> { });
+        CompletableFuture<Void> second = transferPipeline.submit(1L, RECIPIENT, () -> {
+            throw new InsufficientBalanceException("Insufficient balance for transfer");
+        });
+        CompletableFuture<Void> third = transferPipeline.submit(1L, RECIPIENT, () -> { });
+
+        assertNull(first.get(5, TimeUnit.SECONDS));
+        assertNull(third.get(5, TimeUnit.SECONDS));
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(InsufficientBalanceException.class, failure.getCause());
+
+        verify(transactionManager).getTransaction(any());
+        verify(transactionManager).commit(status);
+        verify(session, times(3)).doReturningWork(any());
+        verify(entityManager, times(2)).flush();
+        verify(entityManager).clear();
+        DistributionSummary batchSize = meterRegistry.get("card.transfer.pipeline.batch.size").summary();
+        assertEquals(1, batchSize.count());
+        assertEquals(3, batchSize.totalAmount());
+    }
+
+    @Test
+    void submit_ShouldRerunTheRestOfTheBatch_WhenFailureLeavesTransactionRollbackOnly() throws Exception {
+        TransactionStatus poisoned = mock(TransactionStatus.class);
+        TransactionStatus clean = mock(TransactionStatus.class);
+        when(poisoned.isRollbackOnly()).thenReturn(true);
+        when(transactionManager.getTransaction(any())).thenReturn(poisoned, clean);
+        mockSavepoints();
+        transferPipeline = pipeline(true, 2, 1000);
+        AtomicInteger runs = new AtomicInteger();
+
+        CompletableFuture<Void> failed = transferPipeline.submit(1L, RECIPIENT, () -> {
+            throw new IllegalStateException("lock timeout");
+        });
+        CompletableFuture<Void> applied = transferPipeline.submit(1L, RECIPIENT, runs::incrementAndGet);
+
+        assertNull(applied.get(5, TimeUnit.SECONDS));
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, failure.getCause());
+        assertEquals(1, runs.get());
+        verify(poisoned).setRollbackOnly();
+        verify(transactionManager, times(2)).getTransaction(any());
+    }
+
+    @Test
+    void submit_ShouldLockEveryCardOfTheBatchInOneStatement_BeforeRunningIt() throws Exception {
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        mockSavepoints();
+        transferPipeline = pipeline(true, 2, 1000);
+        Runnable transfer = mock(Runnable.class);
+
+        CompletableFuture<Void> first = transferPipeline.submit(1L, RECIPIENT, transfer);
+        CompletableFuture<Void> second = transferPipeline.submit(3L, "6543210987654321", transfer);
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+
+        InOrder order = inOrder(transferLockTimeout, cardRepository, transfer);
+        order.verify(transferLockTimeout).apply();
+        order.verify(cardRepository).findTransferCardsForUpdate(Set.of(1L, 3L), Set.of(RECIPIENT, "6543210987654321"));
+        order.verify(transfer, times(2)).run();
+    }
+
+    @Test
+    void submit_ShouldReportEveryTransferAsNotApplied_WhenTheBatchCannotLockItsCards() {
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        when(cardRepository.findTransferCardsForUpdate(any(), any()))
+                .thenThrow(new CannotAcquireLockException("lock timeout"));
+        transferPipeline = pipeline(true, 1, 0);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertThrows(TransferLockTimeoutException.class,
+                () -> transferPipeline.execute(1L, RECIPIENT, runs::incrementAndGet));
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void submit_ShouldRerunTheRestOfTheBatch_WhenSavepointCannotBeRolledBackTo() throws Exception {
+        TransactionStatus aborted = mock(TransactionStatus.class);
+        TransactionStatus clean = mock(TransactionStatus.class);
+        when(transactionManager.getTransaction(any())).thenReturn(aborted).thenReturn(clean);
+        mockSavepoints();
+        doThrow(new IllegalStateException("transaction is aborted")).doNothing().when(session).doWork(any());
+        transferPipeline = pipeline(true, 2, 1000);
+        AtomicInteger runs = new AtomicInteger();
+
+        CompletableFuture<Void> failed = transferPipeline.submit(1L, RECIPIENT, () -> {
+            throw new IllegalStateException("deadlock detected");
+        });
+        CompletableFuture<Void> applied = transferPipeline.submit(1L, RECIPIENT, runs::incrementAndGet);
+
+        assertNull(applied.get(5, TimeUnit.SECONDS));
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertEquals("deadlock detected", failure.getCause().getMessage());
+        assertEquals(1, runs.get());
+        verify(aborted).setRollbackOnly();
+        verify(transactionManager).commit(clean);
+    }
+
+    @Test
+    void execute_ShouldRethrowTheTransfersException() {
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        mockSavepoints();
+        transferPipeline = pipeline(true, 1, 0);
+
+        assertThrows(InsufficientBalanceException.class, () -> transferPipeline.execute(1L, RECIPIENT, () -> {
+            throw new InsufficientBalanceException("Insufficient balance for transfer");
+        }));
+    }
+
+    @Test
+    void submit_ShouldFailTheBatch_AndKeepTheWriterRunning_WhenATransferThrowsAnError() throws Exception {
+        when(transactionManager.getTransaction(any())).thenReturn(mock(TransactionStatus.class));
+        mockSavepoints();
+        transferPipeline = pipeline(true, 1, 0);
+
+        CompletableFuture<Void> failed = transferPipeline.submit(1L, RECIPIENT, () -> {
+            throw new StackOverflowError();
+        });
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> failed.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(StackOverflowError.class, failure.getCause());
+
+        assertNull(transferPipeline.submit(1L, RECIPIENT, () -> { }).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void execute_ShouldWithdrawTransfer_WhenNoWriterPicksItUpInTime() {
+        transferPipeline = pipeline(false, 1, 0);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertThrows(TransferPipelineUnavailableException.class, () -> transferPipeline.execute(1L, RECIPIENT, runs::incrementAndGet));
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    void submit_ShouldReject_AfterShutdown() throws InterruptedException {
+        transferPipeline = pipeline(true, 1, 0);
+        transferPipeline.shutdown();
+
+        assertThrows(TransferPipelineUnavailableException.class, () -> transferPipeline.submit(1L, RECIPIENT, () -> { }));
+    }
+
+    @Test
+    void submit_ShouldReject_WhenShardQueueIsFull() {
+        transferPipeline = pipeline(false, 1, 0);
+
+        transferPipeline.submit(1L, RECIPIENT, () -> { });
+
+        assertThrows(TransferPipelineUnavailableException.class, () -> transferPipeline.submit(1L, RECIPIENT, () -> { }));
+        assertEquals(1, meterRegistry.get("card.transfer.pipeline.queue.depth").summary().count());
+    }
+
+    private void mockSavepoints() {
+        when(entityManager.unwrap(Session.class)).thenReturn(session);
+        when(session.doReturningWork(any())).thenReturn(mock(Savepoint.class));
+    }
+
+    private TransferPipeline pipeline(boolean enabled, int batchSize, long lingerMillis) {
+        return new TransferPipeline(transactionManager, entityManager, cardRepository, transferLockTimeout,
+                meterRegistry, enabled, 1, batchSize, Duration.ofMillis(lingerMillis), enabled ? 16 : 1,
+                Duration.ofMillis(200));
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserCacheTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private InProcessUserInvalidationChannel channel;
+
+    @BeforeEach
+    void setUp() {
+        channel = new InProcessUserInvalidationChannel();
+    }
+
+    @Test
+    void invalidate_ShouldEvictUserOnEveryInstanceSharingTheChannel() {
+        UserCache first = cache();
+        UserCache second = cache();
+        when(userRepository.findByUsername("testuser"))
+                .thenReturn(Optional.of(user(Role.USER)))
+                .thenReturn(Optional.of(user(Role.USER)))
+                .thenReturn(Optional.of(user(Role.ADMIN)));
+
+        first.find("testuser");
+        second.find("testuser");
+        first.invalidate("testuser");
+
+        assertEquals(Role.ADMIN, second.find("testuser").orElseThrow().role());
+        verify(userRepository, times(3)).findByUsername("testuser");
+    }
+
+    @Test
+    void invalidate_ShouldWaitForCommit_WhenTransactionIsActive() {
+        UserCache cache = cache();
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(user(Role.USER)));
+        cache.find("testuser");
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            cache.invalidate("testuser");
+            cache.find("testuser");
+            verify(userRepository, times(1)).findByUsername("testuser");
+
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+
+        cache.find("testuser");
+        verify(userRepository, times(2)).findByUsername("testuser");
+    }
+
+    @Test
+    void find_ShouldNotCacheUnknownUsername() {
+        UserCache cache = cache();
+        when(userRepository.findByUsername("newuser"))
+                .thenReturn(Optional.empty())
+                .thenReturn(Optional.of(user(Role.USER)));
+
+        assertTrue(cache.find("newuser").isEmpty());
+        assertTrue(cache.find("newuser").isPresent());
+    }
+
+    private UserCache cache() {
+        return new UserCache(userRepository, channel, transactionManager, new SimpleMeterRegistry(),
+                Duration.ofMinutes(10), 100);
+    }
+
+    private static User user(Role role) {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("testuser");
+        user.setPassword("hash");
+        user.setRole(role);
+        return user;
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.bankcards.service;
+
+import com.example.bankcards.dto.UserImportProgressDTO;
+import com.example.bankcards.entity.User;
+import com.example.bankcards.entity.enums.Role;
+import com.example.bankcards.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+@ActiveProfiles("test")
+@TestPropertySource(properties = {"card.user-import.batch-size=3", "password.strength=4"})
+class UserImportServiceTest {
+
+    @Autowired
+    private UserImportService userImportService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Test
+    void importUsers_ShouldInsertNewUsers_AndReportProgressPerChunk() throws IOException {
+        User existing = new User();
+        existing.setUsername("csv-existing");
+        existing.setPassword("hash");
+        existing.setRole(Role.ADMIN);
+        userRepository.save(existing);
+        String csv = """
+                username,password
+                csv-alice,secret1
+                csv-bob,secret,with,commas
+                csv-existing,secret3
+
+                csv-alice,secret4
+                no-comma
+                csv-carol,123
+                csv-dave,secret5
+                """;
+        List<UserImportProgressDTO> progress = new ArrayList<>();
+
+        UserImportProgressDTO result = userImportService.importUsers(input(csv), UserImportService.Format.CSV,
+                progress::add);
+
+        assertEquals(7, result.getProcessed());
+        assertEquals(3, result.getImported());
+        assertEquals(2, result.getDuplicates());
+        assertEquals(2, result.getInvalid());
+        assertTrue(result.isCompleted());
+        assertEquals(2, progress.size());
+        assertFalse(progress.get(0).isCompleted());
+        assertEquals(2, progress.get(0).getImported());
+
+        User bob = userRepository.findByUsername("csv-bob").orElseThrow();
+        assertEquals(Role.USER, bob.getRole());
+        assertTrue(new BCryptPasswordEncoder().matches("secret,with,commas", bob.getPassword()));
+        assertEquals(Role.ADMIN, userRepository.findByUsername("csv-existing").orElseThrow().getRole());
+        assertTrue(userRepository.existsByUsername("csv-dave"));
+        assertFalse(userRepository.existsByUsername("csv-carol"));
+    }
+
+    @Test
+    void importUsers_ShouldReadNdjson() throws IOException {
+        String ndjson = """
+                {"username":"json-alice","password":"secret1"}
+                {"username":"json-bob"
+                {"username":"json-carol","password":"secret3"}
+                """;
+
+        UserImportProgressDTO result = userImportService.importUsers(input(ndjson), UserImportService.Format.NDJSON,
+                progress -> { });
+
+        assertEquals(3, result.getProcessed());
+        assertEquals(2, result.getImported());
+        assertEquals(1, result.getInvalid());
+        assertTrue(userRepository.existsByUsername("json-alice"));
+        assertTrue(userRepository.existsByUsername("json-carol"));
+    }
+
+    private static ByteArrayInputStream input(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -4,13 +4,16 @@ import com.example.bankcards.entity.User;
 import com.example.bankcards.entity.enums.Role;
 import com.example.bankcards.exception.UserNotFoundException;
 import com.example.bankcards.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.transaction.PlatformTransactionManager;
 
+import java.time.Duration;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -22,9 +25,18 @@ class UserServiceTest {
     @Mock
     private UserRepository userRepository;
 
-    @InjectMocks
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     private UserService userService;
 
+    @BeforeEach
+    void setUp() {
+        UserCache userCache = new UserCache(userRepository, new InProcessUserInvalidationChannel(),
+                transactionManager, new SimpleMeterRegistry(), Duration.ofMinutes(10), 100);
+        userService = new UserService(userRepository, userCache);
+    }
+
     @Test
     void loadUserByUsername_ShouldReturnUserDetails_WhenUserExists() {
         User user = new User();
@@ -64,6 +76,22 @@ class UserServiceTest {
         verify(userRepository).save(user);
     }
 
+    @Test
+    void updatePassword_ShouldStoreUpgradedHash_AndEvictCachedUser() {
+        User user = new User();
+        user.setUsername("testuser");
+        user.setPassword("old-hash");
+        user.setRole(Role.USER);
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(user));
+        UserDetails cached = userService.loadUserByUsername("testuser");
+
+        UserDetails updated = userService.updatePassword(cached, "new-hash");
+
+        assertEquals("new-hash", updated.getPassword());
+        verify(userRepository).save(user);
+        assertEquals("new-hash", userService.loadUserByUsername("testuser").getPassword());
+    }
+
     @Test
     void makeAdmin_ShouldThrowException_WhenUserNotFound() {
         when(userRepository.findByUsername("nonexistent")).thenReturn(Optional.empty());
@@ -86,6 +114,25 @@ class UserServiceTest {
         assertEquals(Role.USER, result.getRole());
     }
 
+    @Test
+    void findByUsername_ShouldQueryRepositoryOnce_UntilUserChanges() {
+        User user = new User();
+        user.setId(1L);
+        user.setUsername("testuser");
+        user.setRole(Role.USER);
+
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(user));
+
+        userService.findByUsername("testuser");
+        assertEquals(Role.USER, userService.findByUsername("testuser").getRole());
+        verify(userRepository, times(1)).findByUsername("testuser");
+
+        userService.makeAdmin("testuser");
+
+        assertEquals(Role.ADMIN, userService.findByUsername("testuser").getRole());
+        verify(userRepository, times(3)).findByUsername("testuser");
+    }
+
     @Test
     void findByUsername_ShouldThrowException_WhenUserNotFound() {
         when(userRepository.findByUsername("nonexistent")).thenReturn(Optional.empty());
@@ -0,0 +1,54 @@
+package com.example.bankcards.util;
+
+import com.example.bankcards.exception.InvalidAmountException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    @Test
+    void parse_ShouldReturnMinorUnits() {
+        assertEquals(1234L, Money.parse("12.34"));
+        assertEquals(1250L, Money.parse("12.5"));
+        assertEquals(1200L, Money.parse("12"));
+        assertEquals(1200L, Money.parse("12."));
+        assertEquals(50L, Money.parse(".5"));
+        assertEquals(1234L, Money.parse("12.3400"));
+        assertEquals(-500L, Money.parse("-5"));
+    }
+
+    @Test
+    void parse_ShouldReject_WhenAmountIsMalformed() {
+        assertThrows(InvalidAmountException.class, () -> Money.parse(""));
+        assertThrows(InvalidAmountException.class, () -> Money.parse("."));
+        assertThrows(InvalidAmountException.class, () -> Money.parse("1e3"));
+        assertThrows(InvalidAmountException.class, () -> Money.parse("12.345"));
+        assertThrows(InvalidAmountException.class, () -> Money.parse("1,5"));
+        assertThrows(InvalidAmountException.class, () -> Money.parse(null));
+    }
+
+    @Test
+    void parse_ShouldReject_WhenAmountOverflows() {
+        assertEquals(Long.MAX_VALUE, Money.parse("92233720368547758.07"));
+        assertThrows(InvalidAmountException.class, () -> Money.parse("92233720368547758.08"));
+        assertThrows(InvalidAmountException.class, () -> Money.parse("100000000000000000000"));
+    }
+
+    @Test
+    void format_ShouldWriteTwoDecimalPlaces() {
+        assertEquals("12.34", Money.format(1234L));
+        assertEquals("0.05", Money.format(5L));
+        assertEquals("-0.05", Money.format(-5L));
+        assertEquals("-12.30", Money.format(-1230L));
+        assertEquals("92233720368547758.07", Money.format(Long.MAX_VALUE));
+    }
+
+    @Test
+    void arithmetic_ShouldReject_WhenResultOverflows() {
+        assertEquals(300L, Money.add(100L, 200L));
+        assertEquals(-100L, Money.subtract(100L, 200L));
+        assertThrows(InvalidAmountException.class, () -> Money.add(Long.MAX_VALUE, 1L));
+        assertThrows(InvalidAmountException.class, () -> Money.subtract(Long.MIN_VALUE, 1L));
+    }
+}